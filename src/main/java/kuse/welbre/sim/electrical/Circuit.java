@@ -1,8 +1,16 @@
 package kuse.welbre.sim.electrical;
 
 import kuse.welbre.sim.electrical.abstractt.*;
-import kuse.welbre.tools.LU;
+import kuse.welbre.sim.electrical.elements.DiodeBank;
+import kuse.welbre.tools.BroydenUpdate;
+import kuse.welbre.tools.GMRES;
+import kuse.welbre.tools.LinearSolver;
+import kuse.welbre.tools.LowRankUpdate;
+import kuse.welbre.tools.Matrix;
 import kuse.welbre.tools.MatrixBuilder;
+import kuse.welbre.tools.MinimumDegree;
+import kuse.welbre.tools.SingularMatrixException;
+import kuse.welbre.tools.SparseLU;
 import kuse.welbre.tools.Tools;
 
 import java.io.DataInputStream;
@@ -10,16 +18,161 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class Circuit implements Serializable {
+    ///The iteration of the {@link Circuit#setNonLinearMethod(NonLinearMethod) non-linear solver}.
+    public enum NonLinearMethod {
+        ///Newton-Raphson, a new Jacobian in each iteration, or while the {@link Circuit#setChordRate(double) chord} steps are fast enough.
+        NEWTON,
+        ///Quasi-Newton, the inverse of the last Jacobian corrected by the {@link BroydenUpdate Broyden} secant updates,
+        ///with a full Newton iteration when a step stagnates.
+        BROYDEN,
+        ///Jacobian-free Newton-Krylov, each Newton step is solved by {@link GMRES} with finite differences of f(x),
+        ///preconditioned by the factorization of the static linear part.
+        JFNK
+    }
+
+    ///The approximation of the differential equations of the {@link Dynamic dynamic} elements, see {@link kuse.welbre.sim.electrical.elements.Integrator Integrator}.
+    public enum IntegrationMethod {
+        ///First order, damps the oscillations.
+        BACKWARD_EULER,
+        ///Second order, keeps the energy of the oscillations, but may ring after a discontinuity.
+        TRAPEZOIDAL,
+        ///Second order Gear, damps the discontinuities, with a small damping of the oscillations.
+        BDF2
+    }
+
+    ///How the state of the {@link Dynamic dynamic} elements at t = 0 is solved, in the {@link Circuit#preCompile()}.
+    public enum InitialConditions {
+        ///The capacitors start with their initial voltage and the inductors with their initial current, 0 by default, like the UIC of SPICE.
+        GIVEN,
+        ///The DC operating point, the capacitors are open circuits and the inductors are shorts, like the .op of SPICE.
+        OPERATING_POINT
+    }
+
+    ///The continuation strategies of the non-linear operating point, tried when the Newton method alone can't converge, see {@link Circuit#setContinuations(Continuation...)}.
+    public enum Continuation {
+        ///Only the Newton method, without a continuation.
+        NONE,
+        ///A conductance from each node to the ground, ramped down until it is removed, like the gmin stepping of SPICE.
+        GMIN_STEPPING,
+        ///All independent sources ramped up from 0, like the source stepping of SPICE.
+        SOURCE_STEPPING
+    }
+
     /// 50ms time step
-    public static final double TICK_TO_SOLVE_INITIAL_CONDITIONS = 1E-10;
     public static final double DEFAULT_TIME_STEP = 0.05;
+    ///The default {@link Circuit#setChordRate(double) chord rate}, the full Newton.
+    public static final double DEFAULT_CHORD_RATE = 0;
+    ///The convergence tolerance of a chord step, relative to the Newton tolerance.
+    private static final double CHORD_TOLERANCE = 1e-3;
+    ///A Broyden step that doesn't reduce the norm of f(x) by this factor stagnated, so the next iteration is a full Newton one.
+    public static final double BROYDEN_STAGNATION = 0.5;
+    ///The residual of a JFNK step relative to f(x), and the max products of the Jacobian in each step.
+    public static final double KRYLOV_TOLERANCE = 1e-6;
+    public static final int MAX_KRYLOV_ITERATIONS = 100;
+    ///The default {@link Circuit#setMaxIterations(int) max Newton iterations} of each non-linear solve.
+    public static final int DEFAULT_MAX_ITERATIONS = 500;
+    ///The gmin stepping starts with this conductance in each node, divided by the factor each step, and removed after the end.
+    private static final double GMIN_START = 1e-2, GMIN_END = 1e-12, GMIN_FACTOR = 10;
+    ///If the first gmin can't converge, it is multiplied by the factor until this conductance.
+    private static final double GMIN_MAX = 1e4;
+    ///A failed gmin step is tried again with the square root of the factor, until this factor.
+    private static final double MIN_GMIN_FACTOR = 1.05;
+    ///The first fraction of the sources in the source stepping, and the smallest increase before it fails.
+    private static final double SOURCE_STEP = 0.1, MIN_SOURCE_STEP = 1e-3;
+    ///The max steps of each continuation strategy.
+    private static final int MAX_CONTINUATION_STEPS = 200;
+    ///The max corrections of the opens and shorts of the {@link Circuit#solveOperatingPoint() operating point}.
+    private static final int MAX_POINT_CORRECTIONS = 50;
+    ///The relative change of the sources of the operating point corrections that is only roundoff.
+    private static final double POINT_RELATIVE_TOLERANCE = 1e-13;
+    private static final System.Logger LOGGER = System.getLogger(Circuit.class.getName());
+    ///The finite difference step of the Jacobian products, relative to the size of x, the square root of the machine epsilon.
+    private static final double FINITE_DIFFERENCE_STEP = 1.49e-8;
+    ///The default {@link Circuit#setTolerances(double, double, double) convergence tolerances}, the same of SPICE.
+    public static final double DEFAULT_RELATIVE_TOLERANCE = 1e-3, DEFAULT_VOLTAGE_TOLERANCE = 1e-6, DEFAULT_CURRENT_TOLERANCE = 1e-12;
+    ///The max {@link Circuit#setPredictorOrder(int) predictor order}, a quadratic extrapolation.
+    public static final int MAX_PREDICTOR_ORDER = 2;
+    ///The default {@link Circuit#setTruncationTolerances(double, double, double) truncation tolerances} of the adaptive step.
+    public static final double DEFAULT_TRUNCATION_RELATIVE = 1e-3, DEFAULT_TRUNCATION_VOLTAGE = 1e-3, DEFAULT_TRUNCATION_CURRENT = 1e-3;
+    ///The default smallest step of the adaptive step.
+    public static final double DEFAULT_MIN_STEP = 1e-9;
+    ///The version of the {@link Circuit#serialize(DataOutputStream) serialized} circuit, written before it.
+    ///The version 1 adds the integration method, the integrator history of the dynamic elements, and their initial state.
+    ///A stream without the version, that starts with the tick rate, is still read, see {@link Serializable#UNVERSIONED}.
+    public static final int SERIAL_VERSION = 1;
+    ///The adaptive step uses a fraction of the step allowed by the error, and changes the step at most by these factors.
+    private static final double STEP_SAFETY = 0.9, MIN_STEP_FACTOR = 0.2, MAX_STEP_FACTOR = 2;
+    ///A breakpoint closer than this fraction of the step is reached.
+    private static final double BREAKPOINT_TOLERANCE = 1e-9;
 
     private double tickRate = DEFAULT_TIME_STEP;
+    private IntegrationMethod integrationMethod = IntegrationMethod.BACKWARD_EULER;
+    private InitialConditions initialConditions = InitialConditions.GIVEN;
     private double minimal_time_step = Double.MAX_VALUE;
+    ///The simulated time, and the step of the last tick.
+    private double time = 0, lastStep = 0;
+    ///If the step is chosen by the truncation error, see {@link Circuit#setAdaptive(boolean)}.
+    private boolean adaptive = false;
+    private double minStep = DEFAULT_MIN_STEP, maxStep = Double.MAX_VALUE;
+    private double truncationRelative = DEFAULT_TRUNCATION_RELATIVE;
+    private double truncationVoltage = DEFAULT_TRUNCATION_VOLTAGE;
+    private double truncationCurrent = DEFAULT_TRUNCATION_CURRENT;
+    private long rejectedSteps = 0;
+    ///The {@link Dynamic#getTruncationOrder() order} of the biggest truncation error in the last step.
+    private int errorOrder = 1;
+    private boolean stateSpace = false;
+    ///The state space of the last build, compiled in the first jump.
+    private StateSpace compiledStateSpace;
+    private long jumpedSteps = 0;
+    ///If the steps land on the breakpoints of the dynamic elements, see {@link Circuit#setBreakpoints(boolean)}.
+    private boolean breakpoints = false;
+    ///The {@link Circuit#schedule(double, Runnable) scheduled} events, the earliest first.
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private Matrix.Storage storage = Matrix.Storage.AUTO;
+    private Matrix.Ordering ordering = Matrix.Ordering.AUTO;
+    private int maxUpdateRank = LowRankUpdate.DEFAULT_MAX_RANK;
+    private double chordRate = DEFAULT_CHORD_RATE;
+    private NonLinearMethod nonLinearMethod = NonLinearMethod.NEWTON;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private Continuation[] continuations = {Continuation.GMIN_STEPPING, Continuation.SOURCE_STEPPING};
+    ///The strategy that solved the last non-linear operating point, and its steps.
+    private Continuation continuation = Continuation.NONE;
+    private int continuationSteps = 0;
+    ///The gmin in the nodes of the gmin stepping.
+    private double shunted = 0;
+    private long krylovIterations = 0;
+    private double bypassTolerance = 0;
+    private int parallelThreshold = 0;
+    private ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+    private int predictorOrder = 0;
+    private double relativeTolerance = DEFAULT_RELATIVE_TOLERANCE;
+    private double voltageTolerance = DEFAULT_VOLTAGE_TOLERANCE;
+    private double currentTolerance = DEFAULT_CURRENT_TOLERANCE;
+    ///The rows of X that are branch currents, the others are node voltages.
+    private boolean[] currentRows;
+    ///The Newton iterations of the last non-linear solve, and of all solves.
+    private int lastIterations = 0;
+    private long newtonIterations = 0;
+    ///Newton iterations that reused the factorization of an old Jacobian.
+    private long savedFactorizations = 0;
+    ///The fill ratio estimated to the order used in the last {@link Circuit#clean()}.
+    private double fillRatio = 1;
+    ///If the static rows are condensed, see {@link Circuit#setCondensed(boolean)}.
+    private boolean condensed = false;
+    ///If the ticks of a linear circuit are solved by superposition, see {@link Circuit#setResponse(boolean)}.
+    private boolean response = false;
+    ///The rows touched by non-linear, dynamic and operational elements, found in the last {@link Circuit#clean()}.
+    private boolean[] activeRows;
 
     private final List<Element> elements = new ArrayList<>();
+    ///The elements stamped in the matrix, the same as elements unless the {@link Circuit#setReduced(boolean) reduction} is enabled.
+    private List<Element> matrixElements = elements;
+    ///If the resistive network is reduced, see {@link Circuit#setReduced(boolean)}.
+    private boolean reduced = false;
+    private NetworkReduction networkReduction;
     private final List<Dynamic> dynamics = new ArrayList<>();
     private final List<NonLinear> nonLiners = new ArrayList<>();
     private final List<Operational> operationals = new ArrayList<>();
@@ -27,6 +180,11 @@ public class Circuit implements Serializable {
 
     protected CircuitAnalyser analyseResult;
     private MatrixBuilder matrixBuilder;
+    private LinearSolver.Backend solverBackend = LinearSolver.Backend.AUTO;
+    ///The backend selected to the matrix in the last {@link Circuit#clean()}.
+    private LinearSolver.Backend selectedBackend = LinearSolver.Backend.AUTO;
+    ///Shared by all builders, to keep the symbolic analysis done in {@link Circuit#clean()}.
+    private SparseLU sparseLU;
     /**
      * This array storage 'n' nodes voltage pointers and 'm' current throw a voltage source.<br>
      * The array it's a double[n+m][1], each index represents a double pointer, so this allows passing a reference for each element
@@ -34,6 +192,13 @@ public class Circuit implements Serializable {
      */
     private double[][] X;
 
+    ///Work arrays of the tick, allocated in the {@link Circuit#clean()}, so a tick doesn't allocate.
+    private Workspace workspace;
+    ///The helper of the current {@link Circuit#matrixBuilder}.
+    private NonLinearHelper nonLinearHelper;
+    ///The diodes evaluated together, shared by all helpers like the elements are.
+    private DiodeBank diodeBank;
+
     private boolean isDirt = true;
 
     public final void addElement(Element element){
@@ -152,31 +317,60 @@ public class Circuit implements Serializable {
 
     /**
      * Convert the random pins address to a workable value, the address is some short number between 0 and {@link Short#MAX_VALUE}.<br>
+     * The addresses are permuted by the {@link Matrix.Ordering ordering}, to reduce the fill-in of the LU decomposition.<br>
      * Defines the minimal time step in the circuit.<br>
      * Set the pointers in the {@link Pin pin}, and set the voltageSource current pointer.
      */
     private void prepareToBuild(CircuitAnalyser result){
+        //Natural order, the nodes followed by the RHS elements.
         short next = 0;
-        for (Pin pin : result.pins) {
-            //Set to useful index in a matrix.
-            pin.address = next;
-            //Set the pointer address to the same in X matrix.
-            pin.P_voltage = X[next++];
-        }
+        for (Pin pin : result.pins)
+            pin.address = next++;
 
         //Dislocate result.nodes from the top of Z matrix, to set the voltage sources values in the correct row.
         short index = (short) result.nodes;
-        //Set the RHSElements
-        for (Element e : elements){
+        for (Element e : matrixElements){
             if (e instanceof RHSElement rhs){
-                rhs.setValuePointer(X[index]);
                 rhs.setAddress(index++);
             } else if (e instanceof MultipleRHSElement mRHS) {
-                double[][] pointers = new double[mRHS.getRHSAmount()][1];
                 short[] address = new short[mRHS.getRHSAmount()];
-                for (int i = 0; i < mRHS.getRHSAmount(); i++){
-                    pointers[i] = X[index];
+                for (int i = 0; i < mRHS.getRHSAmount(); i++)
                     address[i] = index++;
+                mRHS.setAddress(address);
+            }
+        }
+
+        final int[][] graph = buildGraph(result);
+        final int[] order = ordering.order(graph, storage.isSparse(result.matrixSize));
+        fillRatio = MinimumDegree.fillRatio(graph, order);
+        final short[] position = new short[order.length];
+        for (short k = 0; k < order.length; k++)
+            position[order[k]] = k;
+
+        currentRows = new boolean[result.matrixSize];
+        for (int i = result.nodes; i < result.matrixSize; i++)
+            currentRows[position[i]] = true;
+
+        for (Pin pin : result.pins) {
+            //Set to useful index in a matrix.
+            pin.address = position[pin.address];
+            //Set the pointer address to the same in X matrix.
+            pin.P_voltage = X[pin.address];
+        }
+
+        //Set the RHSElements
+        for (Element e : matrixElements){
+            if (e instanceof RHSElement rhs){
+                final short address = position[rhs.getAddress()];
+                rhs.setValuePointer(X[address]);
+                rhs.setAddress(address);
+            } else if (e instanceof MultipleRHSElement mRHS) {
+                int[] natural = mRHS.getAddress();
+                double[][] pointers = new double[natural.length][];
+                short[] address = new short[natural.length];
+                for (int i = 0; i < natural.length; i++){
+                    address[i] = position[natural[i]];
+                    pointers[i] = X[address[i]];
                 }
                 mRHS.setValuePointer(pointers);
                 mRHS.setAddress(address);
@@ -191,17 +385,122 @@ public class Circuit implements Serializable {
         }
         if (minimal_time_step < tickRate)
             tickRate = minimal_time_step;
+
+        activeRows = findActiveRows(result);
+    }
+
+    /**
+     * The rows that can change after the build, the pins and RHS rows of {@link NonLinear non-linear},
+     * {@link Dynamic dynamic} and {@link Operational operational} elements.
+     */
+    private boolean[] findActiveRows(CircuitAnalyser result) {
+        boolean[] active = new boolean[result.matrixSize];
+        for (Element e : matrixElements) {
+            if (!(e instanceof NonLinear || e instanceof Dynamic || e instanceof Operational))
+                continue;
+            for (Pin pin : e.getPins())
+                if (pin != null)
+                    active[pin.address] = true;
+            if (e instanceof RHSElement rhs)
+                active[rhs.getAddress()] = true;
+            else if (e instanceof MultipleRHSElement mRHS)
+                for (int address : mRHS.getAddress())
+                    active[address] = true;
+        }
+        return active;
+    }
+
+    /**
+     * The pattern of the LHS as a graph, each element connects all its pins and RHS rows with each other.
+     * @return the neighbors of each unknown, using the current addresses.
+     */
+    private int[][] buildGraph(CircuitAnalyser result) {
+        final int size = result.matrixSize;
+        int[][] graph = new int[size][4];
+        int[] count = new int[size];
+
+        for (Element e : matrixElements) {
+            int[] vertices = new int[e.getPins().length + (e instanceof MultipleRHSElement m ? m.getRHSAmount() : 1)];
+            int n = 0;
+            for (Pin pin : e.getPins())
+                if (pin != null)
+                    vertices[n++] = pin.address;
+            if (e instanceof RHSElement rhs)
+                vertices[n++] = rhs.getAddress();
+            else if (e instanceof MultipleRHSElement mRHS)
+                for (int address : mRHS.getAddress())
+                    vertices[n++] = address;
+
+            for (int i = 0; i < n; i++) {
+                final int v = vertices[i];
+                for (int j = 0; j < n; j++) {
+                    if (i == j) continue;
+                    if (count[v] == graph[v].length)
+                        graph[v] = Arrays.copyOf(graph[v], graph[v].length * 2);
+                    graph[v][count[v]++] = vertices[j];
+                }
+            }
+        }
+
+        for (int v = 0; v < size; v++)
+            graph[v] = Arrays.copyOf(graph[v], count[v]);
+        return graph;
+    }
+
+    private MatrixBuilder createMatrixBuilder() {
+        MatrixBuilder builder = new MatrixBuilder(analyseResult, storage);
+        builder.setMaxUpdateRank(maxUpdateRank);
+        builder.setResponse(response && !analyseResult.isNonLinear);
+        if (condensed)
+            builder.setCondensation(activeRows);
+        //the elements register the slots in the same order in each builder, so the slots are the same.
+        for (Element e : matrixElements)
+            e.compile(builder);
+        builder.setBackend(selectedBackend);
+        builder.setSolver(sparseLU);
+        return builder;
+    }
+
+    /**
+     * Select the {@link LinearSolver solver} backend to the built matrix.<br>
+     * A {@link SparseLU} runs the symbolic analysis (pivot order and fill pattern) now, and is shared by all builders.
+     * The conductance plane of the non-linear elements is stamped before, so the pattern is the same used in the Newton iterations,
+     * and all later factorizations only need to compute the numeric values.
+     */
+    private void analyseSolver() {
+        selectedBackend = solverBackend.select(matrixBuilder.getMatrix());
+        matrixBuilder.setBackend(selectedBackend);
+        if (selectedBackend != LinearSolver.Backend.SPARSE_LU)
+            return;
+
+        sparseLU = (SparseLU) selectedBackend.create(matrixBuilder.getMatrix());
+        matrixBuilder.setSolver(sparseLU);
+        if (analyseResult.isNonLinear)
+            nonLinearHelper.jacobian();
+        matrixBuilder.factorize();
+        matrixBuilder.clear();
+    }
+
+    private NonLinearHelper createNonLinearHelper(MatrixBuilder builder) {
+        NonLinearHelper helper = new NonLinearHelper(builder, nonLiners, diodeBank);
+        helper.setBypassTolerance(bypassTolerance);
+        helper.setParallelPool(parallelPool);
+        helper.setParallelThreshold(parallelThreshold);
+        return helper;
     }
 
     private void buildMatrix() {
-        matrixBuilder = new MatrixBuilder(analyseResult);
+        matrixBuilder = createMatrixBuilder();
+        //after the compile, the diodes already have their slots.
+        diodeBank = analyseResult.isNonLinear ? new DiodeBank(nonLiners) : null;
+        nonLinearHelper = createNonLinearHelper(matrixBuilder);
 
         //Init simulable
         for (Dynamic s : dynamics)
             s.initiate(this);
 
         //Stamp and init all elements
-        for (Element e : elements)
+        for (Element e : matrixElements)
             if (!(e instanceof NonLinear))
                 e.stamp(matrixBuilder);
 
@@ -212,56 +511,198 @@ public class Circuit implements Serializable {
     }
 
     /**
-     * Due to the differential equations nature in dynamic elements as capacitor and inductors,
-     * and backwards Euler method that is used to solve it, we need to compute an additional step.<br>
-     * Backwards euler method computes an approximation of derivatives using the preview values, so as the simulation starts in t = 0, it is impossible to compute derivatives because the t = -1 not exists.<br>
-     * This extra step will initiate all electrical elements at t = 0, and compute a tiny step forwards to compute the derivatives, this step is so tiny that we can approximate it to 0
-     * thus, defining the initial conditions at t = 0.
+     * Solve the state at t = 0 once, in the matrix of the transient, so the transient starts from it without a new build.<br>
+     * Each {@link Dynamic dynamic} element stamps its companion model with the step of the {@link InitialConditions initial conditions} over the transient one.
+     * A tiny step to the given conditions, so a capacitor is a short with its initial voltage and an inductor is open with its initial current,
+     * and a huge step to the operating point, so a capacitor is open and an inductor is a short.
+     * The step is the limit of the {@link Dynamic#getOperatingPointStep(MatrixBuilder, InitialConditions) elements}, relative to the conductances around them,
+     * instead of a fixed tiny step that is too big to small capacitors, and too small to the conditioning of big ones.
+     * These conductances are only penalties, so after each solve the elements {@link Dynamic#correctOperatingPoint(MatrixBuilder, double, double) correct} their sources
+     * with the current of the penalty, and the circuit is solved again, until the opens and shorts are exact in the roundoff.<br>
+     * The LHS changes are conductance updates undone by the {@link MatrixBuilder#restore() restore}, so in a linear circuit they are
+     * {@link LowRankUpdate low-rank updates} of the transient factorization, that is kept to the first tick.
      */
-    private void solveInitialConditions(){
-        final double originalTickRate = getTickRate();
-        this.tickRate = Circuit.TICK_TO_SOLVE_INITIAL_CONDITIONS;
-        MatrixBuilder builder = new MatrixBuilder(analyseResult);
-        //todo maybe mark the capacitor and inductors as a volatile element, therefore will be stamped in the overload instead of original LHS (only because the inductance / tickRate ?).
+    private void solveOperatingPoint(){
+        if (!analyseResult.isNonLinear && !matrixBuilder.isCondensed())
+            matrixBuilder.factorize();
+        final boolean given = initialConditions == InitialConditions.GIVEN;
+        double step = given ? Double.POSITIVE_INFINITY : 0;
+        for (Dynamic dynamic : dynamics) {
+            final double limit = dynamic.getOperatingPointStep(matrixBuilder, initialConditions);
+            if (!Double.isNaN(limit))
+                step = given ? Math.min(step, limit) : Math.max(step, limit);
+        }
 
-        //initial the elements to solve initial conditions.
+        matrixBuilder.save();
         for (Dynamic dynamic : dynamics)
-            dynamic.initiate(this);
+            dynamic.preOperatingPoint(matrixBuilder, initialConditions, step);
+
+        //the sources stamped to the operating point, each non-linear solve clears them.
+        final double[] sources = analyseResult.isNonLinear ? Tools.deepCopy(matrixBuilder.getRhs()) : null;
+        if (analyseResult.isNonLinear)
+            solveNonLinearOperatingPoint(sources);
+        else
+            solveLinearOperatingPoint();
+
+        //the conductances of the opens and shorts are penalties, each correction moves their current to the sources of the next solve,
+        //so the error of the ideal elements shrinks with the ratio of the penalty to the circuit around it, until the sources stop to change.
+        for (int k = 0; k < MAX_POINT_CORRECTIONS; k++) {
+            if (sources != null)
+                for (int i = 0; i < sources.length; i++)
+                    matrixBuilder.stampRHS(i, sources[i]);
+            double change = 0;
+            for (Dynamic dynamic : dynamics)
+                change = Math.max(change, dynamic.correctOperatingPoint(matrixBuilder, POINT_RELATIVE_TOLERANCE, currentTolerance));
+            if (change <= 1)
+                break;
 
-        //dirt all operational to re-stamp.
-        for (Operational op : operationals)
-            op.dirt();
+            if (sources != null) {
+                System.arraycopy(matrixBuilder.getRhs(), 0, sources, 0, sources.length);
+                solveNonLinear(matrixBuilder);
+            } else
+                solveLinearOperatingPoint();
+        }
+        rebuildReduced();
+        matrixBuilder.clear();
+        matrixBuilder.restore();
 
-        for (var sim : dynamics)//preTick in t
-            sim.preEvaluation(builder);
+        //the state at t = 0 is the history of the first step.
+        for (Dynamic dynamic : dynamics)
+            dynamic.posOperatingPoint(matrixBuilder);
+    }
 
-        //tick in t
-        if (analyseResult.isNonLinear) {
-            for (Element e : elements)//stamp
-                if (!(e instanceof NonLinear))
-                    e.stamp(builder);
-            builder.close();
+    ///Solve the linear operating point with the low-rank updates of the factorization, and one step of iterative refinement of its roundoff.
+    private void solveLinearOperatingPoint() {
+        final double[] solution = workspace.solution, residual = workspace.fx, correction = workspace.dx;
+        final double[] rhs = matrixBuilder.getRhs();
+        matrixBuilder.solve(rhs, solution);
+        matrixBuilder.getMatrix().multiply(solution, residual);
+        for (int i = 0; i < residual.length; i++)
+            residual[i] = rhs[i] - residual[i];
+        matrixBuilder.solve(residual, correction);
+        for (int i = 0; i < solution.length; i++)
+            solution[i] += correction[i];
+        injectValuesInX(solution);
+    }
 
-            solveNonLinear(builder);
-        } else {
-            for (Element e : elements)//stamp
-                e.stamp(builder);
-            builder.close();
+    /**
+     * Solve the non-linear operating point by the Newton method, and if it can't converge, by each {@link Circuit#setContinuations(Continuation...) continuation}.<br>
+     * Each continuation solves a sequence of easier circuits that ends in the real one, each solve starts from the last solution,
+     * and a step that can't converge is tried again smaller. The strategy that converged is {@link Circuit#getContinuation() kept} and logged.
+     */
+    private void solveNonLinearOperatingPoint(double[] sources) {
+        final double[] start = new double[X.length];
+        for (int i = 0; i < start.length; i++)
+            start[i] = X[i][0];
+        continuation = Continuation.NONE;
+        continuationSteps = 0;
+        if (converges(sources, 1))
+            return;
+
+        for (Continuation strategy : continuations) {
+            injectValuesInX(start);
+            continuationSteps = 0;
+            final boolean converged = switch (strategy) {
+                case NONE -> false;
+                case GMIN_STEPPING -> gminStepping(sources);
+                case SOURCE_STEPPING -> sourceStepping(sources);
+            };
+            if (converged) {
+                continuation = strategy;
+                LOGGER.log(System.Logger.Level.INFO, "The operating point converged by {0} in {1} steps.", strategy, continuationSteps);
+                return;
+            }
+            LOGGER.log(System.Logger.Level.DEBUG, "The operating point didn't converge by {0}.", strategy);
+        }
+        throw new NonConvergenceException("The circuit can't converge!");
+    }
 
-            injectValuesInX(builder.getResult());
+    ///Solve the non-linear circuit with the sources multiplied by the scale.
+    private boolean converges(double[] sources, double scale) {
+        for (int i = 0; i < sources.length; i++)
+            matrixBuilder.stampRHS(i, sources[i] * scale);
+        try {
+            solveNonLinear(matrixBuilder);
+            return true;
+        } catch (NonConvergenceException | SingularMatrixException e) {//a wrong use isn't a step of the continuation.
+            return false;
         }
+    }
 
-        //Pos tick
-        for (var sim : dynamics)
-            sim.posEvaluation(builder);
+    /**
+     * Solve with a conductance from each node to the ground, that keeps the junctions near 0 V and the Jacobian far from singular.<br>
+     * The conductance is divided by a factor each step until {@link Circuit#GMIN_END}, then removed.
+     * A step that can't converge is tried again with the square root of the factor, that grows back after each converged step,
+     * and a first gmin that can't converge is multiplied by {@link Circuit#GMIN_FACTOR}, a junction only driven by currents needs a big one.
+     */
+    private boolean gminStepping(double[] sources) {
+        final double[] good = workspace.saved;
+        for (int i = 0; i < good.length; i++)
+            good[i] = X[i][0];
+        double gmin = GMIN_START, last = Double.NaN, factor = GMIN_FACTOR;
+        while (continuationSteps++ < MAX_CONTINUATION_STEPS) {
+            shunt(gmin);
+            if (converges(sources, 1)) {
+                if (gmin == 0)
+                    return true;
+                for (int i = 0; i < good.length; i++)
+                    good[i] = X[i][0];
+                last = gmin;
+                gmin = gmin / factor < GMIN_END ? 0 : gmin / factor;
+                factor = Math.min(factor * factor, GMIN_FACTOR);
+            } else {
+                injectValuesInX(good);
+                if (Double.isNaN(last)) {//a bigger gmin makes the circuit closer to linear.
+                    gmin *= GMIN_FACTOR;
+                    if (gmin > GMIN_MAX)
+                        break;
+                    continue;
+                }
+                //start again from the last converged gmin, with a smaller step.
+                if (factor < MIN_GMIN_FACTOR)
+                    break;
+                factor = Math.sqrt(factor);
+                gmin = last / factor;
+            }
+        }
+        shunt(0);
+        return false;
+    }
 
-        for (var op : operationals)
-            op.clear();
+    private void shunt(double gmin) {
+        for (int i = 0; i < currentRows.length; i++)
+            if (!currentRows[i])
+                matrixBuilder.updateConductance(i, -1, gmin - shunted);
+        shunted = gmin;
+    }
 
-        this.tickRate = originalTickRate;
-        //Start simulable elements with original tick rate.
-        for (Dynamic dynamic : dynamics)
-            dynamic.initiate(this);
+    /**
+     * Solve with all sources multiplied by a scale from 0 to 1, starting from the solution with all sources off (0 V).<br>
+     * The increase of the scale doubles after each converged step, and is cut by half after a step that can't converge.
+     */
+    private boolean sourceStepping(double[] sources) {
+        final double[] good = workspace.saved;
+        for (int i = 0; i < good.length; i++)
+            good[i] = 0;
+        injectValuesInX(good);
+        double scale = 0, step = SOURCE_STEP;
+        while (continuationSteps++ < MAX_CONTINUATION_STEPS) {
+            final double next = Math.min(1, scale + step);
+            if (converges(sources, next)) {
+                if (next == 1)
+                    return true;
+                for (int i = 0; i < good.length; i++)
+                    good[i] = X[i][0];
+                scale = next;
+                step *= 2;
+            } else {
+                injectValuesInX(good);
+                step /= 2;
+                if (step < MIN_SOURCE_STEP)
+                    break;
+            }
+        }
+        return false;
     }
 
     private void solveNonLinear(MatrixBuilder original){
@@ -269,10 +710,12 @@ public class Circuit implements Serializable {
         //This entire block is to linearize the non-linear components.
         //--------------------------------------------------------------
         original.lock();
-        NonLinearHelper nl = new NonLinearHelper(original, nonLiners);
-        double[] x = new double[X.length]; //initial x in the X point.
-        double[] dx = new double[X.length];// initial dx with max double value.
-        double[] fx;
+        final NonLinearHelper nl = original == matrixBuilder ? nonLinearHelper : createNonLinearHelper(original);
+        double[] x = workspace.x; //initial x in the X point.
+        double[] dx = workspace.dx;// initial dx with max double value.
+        double[] fx = workspace.fx;
+        double[] t = workspace.t;
+        double[] ft = workspace.ft;
         int inter = 0;
 
         //initiate x and dx.
@@ -281,40 +724,200 @@ public class Circuit implements Serializable {
             dx[i] = Double.MAX_VALUE;
         }
 
-        fx = nl.f(x); //compute the initial fx
-
-        for (; inter < 500; inter++){
-            if (Tools.norm(fx) < 1e-6 || Tools.norm(dx) < 1e-6)//check for convergence.
+        nl.f(x, fx); //compute the initial fx
+        //start from the predicted solution if it is closer, an extrapolation over a junction can be far.
+        if (original == matrixBuilder && predict(t)) {
+            injectValuesInX(t);
+            nl.f(t, ft);
+            if (!nl.isLimited() && Tools.norm(ft) < Tools.norm(fx)) {
+                double[] swap = x;
+                x = t;
+                t = swap;
+                swap = fx;
+                fx = ft;
+                ft = swap;
+            } else {
+                injectValuesInX(x);
+                nl.f(x, fx);
+            }
+        }
+        //chord Newton, the factorization of the last Jacobian (even from the last tick) is reused while f decreases fast enough.
+        final BroydenUpdate broyden = nonLinearMethod == NonLinearMethod.BROYDEN ? workspace.broyden() : null;
+        final boolean krylov = nonLinearMethod == NonLinearMethod.JFNK;
+        boolean refresh = (chordRate <= 0 && broyden == null && !krylov) || (!krylov && !original.isFactored());
+        if (broyden != null)
+            broyden.clear();
+        //the chord steps converge linearly, not quadratically, so they need a smaller tolerance to be as accurate as Newton.
+        double scale = 1;
+        //a small dx of a bad chord step, cut by the line search, isn't convergence.
+        boolean trusted = true;
+
+        for (; inter < maxIterations; inter++){
+            //check for convergence, a limited junction isn't in the solution yet.
+            if (!nl.isLimited() && ((trusted && isConverged(nl, x, dx, fx, scale)) || isResidualConverged(fx, scale)))
                 break;
 
-            injectValuesInX(x);//update pointer values to the components compute using x
-            dx = LU.decompose(Tools.deepCopy(nl.jacobian())).solve(Tools.deepCopy(fx));//get the jacobian and find a dx that solves J(u)*u=f(u).
+            final boolean fresh = refresh || krylov;
+            boolean solved = true;
+            if (krylov)
+                solved = solveKrylov(original, nl, x, fx, dx, refresh);
+            else {
+                if (refresh) {
+                    injectValuesInX(x);//update pointer values to the components compute using x
+                    nl.jacobian();
+                    if (broyden != null)
+                        broyden.clear();
+                } else
+                    savedFactorizations++;
+                original.solve(fx, dx);//get the jacobian and find a dx that solves J(u)*u=f(u).
+                if (broyden != null)
+                    broyden.correct(dx);
+            }
 
-            double[] t = Tools.subtract(x, dx); //calculate t the new x
+            for (int i = 0; i < t.length; i++)//calculate t the new x
+                t[i] = x[i] - dx[i];
 
             injectValuesInX(t);//update again now using t, the new x
-            double[] ft = nl.f(t);//calculate the f(t)
+            nl.startLine();
+            nl.f(t, ft);//calculate the f(t)
             double a = 1;
             int subinter = 0;
+            final double normFx = Tools.norm(fx);
 
-            while (Tools.norm(ft) >= Tools.norm(fx) && subinter < 50){//check the system is converging to 0, the new point f(t) < f(x)
+            //a limited junction already shortened the step, and f(t) is of its linearization, so it can't be compared with f(x).
+            while (!nl.isLimited() && Tools.norm(ft) >= normFx && subinter < 50){//check the system is converging to 0, the new point f(t) < f(x)
                 a /= 2.0;//if it isn't converging, reduce the step by half.
-                t = Tools.subtract(x, Tools.multiply(dx,a));//compute the new subT, t = x - a*dx
+                for (int i = 0; i < t.length; i++)//compute the new subT, t = x - a*dx
+                    t[i] = x[i] - dx[i] * a;
                 injectValuesInX(t);//update values in component to subT.
-                ft = nl.f(t);//re compute f(t) now using the subT
+                nl.fLine(a, ft);//re compute f(t) now using the subT, without the matrix product.
 
                 subinter++;
             }
-
-            dx = Tools.subtract(x,t);//recompute the dx. if the initial t isn't converging, the t was updated inside the loop, and we need to calculate dx again using the new t.
-            x = t;//the new guess is t.
-            fx = ft;//how t is the new guess, update f(guess) to f(t).
+            //the line search can't reduce f, so f is in its roundoff and only the full Newton step can be checked.
+            if (subinter == 50 && !nl.isLimited() && isStepConverged(x, dx, scale)) {
+                injectValuesInX(x);
+                break;
+            }
+            if (krylov)//a stagnated step needs a better preconditioner.
+                refresh = !solved || Tools.norm(ft) >= normFx;
+            else if (broyden == null)
+                refresh = chordRate <= 0 || nl.isLimited() || Tools.norm(ft) > normFx * chordRate;
+            else//a limited junction changes f, so isn't a secant of it.
+                refresh = nl.isLimited() || Tools.norm(ft) > normFx * BROYDEN_STAGNATION || !secant(original, broyden, x, t, fx, ft);
+            scale = fresh ? 1 : CHORD_TOLERANCE;
+            trusted = (fresh || !refresh) && subinter == 0;
+
+            for (int i = 0; i < dx.length; i++)//recompute the dx. if the initial t isn't converging, the t was updated inside the loop, and we need to calculate dx again using the new t.
+                dx[i] = x[i] - t[i];
+            //the new guess is t, and f(guess) is f(t), swap the arrays to reuse the old ones.
+            double[] swap = x;
+            x = t;
+            t = swap;
+            swap = fx;
+            fx = ft;
+            ft = swap;
+        }
+        if (inter == maxIterations) {
+            original.unlock();
+            original.clear();
+            throw new NonConvergenceException("The circuit can't converge!");
         }
-        if (inter == 500)
-            throw new IllegalStateException("The circuit can't converge!");
+        lastIterations = inter;
+        newtonIterations += inter;
 
         original.unlock();
-        original.clear();
+        if (chordRate > 0 || broyden != null || krylov)
+            original.clearRhs();//keep the Jacobian, so the next tick can reuse the factorization.
+        else
+            original.clear();
+    }
+
+    /**
+     * Solve the Newton step J(x) * dx = f(x) by GMRES, with J(x) * v computed by finite differences of f.<br>
+     * The preconditioner is the factorization of the builder, the static LHS if it isn't singular, like a node only connected by
+     * non-linear elements, otherwise the Jacobian in x. The Jacobian is also used after a stagnated step, and solves the step of a limited junction.
+     * @return true if GMRES converged.
+     */
+    private boolean solveKrylov(MatrixBuilder builder, NonLinearHelper nl, double[] x, double[] fx, double[] dx, boolean stagnated) {
+        //f(x) of a limited junction is its linearization, the finite differences would move the junction, so it is a Newton step.
+        if (nl.isLimited()) {
+            injectValuesInX(x);
+            nl.jacobian();
+            builder.solve(fx, dx);
+            return true;
+        }
+        if (stagnated || !builder.isFactored()) {
+            boolean singular = stagnated;
+            if (!singular) {
+                builder.clearLhs();
+                try {
+                    builder.factorize();
+                } catch (SingularMatrixException e) {
+                    singular = true;
+                }
+            }
+            if (singular) {
+                injectValuesInX(x);
+                nl.jacobian();
+                builder.factorize();
+            }
+        }
+
+        final JacobianProduct product = workspace.jacobianProduct(this);
+        product.nl = nl;
+        product.x = x;
+        product.fx = fx;
+        //the perturbations are smaller than any bypass tolerance.
+        final double bypass = nl.getBypassTolerance();
+        nl.setBypassTolerance(0);
+        final GMRES gmres = workspace.gmres();
+        final boolean converged = gmres.solve(product, builder::solve, fx, dx, KRYLOV_TOLERANCE, MAX_KRYLOV_ITERATIONS);
+        krylovIterations += gmres.getIterations();
+        nl.setBypassTolerance(bypass);
+
+        //the elements and the line search start in x again.
+        injectValuesInX(x);
+        nl.f(x, workspace.change);
+        return converged;
+    }
+
+    ///J(x) * v = (f(x + h * v) - f(x)) / h.
+    private final class JacobianProduct implements GMRES.Operator {
+        private NonLinearHelper nl;
+        private double[] x, fx;
+
+        @Override
+        public void apply(double[] v, double[] result) {
+            final double normV = Tools.norm(v);
+            if (normV == 0) {
+                Arrays.fill(result, 0);
+                return;
+            }
+            final double[] probe = workspace.step;
+            final double h = FINITE_DIFFERENCE_STEP * (1 + Tools.norm(x)) / normV;
+            for (int i = 0; i < probe.length; i++)
+                probe[i] = x[i] + h * v[i];
+            injectValuesInX(probe);
+            nl.f(probe, result);
+            for (int i = 0; i < result.length; i++)
+                result[i] = (result[i] - fx[i]) / h;
+        }
+    }
+
+    /**
+     * Add the secant step from x to t in the Broyden updates.
+     * @return false if the update can't be applied, so a new Jacobian is needed.
+     */
+    private boolean secant(MatrixBuilder builder, BroydenUpdate broyden, double[] x, double[] t, double[] fx, double[] ft) {
+        final double[] step = workspace.step, change = workspace.change;
+        for (int i = 0; i < step.length; i++) {
+            step[i] = t[i] - x[i];
+            change[i] = ft[i] - fx[i];
+        }
+        builder.solve(change, change);
+        broyden.correct(change);
+        return broyden.update(step, change);
     }
 
     ///Tick one time step
@@ -322,68 +925,295 @@ public class Circuit implements Serializable {
         if (isDirt)
             clean();
         else {
-            for (var op : operationals) {
+            //apply the operational changes in the matrix, or rebuild it if some can't be applied.
+            for (int i = 0; i < operationals.size(); i++) {
+                final Operational op = operationals.get(i);
                 if (op.isDirt()) {
-                    buildMatrix();
-                    break;
+                    workspace.stored = 0;//the solution isn't smooth.
+                    if (op.stampChanges(matrixBuilder))
+                        op.clear();
+                    else {
+                        buildMatrix();
+                        break;
+                    }
                 }
             }
 
-            //we are in t, so use actual values to prepare evaluation to t+1
-            for (Dynamic element : dynamics)
-                element.preEvaluation(matrixBuilder);
-
-            if (analyseResult.isNonLinear) {
-                solveNonLinear(matrixBuilder);
-            }
-            else
-                injectValuesInX(matrixBuilder.getResult());//Evaluation from t to t + 1
+            final double regular = tickRate;
+            final boolean cut = landOnBreakpoint();
+            final double error = adaptive ? adaptiveStep() : 0;
+            if (!adaptive)
+                step();
+            if (analyseResult.isNonLinear && predictorOrder > 0)
+                workspace.record(X);
+            rebuildReduced();
+            lastStep = tickRate;
+            time += tickRate;
 
             //Pos ticking to calculate values in t + 1
-            for (var sim : dynamics)
-                sim.posEvaluation(matrixBuilder);
+            for (int i = 0; i < dynamics.size(); i++)
+                dynamics.get(i).posEvaluation(matrixBuilder);
+
+            if (adaptive)//the step allowed by the error.
+                changeStep(tickRate * Math.min(MAX_STEP_FACTOR, stepFactor(Math.max(error, 1e-12))));
+            else if (cut)
+                setStep(regular);
+
+            //run the events of this time, the next tick applies their changes.
+            while (!events.isEmpty() && events.peek().time - time <= BREAKPOINT_TOLERANCE * lastStep)
+                events.poll().action.run();
 
             //run watchers
-            for (Watcher<?> watcher : watchers)
-                watcher.run();
+            for (int i = 0; i < watchers.size(); i++)
+                watchers.get(i).run();
+        }
+    }
+
+    ///Solve the evolution step from t to t + tick rate.
+    private void step() {
+        //we are in t, so use actual values to prepare evaluation to t+1
+        //indexed loops, to not allocate iterators.
+        for (int i = 0; i < dynamics.size(); i++)
+            dynamics.get(i).preEvaluation(matrixBuilder);
+
+        if (analyseResult.isNonLinear)
+            solveNonLinear(matrixBuilder);
+        else {
+            matrixBuilder.getResult(workspace.solution);//Evaluation from t to t + 1
+            injectValuesInX(workspace.solution);
+        }
+    }
+
+    /**
+     * Cut the step to land on the next breakpoint, of a {@link Dynamic#getNextBreakpoint(double) dynamic} element if
+     * {@link Circuit#setBreakpoints(boolean) enabled}, or of a {@link Circuit#schedule(double, Runnable) scheduled} event.
+     * A breakpoint in the next two steps splits them in half, so the step after it isn't tiny.
+     * @return true if the step was changed.
+     */
+    private boolean landOnBreakpoint() {
+        double next = events.isEmpty() ? Double.POSITIVE_INFINITY : events.peek().time;
+        if (breakpoints)
+            for (int i = 0; i < dynamics.size(); i++)
+                next = Math.min(next, dynamics.get(i).getNextBreakpoint(time));
+
+        final double remaining = next - time;
+        if (!(remaining < 2 * tickRate) || remaining <= BREAKPOINT_TOLERANCE * tickRate)
+            return false;
+        if (Math.abs(remaining - tickRate) <= BREAKPOINT_TOLERANCE * tickRate)
+            return false;//already lands on it.
+        setStep(remaining < tickRate ? remaining : remaining / 2);
+        return true;
+    }
+
+    /**
+     * Solve the evolution step, and solve it again with a smaller step while the truncation error of any {@link Dynamic dynamic}
+     * element is bigger than its tolerance, until the min step.
+     * @return the biggest error over the tolerance of the accepted step.
+     */
+    private double adaptiveStep() {
+        final double[] saved = workspace.saved;
+        for (int i = 0; i < saved.length; i++)
+            saved[i] = X[i][0];
+        while (true) {
+            step();
+            double error = 0;
+            errorOrder = 1;
+            for (int i = 0; i < dynamics.size(); i++) {
+                final Dynamic dynamic = dynamics.get(i);
+                final double e = dynamic.getTruncationError(truncationRelative, truncationVoltage, truncationCurrent);
+                if (e > error) {
+                    error = e;
+                    errorOrder = dynamic.getTruncationOrder();
+                }
+            }
+            if (error <= 1 || tickRate <= minStep)
+                return error;
+
+            rejectedSteps++;
+            injectValuesInX(saved);
+            changeStep(tickRate * Math.max(MIN_STEP_FACTOR, stepFactor(error)));
         }
     }
 
+    ///The factor of the step that makes the error over its tolerance reach the safety, the error grows with step<sup>order + 1</sup> of the last step.
+    private double stepFactor(double error) {
+        return STEP_SAFETY * Math.pow(error, -1.0 / (errorOrder + 1));
+    }
+
+    ///Change the tick rate between two evolution steps, limited by the min and max step.
+    private void changeStep(double step) {
+        setStep(Math.max(minStep, Math.min(step, Math.min(maxStep, minimal_time_step))));
+    }
+
+    ///Change the tick rate between two evolution steps, see {@link Dynamic#stepChanged(Circuit, MatrixBuilder)}.
+    private void setStep(double step) {
+        if (step == tickRate)
+            return;
+        tickRate = step;
+        workspace.stored = 0;//the history is in other step.
+        for (int i = 0; i < dynamics.size(); i++)
+            dynamics.get(i).stepChanged(this, matrixBuilder);
+    }
+
 
     /**
      * Simulate 'time' seconds.
      * @param t_sec total time in seconds to simulate.
      */
     public void tick(double t_sec) {
+        if (canJump()) {
+            //all steps except the last one are a jump, the count isn't the one of the loop, that accumulates the rounding of each step.
+            final long steps = (long) Math.ceil(t_sec / tickRate - BREAKPOINT_TOLERANCE);
+            if (steps > 2) {
+                jump(steps - 1);
+                tick();
+                return;
+            }
+        }
         double t = 0;
         while (t_sec > t){
             tick();
-            t += tickRate;
+            t += lastStep;
         }
     }
 
+    ///@return if the next ticks can be a jump of the {@link StateSpace state space}, see {@link Circuit#setStateSpace(boolean)}.
+    private boolean canJump() {
+        return stateSpace && !isDirt && analyseResult.isTimeInvariant && !dynamics.isEmpty()
+                && integrationMethod == IntegrationMethod.BACKWARD_EULER && !adaptive && events.isEmpty() && watchers.isEmpty();
+    }
+
+    ///Advance the steps in the {@link StateSpace state space} of the circuit, compiled in the first jump of each build and step.
+    private void jump(long steps) {
+        if (compiledStateSpace == null || compiledStateSpace.getStep() != tickRate) {
+            List<LinearDynamic> linear = new ArrayList<>(dynamics.size());
+            for (Dynamic dynamic : dynamics)
+                linear.add((LinearDynamic) dynamic);
+            compiledStateSpace = new StateSpace(linear, matrixBuilder, X, workspace.solution, tickRate);
+        }
+        compiledStateSpace.jump(steps);
+        time += steps * tickRate;
+        lastStep = tickRate;
+        jumpedSteps += steps;
+    }
+
 
     public void dirt() {
         isDirt = true;
     }
 
     public void clean() {
+        lastStep = tickRate;
         analyseResult = new CircuitAnalyser(this);
 
         try {checkInconsistencies();} catch (IllegalStateException e) {
             throw new RuntimeException("Circuit with inconsistencies!", e);
         }
+        reduce();
 
         final int size = analyseResult.matrixSize;
-        if (X == null)
+        if (X == null || X.length != size)
             X = new double[size][1];
+        workspace = new Workspace(X.length);
         prepareToBuild(analyseResult);
 
+        sparseLU = null;
+        compiledStateSpace = null;
+        selectedBackend = solverBackend;
         buildMatrix();
+        analyseSolver();
 
         isDirt = false;
     }
 
+    ///Apply the {@link NetworkReduction network reduction}, if enabled, and analyse the reduced circuit.
+    private void reduce() {
+        if (reduced) {
+            networkReduction = new NetworkReduction(elements, watchers);
+            matrixElements = networkReduction.getElements();
+            analyseResult = new CircuitAnalyser(matrixElements);
+        } else {
+            networkReduction = null;
+            matrixElements = elements;
+        }
+    }
+
+    ///Rebuild the voltages of the nodes eliminated by the {@link NetworkReduction network reduction}.
+    private void rebuildReduced() {
+        if (networkReduction != null)
+            networkReduction.rebuild();
+    }
+
+    /**
+     * Check each unknown and each equation, like SPICE:
+     * <ul>
+     *     <li>The last Newton step, |dx| &lt;= reltol * max(|x|, |x + dx|) + abstol, with the absolute tolerance of the voltages
+     *     in the node unknowns, and of the currents in the branch unknowns.</li>
+     *     <li>The residual, |f(x)| &lt;= reltol * scale + abstol, where the node equations balance currents, and the branch
+     *     equations balance voltages. So the currents of the non-linear elements are also converged.</li>
+     * </ul>
+     * @param scale multiply all tolerances.
+     */
+    private boolean isConverged(NonLinearHelper nl, double[] x, double[] dx, double[] fx, double scale) {
+        if (!isStepConverged(x, dx, scale))
+            return false;
+        for (int i = 0; i < x.length; i++) {
+            final double residual = relativeTolerance * nl.getScale(i) + (currentRows[i] ? voltageTolerance : currentTolerance);
+            if (!(Math.abs(fx[i]) <= residual * scale))
+                return false;
+        }
+        return true;
+    }
+
+    ///Check only the last Newton step of each unknown, see {@link Circuit#isConverged(NonLinearHelper, double[], double[], double[], double)}.
+    private boolean isStepConverged(double[] x, double[] dx, double scale) {
+        for (int i = 0; i < x.length; i++) {
+            final double step = relativeTolerance * Math.max(Math.abs(x[i]), Math.abs(x[i] + dx[i]))
+                    + (currentRows[i] ? currentTolerance : voltageTolerance);
+            if (!(Math.abs(dx[i]) <= step * scale))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Check only the residual of each equation against the absolute tolerance, |f(x)| &lt;= abstol, the current tolerance in the node
+     * equations and the voltage tolerance in the branch equations.<br>
+     * A residual in the roundoff of f can't be reduced by the line search, so the step check isn't trusted,
+     * like a node that floats with only the gmin of the junctions, where the Newton step is big but f barely changes.
+     * @param scale multiply all tolerances.
+     */
+    private boolean isResidualConverged(double[] fx, double scale) {
+        for (int i = 0; i < fx.length; i++)
+            if (!(Math.abs(fx[i]) <= (currentRows[i] ? voltageTolerance : currentTolerance) * scale))
+                return false;
+        return true;
+    }
+
+    /**
+     * Extrapolate the solution of the next tick from the history, with a polynomial of the {@link Circuit#setPredictorOrder(int) predictor order},
+     * or a lower order if the history is too short.
+     * @return false if there isn't a prediction.
+     */
+    private boolean predict(double[] x) {
+        final int order = Math.min(predictorOrder, workspace.stored - 1);
+        final double[][] h = workspace.history;
+        switch (order) {
+            case 1 -> {
+                for (int i = 0; i < x.length; i++)
+                    x[i] = 2 * h[0][i] - h[1][i];
+            }
+            case 2 -> {
+                for (int i = 0; i < x.length; i++)
+                    x[i] = 3 * h[0][i] - 3 * h[1][i] + h[2][i];
+            }
+            default -> {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Values like the voltage in 'n' node needs to be injected in the components.<br>
      * The Voltage source needs the current to calculate the power.
@@ -399,7 +1229,7 @@ public class Circuit implements Serializable {
     public void preCompile(){
         mergePins();
         clean();
-        solveInitialConditions();
+        solveOperatingPoint();
     }
 
     public Element[] getElements() {
@@ -444,9 +1274,494 @@ public class Circuit implements Serializable {
         return tickRate;
     }
 
+    /**
+     * Select the approximation of the differential equations of the {@link Dynamic dynamic} elements.<br>
+     * The second order methods, {@link IntegrationMethod#TRAPEZOIDAL TRAPEZOIDAL} and {@link IntegrationMethod#BDF2 BDF2},
+     * have the same error of the {@link IntegrationMethod#BACKWARD_EULER BACKWARD_EULER} with much bigger steps,
+     * and don't damp the oscillations like it does. Each element keeps the history of its last steps, and starts with a backward Euler step.
+     */
+    public void setIntegrationMethod(IntegrationMethod method) {
+        this.integrationMethod = Objects.requireNonNull(method);
+        dirt();
+    }
+
+    public IntegrationMethod getIntegrationMethod() {
+        return integrationMethod;
+    }
+
+    /**
+     * Select how the state of the {@link Dynamic dynamic} elements at t = 0 is solved in the next {@link Circuit#preCompile()}.<br>
+     * The {@link InitialConditions#GIVEN given} conditions use the {@link kuse.welbre.sim.electrical.elements.Capacitor#setInitialVoltage(double) voltage}
+     * of each capacitor and the {@link kuse.welbre.sim.electrical.elements.Inductor#setInitialCurrent(double) current} of each inductor,
+     * and the {@link InitialConditions#OPERATING_POINT operating point} ignores them, so the circuit starts in its DC steady state.
+     */
+    public void setInitialConditions(InitialConditions initialConditions) {
+        this.initialConditions = Objects.requireNonNull(initialConditions);
+    }
+
+    public InitialConditions getInitialConditions() {
+        return initialConditions;
+    }
+
+    /**
+     * Choose the time step of each tick by the local truncation error of the {@link Dynamic dynamic} elements, like the capacitors and inductors.<br>
+     * The error of each step is estimated from the last steps, a step with an error bigger than the
+     * {@link Circuit#setTruncationTolerances(double, double, double) tolerances} is rejected and solved again with a smaller step,
+     * otherwise the next step grows while the error stays small, between the {@link Circuit#setStepLimits(double, double) step limits}.
+     * The {@link Circuit#getTickRate() tick rate} is the step of the next tick, the first is the one set.<br>
+     * Each step change is a conductance change in the LHS, so it costs a factorization or a {@link LowRankUpdate low-rank update}.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * The smallest and biggest step of the {@link Circuit#setAdaptive(boolean) adaptive} step,
+     * the biggest is also limited by the {@link Dynamic#getMinTickRate() dynamic elements}.
+     */
+    public void setStepLimits(double min, double max) {
+        if (min <= 0 || max < min)
+            throw new IllegalArgumentException("Step limits must be positive, and min <= max!");
+        this.minStep = min;
+        this.maxStep = max;
+    }
+
+    public double getMinStep() {
+        return minStep;
+    }
+
+    public double getMaxStep() {
+        return maxStep;
+    }
+
+    /**
+     * The max local truncation error in a step of the {@link Circuit#setAdaptive(boolean) adaptive} step,
+     * relative * |value| + absolute, with the voltage tolerance to the capacitors, and the current tolerance to the inductors.
+     */
+    public void setTruncationTolerances(double relative, double voltage, double current) {
+        if (relative < 0 || voltage <= 0 || current <= 0)
+            throw new IllegalArgumentException("Tolerances must be positive!");
+        this.truncationRelative = relative;
+        this.truncationVoltage = voltage;
+        this.truncationCurrent = current;
+    }
+
+    public double getTruncationRelative() {
+        return truncationRelative;
+    }
+
+    public double getTruncationVoltage() {
+        return truncationVoltage;
+    }
+
+    public double getTruncationCurrent() {
+        return truncationCurrent;
+    }
+
+    ///@return the steps rejected by the truncation error, and solved again with a smaller step.
+    public long getRejectedSteps() {
+        return rejectedSteps;
+    }
+
+    ///@return the simulated time, the sum of the steps of all ticks.
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Cut the steps to land on the {@link Dynamic#getNextBreakpoint(double) breakpoints} of the dynamic elements, like the edges of a
+     * {@link kuse.welbre.sim.electrical.elements.SquareVoltageSource square wave}, so the edges are in the exact time with any tick rate.
+     * The step after a breakpoint returns to the tick rate, or to the {@link Circuit#setAdaptive(boolean) adaptive} step.<br>
+     * Disabled by default, so the ticks stay in the regular grid of the tick rate.
+     */
+    public void setBreakpoints(boolean breakpoints) {
+        this.breakpoints = breakpoints;
+    }
+
+    public boolean isBreakpoints() {
+        return breakpoints;
+    }
+
+    /**
+     * Run the action after the tick that reaches the time, the steps are cut to land exactly on it.<br>
+     * So a change in an {@link Operational operational} element, like {@code circuit.schedule(0.5, () -> sw.setOpen(false))},
+     * is applied in the next tick, without a small tick rate in the whole simulation. An action in a past time runs after the next tick.
+     * @param time the {@link Circuit#getTime() time} of the circuit.
+     */
+    public void schedule(double time, Runnable action) {
+        events.add(new Event(time, Objects.requireNonNull(action)));
+    }
+
+    ///An action {@link Circuit#schedule(double, Runnable) scheduled} in a time, in the order of the time.
+    private static final class Event implements Comparable<Event> {
+        private final double time;
+        private final Runnable action;
+
+        private Event(double time, Runnable action) {
+            this.time = time;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event o) {
+            return Double.compare(time, o.time);
+        }
+    }
+
+    ///@return the step of the last tick.
+    public double getLastStep() {
+        return lastStep;
+    }
+
+    /**
+     * Defines how the LHS matrix is storage.<br>
+     * By default {@link Matrix.Storage#AUTO AUTO} is used, so circuits with {@link Matrix.Storage#SPARSE_THRESHOLD} or more rows use a sparse matrix.
+     */
+    public void setStorage(Matrix.Storage storage) {
+        this.storage = Objects.requireNonNull(storage);
+        dirt();
+    }
+
+    public Matrix.Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Defines how many conductances changed by {@link Operational operational} elements are accumulated in a
+     * {@link LowRankUpdate low-rank update} before a new factorization, 0 always factorizes again.
+     */
+    public void setMaxUpdateRank(int maxUpdateRank) {
+        if (maxUpdateRank < 0)
+            throw new IllegalArgumentException("Max update rank must be positive!");
+        this.maxUpdateRank = maxUpdateRank;
+        if (matrixBuilder != null)
+            matrixBuilder.setMaxUpdateRank(maxUpdateRank);
+    }
+
+    public int getMaxUpdateRank() {
+        return maxUpdateRank;
+    }
+
+    /**
+     * Defines when a Newton iteration reuses the factorization of the last Jacobian (chord Newton), instead of stamping
+     * and factorizing a new one.<br>
+     * The Jacobian is reused while each iteration reduces the norm of f(x) by this factor, ||f(x<sub>k+1</sub>)|| &lt;= rate * ||f(x<sub>k</sub>)||,
+     * otherwise it is refreshed in the next iteration. The last Jacobian of a tick is also used in the next tick.<br>
+     * The chord steps converge with a smaller tolerance, but a node held only by reverse biased junctions (1e-12 S) may still
+     * stop in a different voltage than the full Newton, so it is disabled by default.
+     * @param rate between 0 and 1, 0 always factorizes a new Jacobian (full Newton).
+     */
+    public void setChordRate(double rate) {
+        if (rate < 0 || rate >= 1)
+            throw new IllegalArgumentException("Chord rate must be in [0, 1)!");
+        this.chordRate = rate;
+    }
+
+    public double getChordRate() {
+        return chordRate;
+    }
+
+    ///@return how many Newton iterations reused the factorization of an old Jacobian, instead of a new factorization.
+    public long getSavedFactorizations() {
+        return savedFactorizations;
+    }
+
+    /**
+     * Select the iteration of the non-linear solver.<br>
+     * {@link NonLinearMethod#BROYDEN BROYDEN} only stamps and factorizes a new Jacobian in the first iteration,
+     * when a step stagnates, or after {@link BroydenUpdate#DEFAULT_MAX_RANK} updates, so each other iteration costs one more solve
+     * with the old factorization instead of the Jacobian of all non-linear elements. Like the chord Newton, the last Jacobian is
+     * used in the next tick.
+     */
+    public void setNonLinearMethod(NonLinearMethod method) {
+        this.nonLinearMethod = Objects.requireNonNull(method);
+    }
+
+    public NonLinearMethod getNonLinearMethod() {
+        return nonLinearMethod;
+    }
+
+    ///@return the products of the Jacobian with a vector made by the {@link NonLinearMethod#JFNK JFNK} iterations.
+    public long getKrylovIterations() {
+        return krylovIterations;
+    }
+
+    /**
+     * Defines when the Newton iterations converged, each unknown is checked with its last step, and each equation with its residual:<br>
+     * |dx| &lt;= relative * max(|x|, |x + dx|) + absolute<br>
+     * |f(x)| &lt;= relative * max(|LHS * x|, |RHS|) + absolute<br>
+     * where the absolute tolerance is the voltage one in the node voltages and branch equations, and the current one in the
+     * branch currents (like the voltage sources) and node equations. The iterations also stop when the norm of f(x) is less than 1e-6.
+     * @param relative the tolerance relative to the unknown value.
+     * @param voltage the absolute tolerance of the node voltages.
+     * @param current the absolute tolerance of the branch currents.
+     */
+    public void setTolerances(double relative, double voltage, double current) {
+        if (relative < 0 || voltage < 0 || current < 0)
+            throw new IllegalArgumentException("Tolerances must be positive!");
+        this.relativeTolerance = relative;
+        this.voltageTolerance = voltage;
+        this.currentTolerance = current;
+    }
+
+    public double getRelativeTolerance() {
+        return relativeTolerance;
+    }
+
+    public double getVoltageTolerance() {
+        return voltageTolerance;
+    }
+
+    public double getCurrentTolerance() {
+        return currentTolerance;
+    }
+
+    /**
+     * The order of the polynomial that extrapolates the last solutions to the initial guess of the Newton iterations.<br>
+     * In smooth transients a linear (1) or quadratic (2) prediction starts closer to the solution, so fewer iterations are needed.
+     * The history restarts in each build and operational change, where the solution may jump.
+     * @param order 0 to start from the last solution, up to {@link Circuit#MAX_PREDICTOR_ORDER}.
+     */
+    public void setPredictorOrder(int order) {
+        if (order < 0 || order > MAX_PREDICTOR_ORDER)
+            throw new IllegalArgumentException("Predictor order must be between 0 and %d!".formatted(MAX_PREDICTOR_ORDER));
+        this.predictorOrder = order;
+        if (workspace != null)
+            workspace.stored = 0;
+    }
+
+    public int getPredictorOrder() {
+        return predictorOrder;
+    }
+
+    /**
+     * Defines the max Newton iterations of each non-linear solve, like the ITL1 and ITL4 of SPICE.
+     * A tick that reaches it throws an {@link IllegalStateException}, and the operating point tries the {@link Circuit#setContinuations(Continuation...) continuations}.
+     */
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations <= 0)
+            throw new IllegalArgumentException("Max iterations must be positive!");
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Defines the continuation strategies tried in order when the Newton method can't converge in the non-linear operating point,
+     * by default {@link Continuation#GMIN_STEPPING GMIN_STEPPING} and then {@link Continuation#SOURCE_STEPPING SOURCE_STEPPING}, like SPICE.
+     * Without strategies, the operating point fails like a tick.
+     */
+    public void setContinuations(Continuation... continuations) {
+        this.continuations = continuations.clone();
+    }
+
+    public Continuation[] getContinuations() {
+        return continuations.clone();
+    }
+
+    ///@return the continuation strategy that solved the last non-linear operating point, {@link Continuation#NONE NONE} if the Newton method did.
+    public Continuation getContinuation() {
+        return continuation;
+    }
+
+    ///@return the continuation steps of the last non-linear operating point.
+    public int getContinuationSteps() {
+        return continuationSteps;
+    }
+
+    ///@return the Newton iterations of the last non-linear tick.
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    ///@return the Newton iterations of all non-linear solves.
+    public long getNewtonIterations() {
+        return newtonIterations;
+    }
+
+    /**
+     * Enable the device bypass, a {@link NonLinear non-linear} element whose controlling voltages moved less than the tolerance
+     * since its last evaluation keeps its cached current and conductance, without computing its model again.<br>
+     * The error of a bypassed element is its conductance times the tolerance, so a big tolerance with junctions
+     * in high current may stop the convergence.
+     * @param tolerance in volts, 0 only bypasses the elements with the same voltages.
+     */
+    public void setBypassTolerance(double tolerance) {
+        if (tolerance < 0)
+            throw new IllegalArgumentException("Bypass tolerance must be positive!");
+        this.bypassTolerance = tolerance;
+        if (nonLinearHelper != null)
+            nonLinearHelper.setBypassTolerance(tolerance);
+    }
+
+    public double getBypassTolerance() {
+        return bypassTolerance;
+    }
+
+    ///@return the fraction of the non-linear element evaluations that were bypassed since the last build.
+    public double getBypassRate() {
+        return nonLinearHelper == null ? 0 : nonLinearHelper.getBypassRate();
+    }
+
+    /**
+     * Evaluate the {@link NonLinear non-linear} elements in parallel, in the {@link Circuit#setParallelPool(ForkJoinPool) pool}, when the circuit has
+     * at least threshold non-linear elements.<br>
+     * The elements are stamped after the evaluation in the same order, so the result is bit-identical to the sequential evaluation.
+     * Only pays with thousands of elements, because each Newton iteration waits all threads twice.
+     * @param threshold the minimum count of non-linear elements, 0 disables, the default.
+     */
+    public void setParallelThreshold(int threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Parallel threshold must be positive!");
+        this.parallelThreshold = threshold;
+        if (nonLinearHelper != null)
+            nonLinearHelper.setParallelThreshold(threshold);
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    ///Set the fork/join pool of the parallel evaluation, the elements are split in one stripe per thread of it. The default is the common pool.
+    public void setParallelPool(ForkJoinPool pool) {
+        this.parallelPool = Objects.requireNonNull(pool);
+        if (nonLinearHelper != null)
+            nonLinearHelper.setParallelPool(pool);
+    }
+
+    public ForkJoinPool getParallelPool() {
+        return parallelPool;
+    }
+
+    ///@return true if the non-linear elements are evaluated in parallel, see {@link Circuit#setParallelThreshold(int)}.
+    public boolean isParallel() {
+        return nonLinearHelper != null && nonLinearHelper.isParallel();
+    }
+
+    /**
+     * Jump the steps of {@link Circuit#tick(double)} in the {@link StateSpace state space} form of the circuit, x[k+1] = A * x[k] + b,
+     * where x are the voltages of the capacitors and the currents of the inductors.<br>
+     * Only a {@link CircuitAnalyser#isTimeInvariant time-invariant} circuit in the {@link IntegrationMethod#BACKWARD_EULER backward Euler} method,
+     * with a fixed step, without watchers and {@link Circuit#schedule(double, Runnable) events}, is jumped.
+     * So n steps cost log2(n) products of a matrix of the size of the states, and the last step is solved to the values of all elements.<br>
+     * The jumped steps aren't {@link Dynamic#posEvaluation(MatrixBuilder) evaluated} one by one, so the result differs from the ticks in the roundoff,
+     * and the time is advanced by steps * tick rate, so it can be one step apart of the loop of the ticks. Disabled by default.
+     */
+    public void setStateSpace(boolean stateSpace) {
+        this.stateSpace = stateSpace;
+    }
+
+    public boolean isStateSpace() {
+        return stateSpace;
+    }
+
+    ///@return how many steps were jumped in the state space, instead of solved.
+    public long getJumpedSteps() {
+        return jumpedSteps;
+    }
+
+    /**
+     * Eliminate the rows touched only by static linear elements once, in the build, so the ticks and the Newton iterations
+     * solve the {@link kuse.welbre.tools.SchurComplement Schur complement} over the rows of the non-linear, dynamic and operational elements.<br>
+     * A big linear network with a few non-linear elements is solved at the cost of the non-linear subsystem.
+     * Disabled by default, because with many active rows the full sparse factorization is cheaper.
+     */
+    public void setCondensed(boolean condensed) {
+        this.condensed = condensed;
+        dirt();
+    }
+
+    public boolean isCondensed() {
+        return condensed;
+    }
+
+    /**
+     * Solve the ticks of a linear circuit by superposition, with the colums of LHS<sup>-1</sup> of the RHS rows changed by the sources
+     * and the companion models, see {@link MatrixBuilder#setResponse(boolean)}.<br>
+     * A circuit with a few of these rows and many nodes is solved in O(n * s) per tick, instead of a full substitution.
+     * Disabled by default, because each change in the LHS, like a switch or a step change, solves all colums again.
+     */
+    public void setResponse(boolean response) {
+        this.response = response;
+        dirt();
+    }
+
+    public boolean isResponse() {
+        return response;
+    }
+
+    /**
+     * Collapse the series chains and parallel groups of {@link kuse.welbre.sim.electrical.elements.Resistor resistors}
+     * in equivalent resistors before the matrix assembly, so the internal nodes aren't unknowns of the matrix.<br>
+     * Nodes connected to other elements, or to watched resistors, are kept. The voltages of the eliminated nodes are rebuilt
+     * after each tick, so all elements still report their values, but {@link Circuit#getX()} only has the reduced unknowns.
+     */
+    public void setReduced(boolean reduced) {
+        this.reduced = reduced;
+        dirt();
+    }
+
+    public boolean isReduced() {
+        return reduced;
+    }
+
+    ///@return how many nodes were eliminated by the reduction in the last build.
+    public int getEliminatedNodes() {
+        return networkReduction == null ? 0 : networkReduction.getEliminatedNodes();
+    }
+
+    /**
+     * Defines the {@link LinearSolver solver} of the matrix, selected in each build.<br>
+     * By default {@link LinearSolver.Backend#AUTO AUTO} is used, so the solver is chosen by the density of the matrix.
+     * {@link LinearSolver.Backend#SPARSE_LU SPARSE_LU} needs a sparse {@link Circuit#setStorage(Matrix.Storage) storage}.
+     */
+    public void setSolverBackend(LinearSolver.Backend backend) {
+        this.solverBackend = Objects.requireNonNull(backend);
+        dirt();
+    }
+
+    public LinearSolver.Backend getSolverBackend() {
+        return solverBackend;
+    }
+
+    ///@return the backend selected to the matrix in the last {@link Circuit#clean()}, never {@link LinearSolver.Backend#AUTO AUTO} after it.
+    public LinearSolver.Backend getSelectedBackend() {
+        return selectedBackend;
+    }
+
+    /**
+     * Defines the order of the nodes and branch currents in the matrix.<br>
+     * By default {@link Matrix.Ordering#AUTO AUTO} is used, so a sparse matrix is ordered by {@link Matrix.Ordering#MINIMUM_DEGREE minimum degree}.
+     */
+    public void setOrdering(Matrix.Ordering ordering) {
+        this.ordering = Objects.requireNonNull(ordering);
+        dirt();
+    }
+
+    public Matrix.Ordering getOrdering() {
+        return ordering;
+    }
+
+    /**
+     * The fill ratio, non-zero values in L + U over the non-zero values in the LHS, estimated to the order used in the matrix.<br>
+     * Can be used to compare the {@link Matrix.Ordering orderings} in a circuit,
+     * the value achieved by the factorization is in {@link SparseLU#getFillRatio()}, and depends on the pivots.
+     */
+    public double getFillRatio() {
+        return fillRatio;
+    }
+
     @Override
     public void serialize(DataOutputStream s) throws IOException {
+        s.writeInt(SERIAL_VERSION);
         s.writeDouble(tickRate);
+        s.writeByte(integrationMethod.ordinal());
 
         if (X != null) {//write x
             s.writeInt(X.length);
@@ -490,7 +1805,20 @@ public class Circuit implements Serializable {
 
     @Override
     public void unSerialize(DataInputStream s) throws IOException {
-        setTickRate(s.readDouble());
+        final int first = s.readInt();
+        final int version;
+        if (first == SERIAL_VERSION) {
+            version = first;
+            setTickRate(s.readDouble());
+            setIntegrationMethod(IntegrationMethod.values()[s.readByte()]);
+        } else if (first >= 0 && first < 0x00100000) {//the high bits of a positive double that isn't normal, so it isn't a tick rate.
+            throw new IOException("Serial version %d isn't supported, only the version %d!".formatted(first, SERIAL_VERSION));
+        } else {
+            //an unversioned stream starts with the tick rate, so the int is its high bits, and the method is backward Euler.
+            version = UNVERSIONED;
+            setTickRate(Double.longBitsToDouble(((long) first << 32) | (s.readInt() & 0xFFFFFFFFL)));
+            setIntegrationMethod(IntegrationMethod.BACKWARD_EULER);
+        }
 
         {//read X
             int size = s.readInt();
@@ -529,7 +1857,7 @@ public class Circuit implements Serializable {
                         Element element = element_class.getConstructor().newInstance();
                         elements_array[idx] = element;
 
-                        element.unSerialize(s);
+                        element.unSerialize(s, version);
                     }
                 }
             } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e)
@@ -551,20 +1879,25 @@ public class Circuit implements Serializable {
             e.printStackTrace(System.err);
             throw new RuntimeException("Circuit with inconsistencies!");
         }
+        reduce();
 
         final int size = analyseResult.matrixSize;
-        if (X == null)
+        if (X == null || X.length != size)
             X = new double[size][1];
+        workspace = new Workspace(X.length);
         prepareToBuild(analyseResult);
 
-        matrixBuilder = new MatrixBuilder(analyseResult);
+        matrixBuilder = createMatrixBuilder();
+        //after the compile, the diodes already have their slots.
+        diodeBank = analyseResult.isNonLinear ? new DiodeBank(nonLiners) : null;
+        nonLinearHelper = createNonLinearHelper(matrixBuilder);
 
         //Init simulable
         for (Dynamic s : dynamics)
             s.initiate(this);
 
         //Stamp and init all elements
-        for (Element e : elements)
+        for (Element e : matrixElements)
             if (!(e instanceof NonLinear))
                 e.stamp(matrixBuilder);
 
@@ -573,6 +1906,62 @@ public class Circuit implements Serializable {
         isDirt = false;
     }
 
+    ///The arrays used in a tick, the solution of a linear circuit and the Newton iteration vectors.
+    private static final class Workspace {
+        private final double[] solution, x, dx, fx, t, ft;
+        ///The secant step and the change in f(x) of the Broyden updates.
+        private final double[] step, change;
+        ///The solution before an adaptive step, restored when the step is rejected.
+        private final double[] saved;
+        private BroydenUpdate broyden;
+        private GMRES gmres;
+        private JacobianProduct jacobianProduct;
+        ///The solutions of the last ticks, the newest first.
+        private final double[][] history;
+        private int stored = 0;
+
+        private Workspace(int size) {
+            solution = new double[size];
+            x = new double[size];
+            dx = new double[size];
+            fx = new double[size];
+            t = new double[size];
+            ft = new double[size];
+            step = new double[size];
+            change = new double[size];
+            saved = new double[size];
+            history = new double[MAX_PREDICTOR_ORDER + 1][size];
+        }
+
+        private GMRES gmres() {
+            if (gmres == null)
+                gmres = new GMRES(x.length, GMRES.DEFAULT_RESTART);
+            return gmres;
+        }
+
+        private JacobianProduct jacobianProduct(Circuit circuit) {
+            if (jacobianProduct == null)
+                jacobianProduct = circuit.new JacobianProduct();
+            return jacobianProduct;
+        }
+
+        private BroydenUpdate broyden() {
+            if (broyden == null)
+                broyden = new BroydenUpdate(x.length, BroydenUpdate.DEFAULT_MAX_RANK);
+            return broyden;
+        }
+
+        ///Store the solution in the history, reusing the oldest array.
+        private void record(double[][] X) {
+            final double[] oldest = history[history.length - 1];
+            System.arraycopy(history, 0, history, 1, history.length - 1);
+            history[0] = oldest;
+            for (int i = 0; i < X.length; i++)
+                oldest[i] = X[i][0];
+            stored = Math.min(stored + 1, history.length);
+        }
+    }
+
     public static final class Pin {
         private static final Random rand = new Random();
         public short address;
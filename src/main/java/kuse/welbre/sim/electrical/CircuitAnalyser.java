@@ -3,6 +3,8 @@ package kuse.welbre.sim.electrical;
 import kuse.welbre.sim.electrical.abstractt.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -10,6 +12,8 @@ public final class CircuitAnalyser {
     public final boolean isNonLinear;
     public final boolean isDynamic;
     public final boolean isOperational;
+    ///Linear, without operational elements, and all dynamic elements are {@link LinearDynamic linear dynamics}, so it has a state space form.
+    public final boolean isTimeInvariant;
     public final int nodes;
     public final int matrixSize;
     public final List<Circuit.Pin> pins;
@@ -28,11 +32,18 @@ public final class CircuitAnalyser {
      * A 2-length array that, the 0 addresses is the count of nodes in the circuit, the 1 is the number of independent voltage sources.
      */
     public CircuitAnalyser(Circuit circuit) {
-        boolean isNonLinear = false, isDynamic = false, isOperational = false;
+        this(Arrays.asList(circuit.getElements()));
+    }
+
+    /**
+     * Find all nodes of the elements, used to analyse a {@link NetworkReduction reduced} circuit.
+     */
+    public CircuitAnalyser(Collection<Element> elements) {
+        boolean isNonLinear = false, isDynamic = false, isOperational = false, isVarying = false;
         int matrixSize = 0;
         pins = new ArrayList<>();
 
-        for (Element element : circuit.getElements()) {
+        for (Element element : elements) {
             for (Circuit.Pin pin : element.getPins())
                 addPin(pins, pin);
 
@@ -45,6 +56,8 @@ public final class CircuitAnalyser {
                 isDynamic = true;
             if (element instanceof Operational)
                 isOperational = true;
+            if (element instanceof Dynamic && !(element instanceof LinearDynamic))
+                isVarying = true;
 
             //Each of these terms contributes to matrix size
             //The node with an unknown voltage, and voltage sources with unknown currents.
@@ -59,6 +72,7 @@ public final class CircuitAnalyser {
         this.isNonLinear = isNonLinear;
         this.isDynamic = isDynamic;
         this.isOperational = isOperational;
+        this.isTimeInvariant = !isNonLinear && !isOperational && !isVarying;
     }
     //add only if non-contains and isn't null.
     private void addPin(List<Circuit.Pin> pins, Circuit.Pin pin){
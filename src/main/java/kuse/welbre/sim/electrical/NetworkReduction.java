@@ -0,0 +1,304 @@
+package kuse.welbre.sim.electrical;
+
+import kuse.welbre.sim.electrical.Circuit.Pin;
+import kuse.welbre.sim.electrical.abstractt.Element;
+import kuse.welbre.sim.electrical.abstractt.Watcher;
+import kuse.welbre.sim.electrical.elements.Resistor;
+
+import java.util.*;
+
+/**
+ * Topological reduction of the linear resistive network before the matrix assembly.<br>
+ * Series chains of {@link Resistor resistors}, linked by internal nodes that only connect two resistors, and parallel resistors
+ * between the same nodes are replaced by one equivalent resistor, so the internal nodes aren't unknowns of the matrix.<br>
+ * A node is kept if any element connected to it is watched, or if it connects any other element.<br>
+ * The voltages of the eliminated nodes are rebuilt from the reduced solution by {@link NetworkReduction#rebuild()},
+ * walking each chain with its current, so the original elements still report their voltages and currents.
+ */
+final class NetworkReduction {
+    ///A two terminal resistive branch, a resistor of the circuit or an association of branches.
+    private static abstract sealed class Branch permits Leaf, Series, Parallel {
+        final Pin a, b;
+
+        Branch(Pin a, Pin b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        abstract double resistance();
+
+        ///Rebuild the voltage of the internal nodes, the voltages of a and b are already known.
+        void rebuild() {
+        }
+
+        Pin other(Pin pin) {
+            return pin == a ? b : a;
+        }
+    }
+
+    private static final class Leaf extends Branch {
+        final Resistor resistor;
+
+        Leaf(Resistor resistor) {
+            super(resistor.getPinA(), resistor.getPinB());
+            this.resistor = resistor;
+        }
+
+        @Override
+        double resistance() {
+            return resistor.getResistance();
+        }
+    }
+
+    private static final class Series extends Branch {
+        ///pins[0] is a, pins[n] is b, and children[k] is between pins[k] and pins[k+1].
+        final Pin[] pins;
+        final Branch[] children;
+        final double resistance;
+
+        Series(Pin[] pins, Branch[] children) {
+            super(pins[0], pins[pins.length - 1]);
+            this.pins = pins;
+            this.children = children;
+            double r = 0;
+            for (Branch child : children)
+                r += child.resistance();
+            resistance = r;
+        }
+
+        @Override
+        double resistance() {
+            return resistance;
+        }
+
+        @Override
+        void rebuild() {
+            final double current = Pin.GET_VOLTAGE_DIFF(a, b) / resistance;
+            double v = voltage(a);
+            for (int k = 0; k < children.length - 1; k++) {
+                v -= current * children[k].resistance();
+                pins[k + 1].P_voltage[0] = v;
+            }
+            for (Branch child : children)
+                child.rebuild();
+        }
+    }
+
+    private static final class Parallel extends Branch {
+        final Branch[] children;
+        final double resistance;
+
+        Parallel(Branch[] children) {
+            super(children[0].a, children[0].b);
+            this.children = children;
+            double g = 0;
+            for (Branch child : children)
+                g += 1.0 / child.resistance();
+            resistance = 1.0 / g;
+        }
+
+        @Override
+        double resistance() {
+            return resistance;
+        }
+
+        @Override
+        void rebuild() {
+            for (Branch child : children)
+                child.rebuild();
+        }
+    }
+
+    ///The elements that are stamped in the matrix, the original non-reduced elements and the equivalent resistors.
+    private final List<Element> elements = new ArrayList<>();
+    ///The branches with eliminated nodes.
+    private final Branch[] reduced;
+    private int eliminated = 0;
+
+    NetworkReduction(List<Element> original, List<Watcher<?>> watchers) {
+        //pins that must be kept, connected to a watched or to a non resistor element.
+        Set<Pin> kept = new HashSet<>();
+        Set<Element> watched = new HashSet<>();
+        for (Watcher<?> w : watchers)
+            watched.add(w.getElement());
+
+        List<Branch> branches = new ArrayList<>();
+        for (Element e : original) {
+            if (e.getClass() == Resistor.class && !watched.contains(e) && e.getPinA() != e.getPinB())
+                branches.add(new Leaf((Resistor) e));
+            else
+                for (Pin pin : e.getPins())
+                    if (pin != null)
+                        kept.add(pin);
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = parallel(branches);
+            changed |= series(branches, kept);
+        }
+
+        List<Branch> result = new ArrayList<>();
+        Set<Element> replaced = new HashSet<>();
+        for (Branch branch : branches) {
+            if (!(branch instanceof Leaf)) {
+                result.add(branch);
+                collect(branch, replaced);
+            }
+        }
+        reduced = result.toArray(new Branch[0]);
+
+        //keep the original order, and add the equivalent resistors in the end.
+        for (Element e : original)
+            if (!replaced.contains(e))
+                elements.add(e);
+        for (Branch branch : reduced)
+            elements.add(Element.asField(() -> new Resistor(branch.a, branch.b, branch.resistance())));
+    }
+
+    ///Add all resistors of the branch in the set.
+    private static void collect(Branch branch, Set<Element> resistors) {
+        switch (branch) {
+            case Leaf leaf -> resistors.add(leaf.resistor);
+            case Series series -> {
+                for (Branch child : series.children)
+                    collect(child, resistors);
+            }
+            case Parallel parallel -> {
+                for (Branch child : parallel.children)
+                    collect(child, resistors);
+            }
+        }
+    }
+
+    ///Merge the branches between the same pins.
+    private static boolean parallel(List<Branch> branches) {
+        //linked maps keep the order of the circuit, so the reduction is deterministic. The pins are compared by identity.
+        Map<Pin, Map<Pin, List<Branch>>> groups = new LinkedHashMap<>();
+        for (Branch branch : branches) {
+            Map<Pin, List<Branch>> map = groups.get(branch.b);
+            if (map != null && map.containsKey(branch.a))
+                map.get(branch.a).add(branch);
+            else
+                groups.computeIfAbsent(branch.a, k -> new LinkedHashMap<>()).computeIfAbsent(branch.b, k -> new ArrayList<>()).add(branch);
+        }
+
+        boolean changed = false;
+        List<Branch> result = new ArrayList<>();
+        for (Map<Pin, List<Branch>> map : groups.values()) {
+            for (List<Branch> group : map.values()) {
+                if (group.size() == 1)
+                    result.add(group.getFirst());
+                else {
+                    result.add(new Parallel(group.toArray(new Branch[0])));
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            branches.clear();
+            branches.addAll(result);
+        }
+        return changed;
+    }
+
+    ///Merge the branches linked by internal nodes, that only connect two branches.
+    private boolean series(List<Branch> branches, Set<Pin> kept) {
+        Map<Pin, List<Branch>> incidence = new LinkedHashMap<>();
+        for (Branch branch : branches) {
+            if (branch.a != null)
+                incidence.computeIfAbsent(branch.a, k -> new ArrayList<>(2)).add(branch);
+            if (branch.b != null)
+                incidence.computeIfAbsent(branch.b, k -> new ArrayList<>(2)).add(branch);
+        }
+
+        Set<Pin> internal = new LinkedHashSet<>();
+        for (var entry : incidence.entrySet()) {
+            final List<Branch> list = entry.getValue();
+            if (list.size() == 2 && list.get(0) != list.get(1) && !kept.contains(entry.getKey()))
+                internal.add(entry.getKey());
+        }
+
+        Set<Branch> merged = new HashSet<>();
+        Set<Pin> visited = new HashSet<>();
+        List<Branch> result = new ArrayList<>();
+        for (Pin start : internal) {
+            if (!visited.add(start))
+                continue;
+
+            //walk to one end of the chain.
+            Pin pin = start;
+            Branch branch = incidence.get(start).getFirst();
+            boolean ring = false;
+            while (true) {
+                final Pin next = branch.other(pin);
+                if (next == null || !internal.contains(next))
+                    break;
+                if (next == start) {//a floating ring, without ends.
+                    ring = true;
+                    break;
+                }
+                branch = next(incidence, next, branch);
+                pin = next;
+            }
+            if (ring)
+                continue;
+
+            //walk back to the other end, collecting the chain.
+            pin = branch.other(pin);
+            List<Pin> pins = new ArrayList<>();
+            List<Branch> children = new ArrayList<>();
+            pins.add(pin);
+            while (true) {
+                children.add(branch);
+                pin = branch.other(pin);
+                pins.add(pin);
+                if (pin == null || !internal.contains(pin))
+                    break;
+                visited.add(pin);
+                branch = next(incidence, pin, branch);
+            }
+
+            merged.addAll(children);
+            eliminated += pins.size() - 2;
+            for (int i = 1; i < pins.size() - 1; i++)
+                pins.get(i).P_voltage = new double[1];
+            result.add(new Series(pins.toArray(new Pin[0]), children.toArray(new Branch[0])));
+        }
+        if (result.isEmpty())
+            return false;
+
+        for (Branch branch : branches)
+            if (!merged.contains(branch))
+                result.add(branch);
+        branches.clear();
+        branches.addAll(result);
+        return true;
+    }
+
+    ///@return the other branch of an internal pin.
+    private static Branch next(Map<Pin, List<Branch>> incidence, Pin pin, Branch branch) {
+        final List<Branch> list = incidence.get(pin);
+        return list.get(0) == branch ? list.get(1) : list.get(0);
+    }
+
+    private static double voltage(Pin pin) {
+        return pin == null ? 0 : pin.P_voltage[0];
+    }
+
+    ///@return the elements to stamp in the matrix.
+    List<Element> getElements() {
+        return elements;
+    }
+
+    ///@return how many nodes were eliminated from the matrix.
+    int getEliminatedNodes() {
+        return eliminated;
+    }
+
+    ///Rebuild the voltages of the eliminated nodes from the reduced solution, without allocations.
+    void rebuild() {
+        for (Branch branch : reduced)
+            branch.rebuild();
+    }
+}
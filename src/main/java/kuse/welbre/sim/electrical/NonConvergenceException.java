@@ -0,0 +1,16 @@
+package kuse.welbre.sim.electrical;
+
+import java.io.Serial;
+
+/**
+ * Thrown when the non-linear circuit can't converge in the max iterations of the Newton method, or by any {@link Circuit.Continuation continuation}.<br>
+ * It is, with a singular Jacobian, the only failure that a continuation of the operating point tries again, the other {@link IllegalStateException}s are a wrong use.
+ */
+public class NonConvergenceException extends IllegalStateException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public NonConvergenceException(String message) {
+        super(message);
+    }
+}
@@ -1,36 +1,289 @@
 package kuse.welbre.sim.electrical;
 
 import kuse.welbre.sim.electrical.abstractt.NonLinear;
+import kuse.welbre.sim.electrical.elements.DiodeBank;
+import kuse.welbre.tools.Matrix;
 import kuse.welbre.tools.MatrixBuilder;
-import kuse.welbre.tools.Tools;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
- * An aid to solve non-linear circuits.
+ * An aid to solve non-linear circuits.<br>
+ * The elements in the {@link DiodeBank} are evaluated together by the bank, the others one by one.<br>
+ * With many elements the evaluation can be split in stripes, evaluated in parallel by a {@link ForkJoinPool},
+ * see {@link NonLinearHelper#setParallelThreshold(int)} and {@link NonLinearHelper#setParallelPool(ForkJoinPool)}.
+ * Each element only writes its own cached current and conductance, and the stamps are always made after, in one thread and in the
+ * element order, so the result is bit-identical to the sequential evaluation.
  */
 public class NonLinearHelper {
     private final MatrixBuilder builder;
+    ///The non-linear elements outside the bank.
     private final List<NonLinear> nonLinear;
+    private final DiodeBank bank;
+    ///The max change in the controlling voltages to bypass the evaluation of an element, see {@link NonLinear#evaluate(double)}.
+    private double bypassTolerance = 0;
+    private long evaluations = 0, bypasses = 0;
+    ///If any element limited a junction voltage in the last f(x).
+    private boolean limited = false;
+    ///The magnitude of each row in the last f(x), max(|LHS * x|, |RHS|).
+    private double[] scale = new double[0];
+    ///LHS * x of the last f(x), and of the start and the full step of the line search.
+    private double[] product = new double[0], start = new double[0], end = new double[0];
+    private boolean hasEnd = false;
+    ///The stripes of the parallel evaluation, null if sequential.
+    private Stripe[] stripes = null;
+    ///Invoke all stripes in the pool.
+    private RecursiveAction all = null;
+    private int parallelThreshold = 0;
+    private ForkJoinPool parallelPool = ForkJoinPool.commonPool();
 
     public NonLinearHelper(MatrixBuilder builder, List<NonLinear> nonLinear) {
+        this(builder, nonLinear, null);
+    }
+
+    ///@param bank the bank of the circuit, its elements are removed from the non-linear elements, can be null.
+    public NonLinearHelper(MatrixBuilder builder, List<NonLinear> nonLinear, DiodeBank bank) {
         this.builder = builder;
-        this.nonLinear = nonLinear;
+        this.bank = bank;
+        if (bank == null)
+            this.nonLinear = nonLinear;
+        else {
+            this.nonLinear = new ArrayList<>(nonLinear.size());
+            for (NonLinear e : nonLinear)
+                if (!DiodeBank.accepts(e))
+                    this.nonLinear.add(e);
+        }
     }
 
-    public double[][] jacobian(){
+    ///Stamp the conductance plane of all non-linear elements, the result is the LHS of the builder.
+    public Matrix jacobian(){
         builder.clearLhs();
-        for (NonLinear e : nonLinear)
-            e.stamp_dI_dV(builder);
+        evaluate();
+        if (bank != null)
+            bank.stamp_dI_dV(builder);
+        for (int i = 0; i < nonLinear.size(); i++)
+            nonLinear.get(i).stamp_dI_dV(builder);
 
-        return builder.getLhs();
+        return builder.getMatrix();
     }
 
     public double[] f(double[] x){
-        builder.clear();
-        for (NonLinear e : nonLinear)
-            e.stamp_I_V(builder);
+        double[] result = new double[x.length];
+        f(x, result);
+        return result;
+    }
+
+    /**
+     * Compute f(x) = LHS * x - RHS in the result array, without allocations.<br>
+     * The LHS is the static one, so the conductance plane stamped by {@link NonLinearHelper#jacobian()} is kept,
+     * and its factorization can be reused.
+     * The product LHS * x costs the non-zero values of the LHS, a line search uses {@link NonLinearHelper#fLine(double, double[])}.
+     */
+    public void f(double[] x, double[] result){
+        if (product.length != result.length) {
+            product = new double[result.length];
+            start = new double[result.length];
+            end = new double[result.length];
+            scale = new double[result.length];
+        }
+        builder.getStaticMatrix().multiply(x, product);
+        residual(result);
+    }
+
+    /**
+     * Start a line search in the point of the last f(x).<br>
+     * The next {@link NonLinearHelper#f(double[], double[]) f(x - dx)} is the full step,
+     * and the points between are computed by {@link NonLinearHelper#fLine(double, double[])}.
+     */
+    public void startLine() {
+        final double[] swap = start;
+        start = product;
+        product = swap;
+        hasEnd = false;
+    }
+
+    /**
+     * Compute f(x - a * dx) of the line search, the pins must already have the voltages of x - a * dx.<br>
+     * LHS is linear, so LHS * (x - a * dx) = (1 - a) * LHS * x + a * LHS * (x - dx), interpolated from the products of the start
+     * and of the full step, without the matrix.
+     * So each point of the line search only costs the evaluation of the non-linear elements and the size of the matrix.
+     */
+    public void fLine(double a, double[] result) {
+        if (!hasEnd) {
+            final double[] swap = end;
+            end = product;
+            product = swap;
+            hasEnd = true;
+        }
+        for (int i = 0; i < product.length; i++)
+            product[i] = start[i] + a * (end[i] - start[i]);
+        residual(result);
+    }
+
+    ///Stamp the non-linear currents, and compute result = LHS * x - RHS from the product LHS * x.
+    private void residual(double[] result) {
+        builder.clearRhs();
+        limited = evaluate();
+        if (bank != null)
+            bank.stamp_I_V(builder);
+        for (int i = 0; i < nonLinear.size(); i++)
+            nonLinear.get(i).stamp_I_V(builder);
+
+        final double[] rhs = builder.getRhs();
+        for (int i = 0; i < result.length; i++) {
+            scale[i] = Math.max(Math.abs(product[i]), Math.abs(rhs[i]));
+            result[i] = product[i] - rhs[i];
+        }
+    }
+
+    ///Evaluate all elements, in parallel if there are stripes.
+    ///@return true if any element limited a junction voltage.
+    private boolean evaluate() {
+        evaluations += bank == null ? nonLinear.size() : nonLinear.size() + bank.size();
+        if (stripes == null) {
+            boolean limited = false;
+            int evaluated = bank == null ? 0 : bank.evaluate(bypassTolerance);
+            for (int i = 0; i < nonLinear.size(); i++) {
+                final NonLinear e = nonLinear.get(i);
+                if (e.evaluate(bypassTolerance))
+                    evaluated++;
+                limited |= e.isLimited();
+            }
+            bypasses += (bank == null ? 0 : bank.size()) + nonLinear.size() - evaluated;
+            return limited || (bank != null && bank.isLimited());
+        }
+
+        for (Stripe stripe : stripes)
+            stripe.reinitialize();
+        all.reinitialize();
+        parallelPool.invoke(all);
+        boolean limited = bank != null && bank.isLimited();
+        int evaluated = 0;
+        for (Stripe stripe : stripes) {
+            evaluated += stripe.evaluated;
+            limited |= stripe.limited;
+        }
+        bypasses += (bank == null ? 0 : bank.size()) + nonLinear.size() - evaluated;
+        return limited;
+    }
+
+    ///A slice of the bank and of the other elements, evaluated by one worker.
+    ///It is never serialized, the ForkJoinTask is only Serializable by its inheritance.
+    @SuppressWarnings("serial")
+    private final class Stripe extends RecursiveAction {
+        private final int bankFrom, bankTo, from, to;
+        private int evaluated;
+        private boolean limited;
+
+        private Stripe(int bankFrom, int bankTo, int from, int to) {
+            this.bankFrom = bankFrom;
+            this.bankTo = bankTo;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int evaluated = bankFrom == bankTo ? 0 : bank.evaluate(bankFrom, bankTo, bypassTolerance);
+            boolean limited = false;
+            for (int i = from; i < to; i++) {
+                final NonLinear e = nonLinear.get(i);
+                if (e.evaluate(bypassTolerance))
+                    evaluated++;
+                limited |= e.isLimited();
+            }
+            this.evaluated = evaluated;
+            this.limited = limited;
+        }
+    }
+
+    /**
+     * Evaluate the elements in parallel when the circuit has at least threshold non-linear elements.<br>
+     * The elements are split in one stripe per thread of the {@link NonLinearHelper#setParallelPool(ForkJoinPool) pool},
+     * the evaluation of an element can't read or write the state of another element.
+     * @param threshold the minimum count of non-linear elements, 0 always evaluates in sequence.
+     */
+    public void setParallelThreshold(int threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Parallel threshold must be positive!");
+        parallelThreshold = threshold;
+        createStripes();
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    ///Set the pool of the parallel evaluation, the count of stripes is its parallelism, the default is the common pool.
+    public void setParallelPool(ForkJoinPool pool) {
+        parallelPool = Objects.requireNonNull(pool);
+        createStripes();
+    }
+
+    public ForkJoinPool getParallelPool() {
+        return parallelPool;
+    }
+
+    private void createStripes() {
+        stripes = null;
+        all = null;
+        final int banked = bank == null ? 0 : bank.size(), total = banked + nonLinear.size();
+        if (parallelThreshold == 0 || total < parallelThreshold)
+            return;
+        final int count = Math.min(parallelPool.getParallelism(), total);
+        if (count < 2)
+            return;
+        final Stripe[] stripes = new Stripe[count];
+        for (int s = 0; s < count; s++)
+            stripes[s] = new Stripe(banked * s / count, banked * (s + 1) / count,
+                    nonLinear.size() * s / count, nonLinear.size() * (s + 1) / count);
+        this.stripes = stripes;
+        all = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(stripes);
+            }
+        };
+    }
+
+    ///@return true if the elements are evaluated in parallel.
+    public boolean isParallel() {
+        return stripes != null;
+    }
+
+    ///@return true if any element {@link NonLinear#isLimited() limited} a junction voltage in the last f(x), so x isn't a solution.
+    public boolean isLimited() {
+        return limited;
+    }
+
+    ///@return the magnitude of the row in the last f(x), the biggest of the currents (or voltages) that f(x) balances.
+    public double getScale(int row) {
+        return scale[row];
+    }
+
+    public void setBypassTolerance(double bypassTolerance) {
+        this.bypassTolerance = bypassTolerance;
+    }
+
+    public double getBypassTolerance() {
+        return bypassTolerance;
+    }
+
+    ///@return the fraction of the element evaluations that were bypassed, 0 if none was evaluated.
+    public double getBypassRate() {
+        return evaluations == 0 ? 0 : (double) bypasses / evaluations;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
 
-        return Tools.subtract(Tools.multiply(builder.getLhs(),x), builder.getRhs());
+    public long getBypasses() {
+        return bypasses;
     }
 }
@@ -0,0 +1,135 @@
+package kuse.welbre.sim.electrical;
+
+import kuse.welbre.sim.electrical.abstractt.LinearDynamic;
+import kuse.welbre.tools.MatrixBuilder;
+
+import java.util.List;
+
+/**
+ * The state space form of a {@link CircuitAnalyser#isTimeInvariant time-invariant} circuit in the backward Euler method,
+ * x[k+1] = A * x[k] + b, where x are the states of the {@link LinearDynamic linear dynamic} elements.<br>
+ * The sources of the circuit are constant, so B * u is the vector b. Each colum of A is the step of a unit state,
+ * and b is the step of the zero state, so the compile costs one solve per state with the factorization of the transient.<br><br>
+ * The affine map is kept as the augmented matrix M = [[A, b], [0, 1]], so n steps are M<sup>n</sup> * [x, 1],
+ * computed by repeated squaring in log2(n) products of M.
+ */
+final class StateSpace {
+    private final LinearDynamic[] elements;
+    private final int size;
+    ///The step of the compile, the map is only valid to it.
+    private final double step;
+    ///The augmented matrix M, (size + 1) squared.
+    private final double[][] map;
+    //work arrays of the power, the squares of M, and the state.
+    private final double[][] power, square;
+    private final double[] state, next;
+
+    /**
+     * Compile the map of the circuit, the builder must be closed and without stamps in the RHS.
+     * The solution in X is kept.
+     * @param solution a work array of the matrix size.
+     */
+    StateSpace(List<LinearDynamic> elements, MatrixBuilder builder, double[][] X, double[] solution, double step) {
+        this.elements = elements.toArray(new LinearDynamic[0]);
+        this.size = this.elements.length;
+        this.step = step;
+        map = new double[size + 1][size + 1];
+        power = new double[size + 1][size + 1];
+        square = new double[size + 1][size + 1];
+        state = new double[size + 1];
+        next = new double[size + 1];
+
+        final double[] saved = new double[X.length];
+        for (int i = 0; i < X.length; i++)
+            saved[i] = X[i][0];
+        //the colum -1 is b, the others are A * e_j + b.
+        for (int j = -1; j < size; j++) {
+            if (j >= 0)
+                this.elements[j].stampState(builder, 1);
+            builder.getResult(solution);
+            for (int i = 0; i < X.length; i++)
+                X[i][0] = solution[i];
+            for (int k = 0; k < size; k++) {
+                final double value = this.elements[k].nextState(k == j ? 1 : 0);
+                if (j < 0)
+                    map[k][size] = value;
+                else
+                    map[k][j] = value - map[k][size];
+            }
+        }
+        map[size][size] = 1;
+        for (int i = 0; i < X.length; i++)
+            X[i][0] = saved[i];
+    }
+
+    /**
+     * Advance the states of the elements by steps, without solving the circuit.<br>
+     * The elements keep the state of the last step, and its derivative of the step before it,
+     * so the next tick continues from it like after the same steps solved one by one.
+     */
+    void jump(long steps) {
+        if (steps <= 0)
+            return;
+        for (int k = 0; k < size; k++)
+            state[k] = elements[k].getState();
+        state[size] = 1;
+
+        //state = M^(steps - 1) * state, the powers of M commute, so the bits are applied from the lowest.
+        long remaining = steps - 1;
+        copy(map, power);
+        while (remaining > 0) {
+            if ((remaining & 1) == 1) {
+                multiply(power, state, next);
+                System.arraycopy(next, 0, state, 0, size + 1);
+            }
+            remaining >>= 1;
+            if (remaining > 0) {
+                multiply(power, power, square);
+                copy(square, power);
+            }
+        }
+        //the last step, with the derivative of the backward Euler step.
+        multiply(map, state, next);
+        for (int k = 0; k < size; k++)
+            elements[k].setState(next[k], (next[k] - state[k]) / step);
+    }
+
+    double getStep() {
+        return step;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void multiply(double[][] a, double[] x, double[] result) {
+        for (int i = 0; i <= size; i++) {
+            final double[] row = a[i];
+            double sum = 0;
+            for (int k = 0; k <= size; k++)
+                sum += row[k] * x[k];
+            result[i] = sum;
+        }
+    }
+
+    private void multiply(double[][] a, double[][] b, double[][] result) {
+        for (int i = 0; i <= size; i++) {
+            final double[] row = result[i], ai = a[i];
+            for (int j = 0; j <= size; j++)
+                row[j] = 0;
+            for (int k = 0; k <= size; k++) {
+                final double aik = ai[k];
+                if (aik == 0)
+                    continue;
+                final double[] bk = b[k];
+                for (int j = 0; j <= size; j++)
+                    row[j] += aik * bk[j];
+            }
+        }
+    }
+
+    private static void copy(double[][] from, double[][] to) {
+        for (int i = 0; i < from.length; i++)
+            System.arraycopy(from[i], 0, to[i], 0, from[i].length);
+    }
+}
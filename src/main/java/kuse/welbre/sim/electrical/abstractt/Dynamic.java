@@ -25,6 +25,82 @@ public interface Dynamic {
      */
     void posEvaluation(MatrixBuilder builder);
 
+    /**
+     * The step of the companion model that is the element at t = 0, see {@link Circuit.InitialConditions}.<br>
+     * In the {@link Circuit.InitialConditions#GIVEN given} conditions a capacitor is a short and an inductor is open, so the step is the biggest one that does it,
+     * and in the {@link Circuit.InitialConditions#OPERATING_POINT operating point} the opposite, so the step is the smallest one.
+     * All elements use the same step, the smallest of the biggest steps or the biggest of the smallest ones,
+     * so the current of capacitors in parallel, or the voltage of inductors in series, is divided like in the first instant of the transient.
+     * @return the step limit, or NaN to an element that doesn't integrate.
+     */
+    default double getOperatingPointStep(MatrixBuilder builder, Circuit.InitialConditions conditions){
+        return Double.NaN;
+    }
+
+    /**
+     * This method is called before the solve of the state at t = 0, after the {@link Dynamic#initiate(Circuit)}, see {@link Circuit.InitialConditions}.<br>
+     * The companion model with the {@link Dynamic#getOperatingPointStep(MatrixBuilder, Circuit.InitialConditions) step} of the operating point
+     * is stamped over the transient one in the closed builder, a change in the LHS with
+     * {@link MatrixBuilder#updateConductance(Circuit.Pin, Circuit.Pin, double)}, that is undone after the solve.
+     * By default, it is the {@link Dynamic#preEvaluation(MatrixBuilder)} stamp.
+     */
+    default void preOperatingPoint(MatrixBuilder builder, Circuit.InitialConditions conditions, double step){
+        preEvaluation(builder);
+    }
+
+    /**
+     * This method is called after the solve of the state at t = 0, the LHS is already the transient one again.<br>
+     * The element keeps the solved state as the start of the dynamics, the time doesn't advance.
+     */
+    default void posOperatingPoint(MatrixBuilder builder){
+    }
+
+    /**
+     * The companion conductance of the operating point is only a penalty to the ideal open or short, so after each solve
+     * the element moves the current of the penalty to its current source, stamped as the change with {@link MatrixBuilder#stampCurrentSource(Circuit.Pin, Circuit.Pin, double)},
+     * and the next solve is nearer to the ideal element.<br>
+     * The change of the source is compared with relative * |source| + current tolerance.
+     * @return the change over its tolerance, the corrections stop when no element has more than 1, 0 to an element without an operating point model.
+     */
+    default double correctOperatingPoint(MatrixBuilder builder, double relative, double current){
+        return 0;
+    }
+
+    /**
+     * This method is called when the {@link Circuit#setAdaptive(boolean) adaptive} step changes the {@link Circuit#getTickRate() tick rate} between two evolution steps.<br>
+     * Unlike {@link Dynamic#initiate(Circuit)}, the state is kept, only the values that depend on the step are computed again.
+     * A change in a value already stamped in the LHS must be applied with {@link MatrixBuilder#updateConductance(Circuit.Pin, Circuit.Pin, double)}.
+     */
+    default void stepChanged(Circuit circuit, MatrixBuilder builder){
+    }
+
+    /**
+     * The local truncation error of the evolution step, called after the step is solved and before {@link Dynamic#posEvaluation(MatrixBuilder)},
+     * so the state is still the one of the last step.<br>
+     * The error of a voltage is compared with relative * |voltage| + voltage tolerance, and the error of a current with relative * |current| + current tolerance.
+     * @return the error over its tolerance, more than 1 rejects the step, 0 to an element that doesn't integrate.
+     */
+    default double getTruncationError(double relative, double voltage, double current){
+        return 0;
+    }
+
+    ///@return the order of the method of the step in {@link Dynamic#getTruncationError(double, double, double)}, its error grows with step<sup>order + 1</sup>.
+    default int getTruncationOrder(){
+        return 1;
+    }
+
+    /**
+     * The next discontinuity of the element, like the edge of a square wave, the step that would pass it is cut to land on it
+     * when the {@link Circuit#setBreakpoints(boolean) breakpoints} are enabled.
+     * So the element is constant inside each step, and a big step doesn't lose the time of the edge.
+     * @param time the actual {@link Circuit#getTime() time} of the circuit.
+     * @return the time of the circuit where the next discontinuity happens, after the actual time,
+     * or {@link Double#POSITIVE_INFINITY} if there isn't one.
+     */
+    default double getNextBreakpoint(double time){
+        return Double.POSITIVE_INFINITY;
+    }
+
     /**
      * Defines the minimal time step to this component operate correctly.
      * @return the stime step
@@ -86,6 +86,13 @@ public abstract class Element implements Serializable {
     public abstract double getCurrent();
     public abstract void stamp(MatrixBuilder builder);
 
+    /**
+     * Register the LHS entries that this element stamps, called in each new builder before any stamp.<br>
+     * The registered slots are direct indexes in the matrix, so the stamps don't need to search the entries.
+     */
+    public void compile(MatrixBuilder builder) {
+    }
+
     @Override
     public String toString() {
         return String.format(
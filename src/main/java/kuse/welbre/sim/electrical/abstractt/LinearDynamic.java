@@ -0,0 +1,30 @@
+package kuse.welbre.sim.electrical.abstractt;
+
+import kuse.welbre.sim.electrical.Circuit;
+import kuse.welbre.sim.electrical.elements.Capacitor;
+import kuse.welbre.sim.electrical.elements.Inductor;
+import kuse.welbre.tools.MatrixBuilder;
+
+/**
+ * A linear and time-invariant {@link Dynamic dynamic} element, with one state, like the voltage of a {@link Capacitor capacitor}
+ * or the current of an {@link Inductor inductor}.<br>
+ * In the {@link Circuit.IntegrationMethod#BACKWARD_EULER backward Euler} method its step is an affine function of the state,
+ * so a circuit with only these dynamic elements is compiled in the state space form x[k+1] = A * x[k] + b, see {@link Circuit#setStateSpace(boolean)}.<br>
+ * The methods don't change the element, except {@link LinearDynamic#setState(double, double)}.
+ */
+public interface LinearDynamic extends Dynamic {
+    ///@return the state of the last step.
+    double getState();
+
+    ///Stamp in the RHS the backward Euler companion source of the state, like the {@link Dynamic#preEvaluation(MatrixBuilder)} of an element in it.
+    void stampState(MatrixBuilder builder, double state);
+
+    ///@return the state after the step solved in the circuit, from the state before it.
+    double nextState(double state);
+
+    /**
+     * Keep the state as the one of the last step, like after the {@link Dynamic#posEvaluation(MatrixBuilder)} of a step that wasn't solved.
+     * @param derivative the derivative of the state in the last step.
+     */
+    void setState(double state, double derivative);
+}
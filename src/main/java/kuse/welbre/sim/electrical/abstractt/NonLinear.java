@@ -7,6 +7,51 @@ import kuse.welbre.tools.MatrixBuilder;
  * Used to simulate diodes, variable resistence, switch, or non-linear resistence.
  */
 public interface NonLinear {
+    /**
+     * Evaluate the model in the actual voltages, the stamps use the values of the last evaluation.<br>
+     * This is the device bypass, if the controlling voltages moved less than the tolerance since the last evaluation,
+     * the cached current and conductance are kept, without computing the model again.
+     * @param tolerance the max change in any controlling voltage to bypass, 0 only bypass the same voltages.
+     * @return false if the evaluation was bypassed.
+     */
+    default boolean evaluate(double tolerance) {
+        return true;
+    }
+
+    /**
+     * If the last {@link NonLinear#evaluate(double) evaluation} limited the voltage of a junction, the stamps are the
+     * linearization in the limited voltage, not the model in the actual voltages, so the Newton iterations can't stop.
+     */
+    default boolean isLimited() {
+        return false;
+    }
+
+    /**
+     * The pnjlim of SPICE, limit the change in the voltage of a pn junction between two Newton iterations.<br>
+     * Above the critical voltage the current grows so fast that a full Newton step overflows the exponential,
+     * so the step is changed to follow the logarithm of the current.
+     * @param voltage the new junction voltage.
+     * @param last the limited junction voltage of the last evaluation.
+     * @param vt the thermal voltage times the quality factor.
+     * @param critical the critical voltage, see {@link NonLinear#criticalVoltage(double, double)}.
+     * @return the limited voltage.
+     */
+    static double limitJunction(double voltage, double last, double vt, double critical) {
+        if (voltage > critical && Math.abs(voltage - last) > 2 * vt) {
+            if (last > 0) {
+                final double arg = 1 + (voltage - last) / vt;
+                return arg > 0 ? last + vt * Math.log(arg) : critical;
+            }
+            return vt * Math.log(voltage / vt);
+        }
+        return voltage;
+    }
+
+    ///@return the voltage where the curvature of a junction current is maximum, vt * ln(vt / (sqrt(2) * saturation)).
+    static double criticalVoltage(double vt, double saturation) {
+        return vt * Math.log(vt / (Math.sqrt(2) * saturation));
+    }
+
     /**
      * Stamp the current-voltage plane.
      */
@@ -1,9 +1,20 @@
 package kuse.welbre.sim.electrical.abstractt;
 
+import kuse.welbre.tools.MatrixBuilder;
+
 public interface Operational {
     boolean isDirt();
 
     void dirt();
 
     void clear();
+
+    /**
+     * Apply the changes since the last stamp in a closed builder, so the matrix doesn't need to be rebuilt.<br>
+     * Ex: A switch that changes the state updates the conductance with {@link MatrixBuilder#updateConductance}.
+     * @return false if the changes can't be applied, so the whole matrix is rebuilt.
+     */
+    default boolean stampChanges(MatrixBuilder builder) {
+        return false;
+    }
 }
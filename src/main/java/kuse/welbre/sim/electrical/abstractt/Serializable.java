@@ -38,6 +38,14 @@ public interface Serializable {
             throw new RuntimeException("%s isn't a registered class in SerialTypeEnum!".formatted(clazz.getName()));
         }
     }
+    ///The version of a stream written before the {@link kuse.welbre.sim.electrical.Circuit#SERIAL_VERSION serial version}.
+    int UNVERSIONED = 0;
+
     void serialize(DataOutputStream s) throws IOException;
     void unSerialize(DataInputStream s) throws IOException;
+
+    ///Read a stream of an older version, by default it is the same of the actual version.
+    default void unSerialize(DataInputStream s, int version) throws IOException {
+        unSerialize(s);
+    }
 }
@@ -14,6 +14,10 @@ public class Watcher<T extends Element> implements Runnable {
         this.consumer = consumer;
     }
 
+    public T getElement() {
+        return element;
+    }
+
     @Override
     public void run() {
         consumer.accept(element);
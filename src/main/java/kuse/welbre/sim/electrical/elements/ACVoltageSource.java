@@ -25,7 +25,7 @@ public class ACVoltageSource extends VoltageSource implements Dynamic {
 
 
     private double outputVoltage;
-    //The angles of sin
+    //The angle of sin in the actual time, the evolution step computes the next one.
     private double theta;
 
     public ACVoltageSource() {
@@ -49,11 +49,23 @@ public class ACVoltageSource extends VoltageSource implements Dynamic {
     @Override
     public void initiate(Circuit circuit) {
         omega_tick = frequency * 2.0 * Math.PI * circuit.getTickRate();
-        theta = omega_tick;
+        theta = 0;
+    }
+
+    @Override
+    public void stepChanged(Circuit circuit, MatrixBuilder builder) {
+        omega_tick = frequency * 2.0 * Math.PI * circuit.getTickRate();
     }
 
     @Override
     public void preEvaluation(MatrixBuilder builder) {
+        outputVoltage = super.getVoltageDifference() * Math.sin(theta + omega_tick);
+        builder.stampRHS(getAddress(), outputVoltage);
+    }
+
+    ///The voltage in the actual time, instead of the next step.
+    @Override
+    public void preOperatingPoint(MatrixBuilder builder, Circuit.InitialConditions conditions, double step) {
         outputVoltage = super.getVoltageDifference() * Math.sin(theta);
         builder.stampRHS(getAddress(), outputVoltage);
     }
@@ -35,6 +35,15 @@ public class BJTransistor extends Element3Pin implements NonLinear {
     private double n_r = 1;
     private double temp_r = 0.025852;
     private double den_r = n_r * temp_r;
+    //-----------------------------------Slots---------------------------------------
+    //The position of each entry in the slots, A is the collector, B the base and C the emissor.
+    private static final int AA = 0, AB = 1, AC = 2, BA = 3, BB = 4, BC = 5, CA = 6, CB = 7, CC = 8;
+    private int[] slots;
+    //-----------------------------------Evaluation----------------------------------
+    //The junction voltages and conductances of the last evaluation, see NonLinear#evaluate, the junctions are the limited voltages.
+    private double lastV_f = Double.NaN, lastV_r = Double.NaN;
+    private double junction_f, junction_r;
+    private double g_f, g_r;
 
     public BJTransistor() {
     }
@@ -81,19 +90,45 @@ public class BJTransistor extends Element3Pin implements NonLinear {
         return Circuit.Pin.GET_VOLTAGE_DIFF(getPinB(), getPinC());
     }
 
+    @Override
+    public boolean evaluate(double tolerance) {
+        final Circuit.Pin a = getPinA(),b = getPinB(), c = getPinC();
+        //the forward (base emissor) and reverse (base collector) junction voltages.
+        final double v_f = type == TYPE.NPN ? Circuit.Pin.GET_VOLTAGE_DIFF(b, c) : Circuit.Pin.GET_VOLTAGE_DIFF(c, b);
+        final double v_r = type == TYPE.NPN ? Circuit.Pin.GET_VOLTAGE_DIFF(b, a) : Circuit.Pin.GET_VOLTAGE_DIFF(a, b);
+        if (abs(v_f - lastV_f) <= tolerance && abs(v_r - lastV_r) <= tolerance)
+            return false;
+        if (Double.isNaN(lastV_f)) {
+            junction_f = v_f;
+            junction_r = v_r;
+        } else {
+            junction_f = NonLinear.limitJunction(v_f, junction_f, den_f, NonLinear.criticalVoltage(den_f, sat_f));
+            junction_r = NonLinear.limitJunction(v_r, junction_r, den_r, NonLinear.criticalVoltage(den_r, sat_r));
+        }
+        lastV_f = v_f;
+        lastV_r = v_r;
+
+        final double exp_f = exp(junction_f / den_f), exp_r = exp(junction_r / den_r);
+        g_f = sat_f * exp_f / den_f;//forward diode
+        g_r = sat_r * exp_r / den_r;//reverse diode
+        //the linearization in the junction voltages, the model itself if it wasn't limited.
+        current_f = min(sat_f * (exp_f - 1) + g_f * (v_f - junction_f), 10e6);
+        current_r = min(sat_r * (exp_r - 1) + g_r * (v_r - junction_r), 10e6);
+        return true;
+    }
+
+    @Override
+    public boolean isLimited() {
+        return junction_f != lastV_f || junction_r != lastV_r;
+    }
+
     @Override
     public void stamp_I_V(MatrixBuilder builder) {
         final Circuit.Pin a = getPinA(),b = getPinB(), c = getPinC();
         if (type == TYPE.NPN) {
-            current_r = min(sat_r * (exp(Circuit.Pin.GET_VOLTAGE_DIFF(b, a) / den_r) - 1), 10e6);
-            current_f = min(sat_f * (exp(Circuit.Pin.GET_VOLTAGE_DIFF(b, c) / den_f) - 1), 10e6);
-
             builder.stampCurrentSource(b, a, -current_r + alpha_for * current_f);//from base to collector.
             builder.stampCurrentSource(b, c, -current_f + alpha_rev * current_r);//from base to emissor.
         } else {
-            current_r = min(sat_r * (exp(Circuit.Pin.GET_VOLTAGE_DIFF(a, b) / den_r) - 1), 10e6);
-            current_f = min(sat_f * (exp(Circuit.Pin.GET_VOLTAGE_DIFF(c, b) / den_f) - 1), 10e6);
-
             builder.stampCurrentSource(a, b, -current_r + alpha_for * current_f);//from collector to base.
             builder.stampCurrentSource(c, b, -current_f + alpha_rev * current_r);//from emissor to base.
         }
@@ -101,48 +136,34 @@ public class BJTransistor extends Element3Pin implements NonLinear {
 
     @Override
     public void stamp_dI_dV(MatrixBuilder builder) {
-        final Circuit.Pin a = getPinA(),b = getPinB(), c = getPinC();
-        double gee,gec,gce,gcc;
-        if (type == TYPE.NPN) {
-            final double gf = sat_f * (exp(Circuit.Pin.GET_VOLTAGE_DIFF(getPinB(), getPinC()) / den_f)) / den_f;//forward diode
-            final double gr = sat_r * (exp(Circuit.Pin.GET_VOLTAGE_DIFF(getPinB(), getPinA()) / den_r)) / den_r;//reverse diode
-
-            gee = -gf;
-            gec = alpha_rev * gr;
-            gce = alpha_for * gf;
-            gcc = -gr;
-        } else {
-            final double gf = sat_f * (exp(Circuit.Pin.GET_VOLTAGE_DIFF(getPinC(), getPinB()) / den_f)) / den_f;//forward diode
-            final double gr = sat_r * (exp(Circuit.Pin.GET_VOLTAGE_DIFF(getPinA(), getPinB()) / den_r)) / den_r;//reverse diode
-
-            gee = -gf;
-            gec = alpha_rev * gr;
-            gce = alpha_for * gf;
-            gcc = -gr;
-        }
+        final double gee = -g_f;
+        final double gec = alpha_rev * g_r;
+        final double gce = alpha_for * g_f;
+        final double gcc = -g_r;
+
+        //the ground slots are ignored by the builder.
+        builder.stampSlot(slots[CC], -gee);//emissor
+        builder.stampSlot(slots[AA], -gcc);//collector
+        builder.stampSlot(slots[BB], -gee-gec-gce-gcc);//base
+        //emissor collector
+        builder.stampSlot(slots[CA], -gec);
+        builder.stampSlot(slots[AC], -gce);
+        //base emissor
+        builder.stampSlot(slots[CB], gee+gec);
+        builder.stampSlot(slots[BC], gee+gce);
+        //base collector
+        builder.stampSlot(slots[BA], gec+gcc);
+        builder.stampSlot(slots[AB], gce+gcc);
+    }
 
-        if (c != null)//emissor
-            builder.stampLHS(c.address,c.address, -gee);
-        if (a != null)//collector
-            builder.stampLHS(a.address,a.address, -gcc);
-        if (b != null)//base
-            builder.stampLHS(b.address,b.address, -gee-gec-gce-gcc);
-        if (c != null && a != null) {//emissor collector
-            builder.stampLHS(c.address, a.address, -gec);
-            builder.stampLHS(a.address, c.address, -gce);
-        }
-        if (c != null && b != null){//base emissor
-            builder.stampLHS(c.address, b.address, gee+gec);
-            builder.stampLHS(b.address, c.address, gee+gce);
-        }
-        if (b != null && a != null) {//base collector
-            builder.stampLHS(b.address,a.address, gec+gcc);
-            builder.stampLHS(a.address,b.address, gce+gcc);
-        }
+    @Override
+    public void compile(MatrixBuilder builder) {
+        slots = builder.slots(getPinA(), getPinB(), getPinC());
     }
 
     @Override
     public void stamp(MatrixBuilder builder) {
+        evaluate(0);
         stamp_dI_dV(builder);
         stamp_I_V(builder);
     }
@@ -210,5 +231,6 @@ public class BJTransistor extends Element3Pin implements NonLinear {
         den_r = n_r * temp_r;
         current_r = s.readDouble();
         current_f = s.readDouble();
+        lastV_f = lastV_r = Double.NaN;
     }
 }
@@ -23,6 +23,7 @@ public class CCCS extends Element4Pin implements RHSElement {
     private double alpha;
     private double[] current;
     private short address = (short) new Random().nextInt();
+    private int[] sourceSlots, outputSlots;
 
     public CCCS() {
     }
@@ -48,13 +49,18 @@ public class CCCS extends Element4Pin implements RHSElement {
         return current[0] * alpha;
     }
 
+    @Override
+    public void compile(MatrixBuilder builder) {
+        sourceSlots = builder.voltageSourceSlots(getPinC(), getPinD(), address);
+        outputSlots = new int[]{builder.slot(MatrixBuilder.address(getPinA()), address), builder.slot(MatrixBuilder.address(getPinB()), address)};
+    }
+
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampVoltageSource(getPinC(), getPinD(), address, 0);//A perfect ammeter.
-        if (getPinA() != null)
-            builder.stampLHS(getPinA().address, address, alpha);
-        if (getPinB() != null)
-            builder.stampLHS(getPinB().address, address, -alpha);
+        builder.stampVoltageSource(sourceSlots);//A perfect ammeter.
+        builder.stampRHS(address, 0);
+        builder.stampSlot(outputSlots[0], alpha);
+        builder.stampSlot(outputSlots[1], -alpha);
     }
 
     @Override
@@ -23,6 +23,8 @@ public class CCVS extends Element4Pin implements MultipleRHSElement {
     private double r;
     private short addressOutput = (short) new Random().nextInt();
     private short addressInput = (short) new Random().nextInt();
+    private int[] inputSlots, outputSlots;
+    private int gainSlot;
     private double[] current_pointerOutput;
     private double[] current_pointerInput;
 
@@ -60,11 +62,20 @@ public class CCVS extends Element4Pin implements MultipleRHSElement {
         return current_pointerOutput[0];
     }
 
+    @Override
+    public void compile(MatrixBuilder builder) {
+        inputSlots = builder.voltageSourceSlots(getPinC(), getPinD(), addressInput);
+        outputSlots = builder.voltageSourceSlots(getPinA(), getPinB(), addressOutput);
+        gainSlot = builder.slot(addressOutput, addressInput);
+    }
+
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampVoltageSource(getPinC(), getPinD(), addressInput, 0);
-        builder.stampVoltageSource(getPinA(), getPinB(), addressOutput, 0);
-        builder.stampLHS(addressOutput, addressInput, -r);
+        builder.stampVoltageSource(inputSlots);
+        builder.stampRHS(addressInput, 0);
+        builder.stampVoltageSource(outputSlots);
+        builder.stampRHS(addressOutput, 0);
+        builder.stampSlot(gainSlot, -r);
     }
 
     @Override
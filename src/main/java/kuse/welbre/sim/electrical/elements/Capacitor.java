@@ -1,8 +1,8 @@
 package kuse.welbre.sim.electrical.elements;
 
 import kuse.welbre.sim.electrical.Circuit;
-import kuse.welbre.sim.electrical.abstractt.Dynamic;
 import kuse.welbre.sim.electrical.abstractt.Element;
+import kuse.welbre.sim.electrical.abstractt.LinearDynamic;
 import kuse.welbre.tools.MatrixBuilder;
 
 import java.io.DataInputStream;
@@ -15,16 +15,25 @@ import java.io.IOException;
  * We assume that the voltage in A > voltage in B so, the positive voltage difference is from A to B.<br>
  * Therefore, the positive current direction in from A to B.<br>
  * The {@link Capacitor#capacitance capacitance} is how much charge per volt the capacitor can hold.<br<br>
- * <i>The backwards Euler is used to approximate the differential equations of this element.</i>
+ * <i>The differential equation of this element is approximated by the {@link Circuit#setIntegrationMethod(Circuit.IntegrationMethod) integration method} of the circuit,
+ * see {@link Integrator}.</i>
  */
 @SuppressWarnings("unused")
-public class Capacitor extends Element implements Dynamic {
+public class Capacitor extends Element implements LinearDynamic {
     private double capacitance;
     public double compConductance;
     private double currentSource;
 
     private double capacitorCurrent = 0;
     private double vDif = 0;
+    ///The voltage at t = 0, if the {@link Circuit.InitialConditions initial conditions} are given.
+    private double initialVoltage = 0;
+    ///The model of the operating point, a conductance and its current source, over the transient model.
+    private double pointConductance, pointSource;
+    private boolean pointOpen;
+    ///The voltage history, v' = i / C.
+    private final Integrator integrator = new Integrator();
+    private int[] slots;
 
     public Capacitor() {
     }
@@ -46,6 +55,15 @@ public class Capacitor extends Element implements Dynamic {
         this.capacitance = capacitance;
     }
 
+    public double getInitialVoltage() {
+        return initialVoltage;
+    }
+
+    ///The voltage of the capacitor at t = 0 in the {@link Circuit.InitialConditions#GIVEN given} initial conditions.
+    public void setInitialVoltage(double initialVoltage) {
+        this.initialVoltage = initialVoltage;
+    }
+
     @Override
     public double[] getProperties() {
         return new double[]{capacitance};
@@ -56,9 +74,14 @@ public class Capacitor extends Element implements Dynamic {
         return new String[]{"F"};
     }
 
+    @Override
+    public void compile(MatrixBuilder builder) {
+        slots = builder.slots(getPinA(), getPinB());
+    }
+
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampConductance(this.getPinA(), this.getPinB(), compConductance);
+        builder.stampConductance(slots, compConductance);
     }
 
     @Override
@@ -73,12 +96,72 @@ public class Capacitor extends Element implements Dynamic {
 
     @Override
     public void initiate(Circuit circuit) {
-        compConductance = getCapacitance() / circuit.getTickRate();
+        integrator.setStep(circuit.getIntegrationMethod(), circuit.getTickRate());
+        compConductance = getCapacitance() * integrator.getCoefficient();
+    }
+
+    @Override
+    public void stepChanged(Circuit circuit, MatrixBuilder builder) {
+        final double old = compConductance;
+        initiate(circuit);
+        builder.updateConductance(getPinA(), getPinB(), compConductance - old);
+    }
+
+    @Override
+    public double getTruncationError(double relative, double voltage, double current) {
+        final double v = super.getVoltageDifference();
+        return integrator.getTruncationError(v) / (relative * Math.max(Math.abs(v), Math.abs(vDif)) + voltage);
+    }
+
+    @Override
+    public int getTruncationOrder() {
+        return integrator.getOrder();
+    }
+
+    @Override
+    public double getOperatingPointStep(MatrixBuilder builder, Circuit.InitialConditions conditions) {
+        return getCapacitance() / (conditions == Circuit.InitialConditions.GIVEN ?
+                builder.shortConductance(getPinA(), getPinB()) : builder.openConductance(getPinA(), getPinB()));
+    }
+
+    ///A short with the initial voltage in the given conditions, or an open circuit in the operating point.
+    @Override
+    public void preOperatingPoint(MatrixBuilder builder, Circuit.InitialConditions conditions, double step) {
+        pointOpen = conditions == Circuit.InitialConditions.OPERATING_POINT;
+        pointConductance = getCapacitance() / step;
+        pointSource = pointOpen ? 0 : pointConductance * initialVoltage;
+        builder.updateConductance(getPinA(), getPinB(), pointConductance - compConductance);
+        builder.stampCurrentSource(getPinA(), getPinB(), pointSource);
+    }
+
+    @Override
+    public double correctOperatingPoint(MatrixBuilder builder, double relative, double current) {
+        final double v = super.getVoltageDifference();
+        //the open has no current, and the short has the initial voltage.
+        final double source = pointOpen ? pointConductance * v : pointSource + pointConductance * (initialVoltage - v);
+        final double change = source - pointSource;
+        builder.stampCurrentSource(getPinA(), getPinB(), change);
+        pointSource = source;
+        return Math.abs(change) / (relative * Math.abs(source) + current);
+    }
+
+    @Override
+    public void posOperatingPoint(MatrixBuilder builder) {
+        final double v = super.getVoltageDifference();
+        capacitorCurrent = pointConductance * v - pointSource;
+        //the short only approximates the initial voltage, that is exact.
+        vDif = pointOpen ? v : initialVoltage;
+        integrator.reset(vDif, capacitorCurrent / getCapacitance());
+        final double conductance = getCapacitance() * integrator.getCoefficient();
+        if (conductance != compConductance) {
+            builder.updateConductance(getPinA(), getPinB(), conductance - compConductance);
+            compConductance = conductance;
+        }
     }
 
     @Override
     public void preEvaluation(MatrixBuilder builder) {
-        currentSource = compConductance * vDif;//voltage at t
+        currentSource = -getCapacitance() * integrator.getHistory();//voltages until t
         builder.stampCurrentSource(getPinA(), getPinB(), currentSource);
     }
 
@@ -86,26 +169,67 @@ public class Capacitor extends Element implements Dynamic {
     public void posEvaluation(MatrixBuilder builder) {
         vDif = super.getVoltageDifference();
         capacitorCurrent = compConductance * vDif - currentSource;//voltage at t+1
+        integrator.accept(vDif);
+        //a second order method starts after the first step.
+        final double conductance = getCapacitance() * integrator.getCoefficient();
+        if (conductance != compConductance) {
+            builder.updateConductance(getPinA(), getPinB(), conductance - compConductance);
+            compConductance = conductance;
+        }
+    }
+
+    @Override
+    public double getState() {
+        return integrator.getState();
+    }
+
+    ///The current source of the companion model, C / h * v.
+    @Override
+    public void stampState(MatrixBuilder builder, double state) {
+        builder.stampCurrentSource(getPinA(), getPinB(), getCapacitance() * integrator.getCoefficient() * state);
+    }
+
+    @Override
+    public double nextState(double state) {
+        return super.getVoltageDifference();
+    }
+
+    @Override
+    public void setState(double state, double derivative) {
+        vDif = state;
+        capacitorCurrent = getCapacitance() * derivative;
+        integrator.reset(state, derivative);
     }
 
     @Override
     public void serialize(DataOutputStream s) throws IOException {
         super.serialize(s);
         s.writeDouble(capacitance);
-        s.writeDouble(currentSource);//todo this is useless, write the voltage at this point, instead the currentSource.
-        s.writeDouble(vDif);//todo this is useless, write the voltage at this point, instead the currentSource.
+        s.writeDouble(currentSource);
+        s.writeDouble(vDif);
         s.writeDouble(capacitorCurrent);
+        s.writeDouble(initialVoltage);
+        integrator.serialize(s);
     }
 
     @Override
     public void unSerialize(DataInputStream s) throws IOException {
+        unSerialize(s, Circuit.SERIAL_VERSION);
+    }
+
+    @Override
+    public void unSerialize(DataInputStream s, int version) throws IOException {
         super.unSerialize(s);
         capacitance = s.readDouble();
         currentSource = s.readDouble();
         vDif = s.readDouble();
         capacitorCurrent = s.readDouble();
-
-        //todo nesse ponto, quando o elemento é desSerializado ele perde o valor de currentSource pq o circuito irar executar uma simulação com um tickRate minimo, para calcular o ponto de operação Dc
-        //todo para consertar isso, preciso fazer uma simulação dc, ao invés de usar um timestep pequeno, assim vou conseguir por um valor inicial de tensão para os capacitores e indutores e outros elementos dinâmicos
+        if (version == UNVERSIONED) {//without history, the last step is the state.
+            initialVoltage = 0;
+            integrator.reset(vDif, capacitorCurrent / capacitance);
+            return;
+        }
+        initialVoltage = s.readDouble();
+        integrator.unSerialize(s);
     }
 }
@@ -18,12 +18,18 @@ import java.io.IOException;
 public class Diode extends Element implements NonLinear {
     public static final double DEFAULT_SATURATION = 1e-6;
     ///The saturation current, by default 1μA.
-    private double saturation = DEFAULT_SATURATION;
+    double saturation = DEFAULT_SATURATION;
     ///The quality factor a number bigger than 0.Typically between 0 and 2, but can be higher.
     private double n = 1;
     ///The terminal voltage at 300 K (27ºC) (80ºF)
     private double tempVoltage = 0.025852;
-    private double denominator = n * tempVoltage;
+    double denominator = n * tempVoltage;
+    int[] slots;
+    ///The bank that evaluates this diode, if any, see {@link DiodeBank}.
+    DiodeBank bank;
+    int bankIndex;
+    //The last evaluation, see NonLinear#evaluate, the junction is the limited voltage.
+    private double lastVoltage = Double.NaN, junction, lastCurrent, lastConductance;
 
     /**
      * Create a default diode model.<br>
@@ -68,20 +74,46 @@ public class Diode extends Element implements NonLinear {
         denominator = n * tempVoltage;
     }
 
+    @Override
+    public boolean evaluate(double tolerance) {
+        final double voltage = getVoltageDifference();
+        if (Math.abs(voltage - lastVoltage) <= tolerance)
+            return false;
+        junction = Double.isNaN(lastVoltage) ? voltage :
+                NonLinear.limitJunction(voltage, junction, denominator, NonLinear.criticalVoltage(denominator, saturation));
+        lastVoltage = voltage;
+        final double exp = Math.exp(junction / denominator);
+        lastConductance = (saturation / denominator) * exp;
+        //the linearization in the junction voltage, the model itself if it wasn't limited.
+        lastCurrent = -(saturation * (exp - 1) + lastConductance * (voltage - junction));
+        return true;
+    }
+
+    @Override
+    public boolean isLimited() {
+        return junction != lastVoltage;
+    }
+
     @Override
     public void stamp_I_V(MatrixBuilder builder) {
-        builder.stampCurrentSource(getPinA(), getPinB(), getCurrent());
+        builder.stampCurrentSource(getPinA(), getPinB(), lastCurrent);
     }
 
     @Override
     public void stamp_dI_dV(MatrixBuilder builder) {
-        builder.stampConductance(getPinA(), getPinB(), Math.max(conductance(),1e-12));
+        builder.stampConductance(slots, Math.max(lastConductance,1e-12));
+    }
+
+    @Override
+    public void compile(MatrixBuilder builder) {
+        slots = builder.slots(getPinA(), getPinB());
     }
 
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampCurrentSource(getPinA(), getPinB(), getCurrent());
-        builder.stampConductance(getPinA(), getPinB(), conductance());
+        evaluate(0);
+        builder.stampCurrentSource(getPinA(), getPinB(), lastCurrent);
+        builder.stampConductance(slots, lastConductance);
     }
 
     ///Returns the threshold voltage of the diode, using 1mA as reference to "on" state.
@@ -102,13 +134,9 @@ public class Diode extends Element implements NonLinear {
         return -(saturation * (Math.exp(getVoltageDifference()/denominator) - 1));
     }
 
-    ///The derivative of Shockley diode equation in respect of voltage.
-    private double conductance() {
-        return (saturation / denominator) * Math.exp(getVoltageDifference()/denominator);
-    }
-
     public void setSaturation(double saturation) {
         this.saturation = saturation;
+        changed();
     }
 
     public void setN(double n) {
@@ -116,11 +144,20 @@ public class Diode extends Element implements NonLinear {
             throw new IllegalArgumentException("The quality factor need to be bigger that 0");
         this.n = n;
         denominator = n * tempVoltage;
+        changed();
     }
 
     public void setTempVoltage(double tempVoltage) {
         this.tempVoltage = tempVoltage;
         denominator = n * tempVoltage;
+        changed();
+    }
+
+    ///The model changed, so the next evaluation can't be bypassed.
+    private void changed() {
+        lastVoltage = Double.NaN;
+        if (bank != null)
+            bank.load(bankIndex);
     }
 
     public double getSaturation() {
@@ -146,5 +183,6 @@ public class Diode extends Element implements NonLinear {
         n = s.readDouble();
         tempVoltage = s.readDouble();
         denominator = n * tempVoltage;
+        changed();
     }
 }
@@ -0,0 +1,150 @@
+package kuse.welbre.sim.electrical.elements;
+
+import kuse.welbre.sim.electrical.abstractt.NonLinear;
+import kuse.welbre.tools.MatrixBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link Diode diodes} of a circuit evaluated together, in a structure of arrays.<br>
+ * The model parameters and the last evaluation of each diode are kept in primitive arrays, so one evaluation of all diodes is:
+ * <ol>
+ *     <li>A gather of the terminal voltages, with the bypass and the junction limiting, that collects the diodes to evaluate.</li>
+ *     <li>A tight loop over the collected diodes with the exponential, the conductance and the current, without any object access.</li>
+ * </ol>
+ * The result is the same of {@link Diode#evaluate(double)}, only the exact {@link Diode} class is banked,
+ * a subclass can change the model and is evaluated by itself.<br>
+ * The diodes update their parameters in the bank when changed.
+ */
+public final class DiodeBank {
+    private final Diode[] diodes;
+    ///The voltage of the terminals, null is the ground.
+    private final double[][] voltageA, voltageB;
+    ///The matrix row of the terminals, -1 is the ground.
+    private final int[] rowA, rowB;
+    private final int[][] slots;
+    //the model.
+    private final double[] saturation, denominator, critical;
+    //the last evaluation, see Diode#evaluate.
+    private final double[] lastVoltage, junction, current, conductance;
+    //work arrays, the diodes evaluated in the current pass.
+    private final int[] pending;
+    private final double[] voltage;
+
+    /**
+     * Bank all exact {@link Diode diodes} of the list, the pins must already have their address and voltage,
+     * and the diodes must be compiled.
+     */
+    public DiodeBank(List<? extends NonLinear> elements) {
+        List<Diode> list = new ArrayList<>();
+        for (NonLinear e : elements)
+            if (accepts(e))
+                list.add((Diode) e);
+        diodes = list.toArray(new Diode[0]);
+
+        final int size = diodes.length;
+        voltageA = new double[size][];
+        voltageB = new double[size][];
+        rowA = new int[size];
+        rowB = new int[size];
+        slots = new int[size][];
+        saturation = new double[size];
+        denominator = new double[size];
+        critical = new double[size];
+        lastVoltage = new double[size];
+        junction = new double[size];
+        current = new double[size];
+        conductance = new double[size];
+        pending = new int[size];
+        voltage = new double[size];
+        for (int k = 0; k < size; k++) {
+            final Diode d = diodes[k];
+            voltageA[k] = d.getPinA() == null ? null : d.getPinA().P_voltage;
+            voltageB[k] = d.getPinB() == null ? null : d.getPinB().P_voltage;
+            rowA[k] = MatrixBuilder.address(d.getPinA());
+            rowB[k] = MatrixBuilder.address(d.getPinB());
+            slots[k] = d.slots;
+            d.bank = this;
+            d.bankIndex = k;
+            load(k);
+        }
+    }
+
+    ///@return if the element is evaluated by a bank.
+    public static boolean accepts(NonLinear element) {
+        return element.getClass() == Diode.class;
+    }
+
+    ///Read the model of the diode k again, and force its next evaluation.
+    void load(int k) {
+        final Diode d = diodes[k];
+        saturation[k] = d.saturation;
+        denominator[k] = d.denominator;
+        critical[k] = NonLinear.criticalVoltage(d.denominator, d.saturation);
+        lastVoltage[k] = Double.NaN;
+    }
+
+    /**
+     * Evaluate all diodes, see {@link NonLinear#evaluate(double)}.
+     * @return how many diodes were evaluated, the others were bypassed.
+     */
+    public int evaluate(double tolerance) {
+        return evaluate(0, diodes.length, tolerance);
+    }
+
+    /**
+     * Evaluate the diodes from (inclusive) to (exclusive), disjoint ranges can be evaluated at the same time by different threads.
+     * @return how many diodes were evaluated, the others were bypassed.
+     */
+    public int evaluate(int from, int to, double tolerance) {
+        //the pending diodes of the range are stored in the range itself.
+        int end = from;
+        //gather, bypass and limit.
+        for (int k = from; k < to; k++) {
+            final double v = (voltageA[k] == null ? 0 : voltageA[k][0]) - (voltageB[k] == null ? 0 : voltageB[k][0]);
+            final double last = lastVoltage[k];
+            if (Math.abs(v - last) <= tolerance)
+                continue;
+            junction[k] = Double.isNaN(last) ? v : NonLinear.limitJunction(v, junction[k], denominator[k], critical[k]);
+            lastVoltage[k] = v;
+            voltage[end] = v;
+            pending[end++] = k;
+        }
+
+        //the kernel, only primitive arrays.
+        for (int i = from; i < end; i++) {
+            final int k = pending[i];
+            final double j = junction[k], sat = saturation[k], den = denominator[k];
+            final double exp = Math.exp(j / den);
+            final double g = (sat / den) * exp;
+            conductance[k] = g;
+            current[k] = -(sat * (exp - 1) + g * (voltage[i] - j));
+        }
+        return end - from;
+    }
+
+    ///@return true if any diode limited its junction voltage in the last evaluation.
+    public boolean isLimited() {
+        for (int k = 0; k < diodes.length; k++)
+            if (junction[k] != lastVoltage[k])
+                return true;
+        return false;
+    }
+
+    ///Stamp the linearized currents of the last evaluation, see {@link NonLinear#stamp_I_V(MatrixBuilder)}.
+    public void stamp_I_V(MatrixBuilder builder) {
+        for (int k = 0; k < diodes.length; k++)
+            builder.stampCurrentSource(rowA[k], rowB[k], current[k]);
+    }
+
+    ///Stamp the conductances of the last evaluation, see {@link NonLinear#stamp_dI_dV(MatrixBuilder)}.
+    public void stamp_dI_dV(MatrixBuilder builder) {
+        for (int k = 0; k < diodes.length; k++)
+            builder.stampConductance(slots[k], Math.max(conductance[k], 1e-12));
+    }
+
+    public int size() {
+        return diodes.length;
+    }
+}
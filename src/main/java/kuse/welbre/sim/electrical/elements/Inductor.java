@@ -1,8 +1,8 @@
 package kuse.welbre.sim.electrical.elements;
 
 import kuse.welbre.sim.electrical.Circuit;
-import kuse.welbre.sim.electrical.abstractt.Dynamic;
 import kuse.welbre.sim.electrical.abstractt.Element;
+import kuse.welbre.sim.electrical.abstractt.LinearDynamic;
 import kuse.welbre.tools.MatrixBuilder;
 
 import java.io.DataInputStream;
@@ -15,13 +15,25 @@ import java.io.IOException;
  * We assume that the voltage in A > voltage in B so, the positive voltage difference is from A to B.<br>
  * Therefore, the positive current direction in from A to B.<br>
  * The {@link Inductor#inductance inductance} is how much voltage per ampere oscillation the inductor can induct.<br<br>
- * <i>The backwards Euler is used to approximate the differential equations of this element.</i>
+ * <i>The differential equation of this element is approximated by the {@link Circuit#setIntegrationMethod(Circuit.IntegrationMethod) integration method} of the circuit,
+ * see {@link Integrator}.</i>
  */
 @SuppressWarnings("unused")
-public class Inductor extends Element implements Dynamic {
+public class Inductor extends Element implements LinearDynamic {
     private double inductance;
     private double compConductance;
+    ///The current at t.
     private double currentSource;
+    ///The current source of the companion model, the part of the current at t + 1 that depends on the history.
+    private double historySource;
+    ///The current at t = 0, if the {@link Circuit.InitialConditions initial conditions} are given.
+    private double initialCurrent = 0;
+    ///The model of the operating point, a conductance and its current source, over the transient model.
+    private double pointConductance, pointSource;
+    private boolean pointShort;
+    ///The current history, i' = v / L.
+    private final Integrator integrator = new Integrator();
+    private int[] slots;
 
     public Inductor() {
     }
@@ -53,29 +65,131 @@ public class Inductor extends Element implements Dynamic {
         this.inductance = inductance;
     }
 
+    public double getInitialCurrent() {
+        return initialCurrent;
+    }
+
+    ///The current of the inductor at t = 0 in the {@link Circuit.InitialConditions#GIVEN given} initial conditions.
+    public void setInitialCurrent(double initialCurrent) {
+        this.initialCurrent = initialCurrent;
+    }
+
     @Override
     public double getCurrent() {
         return currentSource;
     }
 
+    @Override
+    public void compile(MatrixBuilder builder) {
+        slots = builder.slots(getPinA(), getPinB());
+    }
+
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampConductance(this.getPinA(), this.getPinB(), compConductance);
+        builder.stampConductance(slots, compConductance);
     }
 
     @Override
     public void initiate(Circuit circuit) {
-        compConductance = circuit.getTickRate() / getInductance();
+        integrator.setStep(circuit.getIntegrationMethod(), circuit.getTickRate());
+        compConductance = 1 / (getInductance() * integrator.getCoefficient());
+    }
+
+    @Override
+    public void stepChanged(Circuit circuit, MatrixBuilder builder) {
+        final double old = compConductance;
+        initiate(circuit);
+        builder.updateConductance(getPinA(), getPinB(), compConductance - old);
+    }
+
+    @Override
+    public double getTruncationError(double relative, double voltage, double current) {
+        final double i = historySource + compConductance * getVoltageDifference();
+        return integrator.getTruncationError(i) / (relative * Math.max(Math.abs(i), Math.abs(currentSource)) + current);
+    }
+
+    @Override
+    public int getTruncationOrder() {
+        return integrator.getOrder();
+    }
+
+    @Override
+    public double getOperatingPointStep(MatrixBuilder builder, Circuit.InitialConditions conditions) {
+        return getInductance() * (conditions == Circuit.InitialConditions.GIVEN ?
+                builder.openConductance(getPinA(), getPinB()) : builder.shortConductance(getPinA(), getPinB()));
+    }
+
+    ///A current source with the initial current in the given conditions, or a short in the operating point.
+    @Override
+    public void preOperatingPoint(MatrixBuilder builder, Circuit.InitialConditions conditions, double step) {
+        pointShort = conditions == Circuit.InitialConditions.OPERATING_POINT;
+        pointConductance = step / getInductance();
+        pointSource = pointShort ? 0 : initialCurrent;
+        builder.updateConductance(getPinA(), getPinB(), pointConductance - compConductance);
+        builder.stampCurrentSource(getPinB(), getPinA(), pointSource);
+    }
+
+    @Override
+    public double correctOperatingPoint(MatrixBuilder builder, double relative, double current) {
+        final double v = getVoltageDifference();
+        //the short has no voltage, and the open has the initial current.
+        final double source = pointShort ? pointSource + pointConductance * v : initialCurrent - pointConductance * v;
+        final double change = source - pointSource;
+        builder.stampCurrentSource(getPinB(), getPinA(), change);
+        pointSource = source;
+        return Math.abs(change) / (relative * Math.abs(source) + current);
+    }
+
+    @Override
+    public void posOperatingPoint(MatrixBuilder builder) {
+        final double v = getVoltageDifference();
+        currentSource = pointSource + pointConductance * v;
+        integrator.reset(currentSource, v / getInductance());
+        final double conductance = 1 / (getInductance() * integrator.getCoefficient());
+        if (conductance != compConductance) {
+            builder.updateConductance(getPinA(), getPinB(), conductance - compConductance);
+            compConductance = conductance;
+        }
     }
 
     @Override
     public void preEvaluation(MatrixBuilder builder) {
-        builder.stampCurrentSource(getPinB(), getPinA(), currentSource);
+        historySource = -integrator.getHistory() / integrator.getCoefficient();
+        builder.stampCurrentSource(getPinB(), getPinA(), historySource);
     }
 
     @Override
     public void posEvaluation(MatrixBuilder builder) {
-        currentSource = currentSource + (compConductance * getVoltageDifference());
+        currentSource = historySource + (compConductance * getVoltageDifference());
+        integrator.accept(currentSource);
+        //a second order method starts after the first step.
+        final double conductance = 1 / (getInductance() * integrator.getCoefficient());
+        if (conductance != compConductance) {
+            builder.updateConductance(getPinA(), getPinB(), conductance - compConductance);
+            compConductance = conductance;
+        }
+    }
+
+    @Override
+    public double getState() {
+        return integrator.getState();
+    }
+
+    ///The current of the last step flows in the companion model.
+    @Override
+    public void stampState(MatrixBuilder builder, double state) {
+        builder.stampCurrentSource(getPinB(), getPinA(), state);
+    }
+
+    @Override
+    public double nextState(double state) {
+        return state + compConductance * getVoltageDifference();
+    }
+
+    @Override
+    public void setState(double state, double derivative) {
+        currentSource = state;
+        integrator.reset(state, derivative);
     }
 
     @Override
@@ -83,12 +197,26 @@ public class Inductor extends Element implements Dynamic {
         super.serialize(s);
         s.writeDouble(inductance);
         s.writeDouble(currentSource);
+        s.writeDouble(initialCurrent);
+        integrator.serialize(s);
     }
 
     @Override
     public void unSerialize(DataInputStream s) throws IOException  {
+        unSerialize(s, Circuit.SERIAL_VERSION);
+    }
+
+    @Override
+    public void unSerialize(DataInputStream s, int version) throws IOException {
         super.unSerialize(s);
         inductance = s.readDouble();
         currentSource = s.readDouble();
+        if (version == UNVERSIONED) {//without history, the last step is the state, its derivative isn't used by backward Euler.
+            initialCurrent = 0;
+            integrator.reset(currentSource, 0);
+            return;
+        }
+        initialCurrent = s.readDouble();
+        integrator.unSerialize(s);
     }
 }
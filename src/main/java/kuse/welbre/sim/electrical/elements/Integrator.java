@@ -0,0 +1,151 @@
+package kuse.welbre.sim.electrical.elements;
+
+import kuse.welbre.sim.electrical.Circuit;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The integration of a state x with its derivative y, like the voltage of a {@link Capacitor} (y = i / C) or the current of an {@link Inductor} (y = v / L).<br>
+ * Each step is replaced by a companion model, y<sub>n+1</sub> = a0 * x<sub>n+1</sub> + b, where a0 is the {@link Integrator#getCoefficient() coefficient}
+ * and b is the {@link Integrator#getHistory() history} of the last steps, with h the step:
+ * <ul>
+ *     <li>{@link Circuit.IntegrationMethod#BACKWARD_EULER Backward Euler}: a0 = 1 / h, b = -x<sub>n</sub> / h.</li>
+ *     <li>{@link Circuit.IntegrationMethod#TRAPEZOIDAL Trapezoidal}: a0 = 2 / h, b = -2 * x<sub>n</sub> / h - y<sub>n</sub>.</li>
+ *     <li>{@link Circuit.IntegrationMethod#BDF2 BDF2}, with the ratio r = h / h<sub>n</sub> of the last step:
+ *     a0 = (1 + 2r) / (h(1 + r)), b = -(1 + r) / h * x<sub>n</sub> + r² / (h(1 + r)) * x<sub>n-1</sub>.</li>
+ * </ul>
+ * The second order methods use a backward Euler step while the history is too short, and BDF2 also after a step that grew too much.
+ */
+public final class Integrator {
+    ///BDF2 is only used while the step is at most this factor of the last one.
+    private static final double MAX_STEP_RATIO = 4;
+
+    private Circuit.IntegrationMethod method = Circuit.IntegrationMethod.BACKWARD_EULER;
+    ///The method of the next step, a second order method without history is a backward Euler step.
+    private Circuit.IntegrationMethod active = Circuit.IntegrationMethod.BACKWARD_EULER;
+    private double step = 1, coefficient = 1;
+    //the state and its derivative in the last two steps, the step of the last one, and how many steps are stored.
+    private double x, previousX, y, previousY, lastStep;
+    private int stored = 0;
+
+    ///Set the method and the step of the next steps, the history is kept.
+    public void setStep(Circuit.IntegrationMethod method, double step) {
+        this.method = method;
+        this.step = step;
+        update();
+    }
+
+    private void update() {
+        active = switch (method) {
+            case BACKWARD_EULER -> method;
+            case TRAPEZOIDAL -> stored >= 1 ? method : Circuit.IntegrationMethod.BACKWARD_EULER;
+            case BDF2 -> stored >= 2 && step <= MAX_STEP_RATIO * lastStep ? method : Circuit.IntegrationMethod.BACKWARD_EULER;
+        };
+        coefficient = switch (active) {
+            case BACKWARD_EULER -> 1 / step;
+            case TRAPEZOIDAL -> 2 / step;
+            case BDF2 -> {
+                final double r = step / lastStep;
+                yield (1 + 2 * r) / (step * (1 + r));
+            }
+        };
+    }
+
+    ///@return the coefficient a0 of x<sub>n+1</sub> in the next step, it changes after a {@link Integrator#accept(double) step} when the method changes.
+    public double getCoefficient() {
+        return coefficient;
+    }
+
+    ///@return the part b of the next derivative that only depends on the last steps.
+    public double getHistory() {
+        return switch (active) {
+            case BACKWARD_EULER -> -x / step;
+            case TRAPEZOIDAL -> -2 * x / step - y;
+            case BDF2 -> {
+                final double r = step / lastStep;
+                yield -(1 + r) / step * x + r * r / (step * (1 + r)) * previousX;
+            }
+        };
+    }
+
+    ///Store the state of the solved step in the history.
+    public void accept(double state) {
+        final double derivative = coefficient * state + getHistory();
+        previousX = x;
+        previousY = y;
+        x = state;
+        y = derivative;
+        lastStep = step;
+        stored = Math.min(stored + 1, 2);
+        update();
+    }
+
+    /**
+     * Start the history in a known state, like the {@link Circuit.InitialConditions initial conditions} at t = 0.<br>
+     * The derivative is exact in the state, not the one of a step, so the next backward Euler error uses a step of length 0 before it.
+     */
+    public void reset(double state, double derivative) {
+        x = state;
+        y = derivative;
+        previousX = previousY = lastStep = 0;
+        stored = 1;
+        update();
+    }
+
+    /**
+     * The local truncation error of the next state, before it is {@link Integrator#accept(double) accepted}.<br>
+     * The derivatives of the state are the divided differences of y:
+     * the backward Euler error is h² / 2 * x'', and the second order errors are h³ / 12 * x''' (trapezoidal) and 2 / 9 * h³ * x''' (BDF2).
+     * @return the absolute error of the state, 0 while the history is too short.
+     */
+    public double getTruncationError(double state) {
+        final double next = coefficient * state + getHistory();
+        if (active == Circuit.IntegrationMethod.BACKWARD_EULER) {
+            if (stored < 1)
+                return 0;
+            //the backward Euler derivatives are in the middle of the steps.
+            return step * step * Math.abs(next - y) / (step + lastStep);
+        }
+        if (stored < 2)
+            return 0;
+        final double third = 2 * ((next - y) / step - (y - previousY) / lastStep) / (step + lastStep);
+        final double h3 = step * step * step;
+        return Math.abs(third) * h3 * (active == Circuit.IntegrationMethod.TRAPEZOIDAL ? 1.0 / 12 : 2.0 / 9);
+    }
+
+    ///@return the order of the next step, 1 while a second order method uses a backward Euler step. The truncation error grows with step<sup>order + 1</sup>.
+    public int getOrder() {
+        return active == Circuit.IntegrationMethod.BACKWARD_EULER ? 1 : 2;
+    }
+
+    ///@return the state of the last step.
+    public double getState() {
+        return x;
+    }
+
+    ///@return the derivative of the last step.
+    public double getDerivative() {
+        return y;
+    }
+
+    public void serialize(DataOutputStream s) throws IOException {
+        s.writeByte(stored);
+        s.writeDouble(x);
+        s.writeDouble(previousX);
+        s.writeDouble(y);
+        s.writeDouble(previousY);
+        s.writeDouble(lastStep);
+    }
+
+    public void unSerialize(DataInputStream s) throws IOException {
+        stored = s.readByte();
+        x = s.readDouble();
+        previousX = s.readDouble();
+        y = s.readDouble();
+        previousY = s.readDouble();
+        lastStep = s.readDouble();
+        update();
+    }
+}
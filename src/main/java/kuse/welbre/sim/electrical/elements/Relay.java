@@ -20,6 +20,8 @@ public class Relay extends Element4Pin implements Operational, Dynamic {
     private boolean isOpen = true;
     private boolean dirt = true;
     private double closedResistence = 1e-6;//1mΩ default
+    ///The resistence in the matrix, NaN if isn't stamped.
+    private double stampedResistence = Double.NaN;
     private double openResistence = 1e6;//1MΩ default
     private double operationalCurrent = DEFAULT_OPERATIONAL_CURRENT;
     private final Inductor inductor = Element.asField(() -> new Inductor(getPinC(), getPinD(), DEFAULT_OPERATIONAL_VOLTAGE * DEFAULT_OPERATIONAL_TIME / DEFAULT_OPERATIONAL_CURRENT));
@@ -57,14 +59,55 @@ public class Relay extends Element4Pin implements Operational, Dynamic {
         inductor.initiate(circuit);
     }
 
+    @Override
+    public void stepChanged(Circuit circuit, MatrixBuilder builder) {
+        inductor.stepChanged(circuit, builder);
+    }
+
+    @Override
+    public double getTruncationError(double relative, double voltage, double current) {
+        return inductor.getTruncationError(relative, voltage, current);
+    }
+
+    @Override
+    public int getTruncationOrder() {
+        return inductor.getTruncationOrder();
+    }
+
     @Override
     public void preEvaluation(MatrixBuilder builder) {
         inductor.preEvaluation(builder);
     }
 
+    @Override
+    public double getOperatingPointStep(MatrixBuilder builder, Circuit.InitialConditions conditions) {
+        return inductor.getOperatingPointStep(builder, conditions);
+    }
+
+    @Override
+    public void preOperatingPoint(MatrixBuilder builder, Circuit.InitialConditions conditions, double step) {
+        inductor.preOperatingPoint(builder, conditions, step);
+    }
+
+    @Override
+    public double correctOperatingPoint(MatrixBuilder builder, double relative, double current) {
+        return inductor.correctOperatingPoint(builder, relative, current);
+    }
+
+    @Override
+    public void posOperatingPoint(MatrixBuilder builder) {
+        inductor.posOperatingPoint(builder);
+        checkState();
+    }
+
     @Override
     public void posEvaluation(MatrixBuilder builder) {
         inductor.posEvaluation(builder);
+        checkState();
+    }
+
+    ///Open or close the relay by the current of the coil.
+    private void checkState() {
         final boolean shouldOpen = inductor.getCurrent() < operationalCurrent;
         if (isOpen != shouldOpen) {//check if is needed to change the state.
             isOpen = shouldOpen;
@@ -79,10 +122,26 @@ public class Relay extends Element4Pin implements Operational, Dynamic {
 
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampResistence(getPinA(), getPinB(), isOpen ? openResistence : closedResistence);
+        stampedResistence = isOpen ? openResistence : closedResistence;
+        builder.stampResistence(getPinA(), getPinB(), stampedResistence);
         inductor.stamp(builder);
     }
 
+    @Override
+    public void compile(MatrixBuilder builder) {
+        inductor.compile(builder);
+    }
+
+    @Override
+    public boolean stampChanges(MatrixBuilder builder) {
+        if (Double.isNaN(stampedResistence))
+            return false;
+        final double resistence = isOpen ? openResistence : closedResistence;
+        builder.updateConductance(getPinA(), getPinB(), 1 / resistence - 1 / stampedResistence);
+        stampedResistence = resistence;
+        return true;
+    }
+
 
 
 
@@ -169,13 +228,18 @@ public class Relay extends Element4Pin implements Operational, Dynamic {
 
     @Override
     public void unSerialize(DataInputStream s) throws IOException  {
+        unSerialize(s, Circuit.SERIAL_VERSION);
+    }
+
+    @Override
+    public void unSerialize(DataInputStream s, int version) throws IOException {
         super.unSerialize(s);
         closedResistence = s.readDouble();//1mΩ default
         openResistence = s.readDouble();//1MΩ default
         isOpen = s.readBoolean();
         dirt = s.readBoolean();
         operationalCurrent = s.readDouble();
-        inductor.unSerialize(s);
+        inductor.unSerialize(s, version);
         inductor.connect(getPinC(), getPinD());//connect again to ensure the same memory address to the inductor.
     }
 }
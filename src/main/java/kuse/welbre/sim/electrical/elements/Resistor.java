@@ -18,6 +18,7 @@ import java.io.IOException;
 public class Resistor extends Element {
     private double resistance;
     private double conductance;
+    private int[] slots;
 
     public Resistor() {
         resistance = Double.MAX_VALUE;
@@ -51,9 +52,14 @@ public class Resistor extends Element {
         return getVoltageDifference() / getResistance();
     }
 
+    @Override
+    public void compile(MatrixBuilder builder) {
+        slots = builder.slots(getPinA(), getPinB());
+    }
+
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampConductance(this.getPinA(), this.getPinB(), this.getConductance());
+        builder.stampConductance(slots, this.getConductance());
     }
 
     @Override
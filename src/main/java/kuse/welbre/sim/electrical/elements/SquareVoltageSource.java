@@ -10,8 +10,15 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 
+/**
+ * A square wave voltage source.<br>
+ * The voltage is high in the duty cycle of each period and low in the rest, the edges are {@link Dynamic#getNextBreakpoint(double) breakpoints},
+ * so the steps land on them when the {@link Circuit#setBreakpoints(boolean) circuit} enables it.
+ */
 @SuppressWarnings("unused")
 public class SquareVoltageSource extends Element implements Dynamic, RHSElement {
+    ///The time of an edge, relative to the period, that is already reached.
+    private static final double EDGE_TOLERANCE = 1e-9;
     private int idx;
     private double[] current;
 
@@ -91,12 +98,34 @@ public class SquareVoltageSource extends Element implements Dynamic, RHSElement
         tickRate = circuit.getTickRate();
     }
 
+    @Override
+    public void stepChanged(Circuit circuit, MatrixBuilder builder) {
+        tickRate = circuit.getTickRate();
+    }
+
     @Override
     public void preEvaluation(MatrixBuilder builder) {
-        outputVoltage = ((time % period) < dutyCycle ? voltage : -voltage) + v_off;
+        //a step that starts in an edge is after it, even with the rounding of the time.
+        outputVoltage = (((time + period * EDGE_TOLERANCE) % period) < dutyCycle ? voltage : -voltage) + v_off;
         builder.stampRHS(idx, outputVoltage);
     }
 
+    @Override
+    public double getNextBreakpoint(double time) {
+        if (!(dutyCycle > 0 && dutyCycle < period))
+            return Double.POSITIVE_INFINITY;
+        //an edge closer than the tolerance was already reached, the rounding of the time can't make a tiny step.
+        final double tolerance = period * EDGE_TOLERANCE;
+        final double phase = this.time % period;
+        double remaining = dutyCycle - phase;
+        if (remaining <= tolerance) {
+            remaining = period - phase;
+            if (remaining <= tolerance)
+                remaining += dutyCycle;
+        }
+        return time + remaining;
+    }
+
     @Override
     public void posEvaluation(MatrixBuilder builder) {
         time += tickRate;
@@ -14,6 +14,8 @@ public class Switch extends Element implements Operational {
     private boolean isOpen = true;
     private boolean dirt = true;
     private double closedResistence;//1mΩ default
+    ///The resistence in the matrix, NaN if isn't stamped.
+    private double stampedResistence = Double.NaN;
     private double openResistence;//1MΩ default
 
     public Switch() {
@@ -67,7 +69,18 @@ public class Switch extends Element implements Operational {
 
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampResistence(getPinA(), getPinB(), isOpen ? openResistence : closedResistence);
+        stampedResistence = isOpen ? openResistence : closedResistence;
+        builder.stampResistence(getPinA(), getPinB(), stampedResistence);
+    }
+
+    @Override
+    public boolean stampChanges(MatrixBuilder builder) {
+        if (Double.isNaN(stampedResistence))
+            return false;
+        final double resistence = isOpen ? openResistence : closedResistence;
+        builder.updateConductance(getPinA(), getPinB(), 1 / resistence - 1 / stampedResistence);
+        stampedResistence = resistence;
+        return true;
     }
 
     public boolean isOpen() {
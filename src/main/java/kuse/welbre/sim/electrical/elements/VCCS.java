@@ -19,6 +19,7 @@ import java.io.IOException;
 @SuppressWarnings("unused")
 public class VCCS extends Element4Pin {
     private double g;
+    private int[] slots;
 
     public VCCS() {
     }
@@ -54,20 +55,19 @@ public class VCCS extends Element4Pin {
         return Circuit.Pin.GET_VOLTAGE_DIFF(getPinC(), getPinD()) * g;
     }
 
+    @Override
+    public void compile(MatrixBuilder builder) {
+        final int a = MatrixBuilder.address(getPinA()), b = MatrixBuilder.address(getPinB());
+        final int c = MatrixBuilder.address(getPinC()), d = MatrixBuilder.address(getPinD());
+        slots = new int[]{builder.slot(a, c), builder.slot(a, d), builder.slot(b, c), builder.slot(b, d)};
+    }
+
     @Override
     public void stamp(MatrixBuilder builder) {
-        if (getPinA() != null) {
-            if (getPinC() != null)
-                builder.stampLHS(getPinA().address, getPinC().address, g);
-            if (getPinD() != null)
-                builder.stampLHS(getPinA().address, getPinD().address, -g);
-        }
-        if (getPinB() != null) {
-            if (getPinC() != null)
-                builder.stampLHS(getPinB().address, getPinC().address, -g);
-            if (getPinD() != null)
-                builder.stampLHS(getPinB().address, getPinD().address, g);
-        }
+        builder.stampSlot(slots[0], g);
+        builder.stampSlot(slots[1], -g);
+        builder.stampSlot(slots[2], -g);
+        builder.stampSlot(slots[3], g);
     }
 
     @Override
@@ -23,6 +23,7 @@ public class VCVS extends Element4Pin implements RHSElement {
     private double micro;
     private double[] current_pointer;
     private short address = (short) new Random().nextInt();
+    private int[] sourceSlots, controlSlots;
 
     public VCVS() {
     }
@@ -58,14 +59,19 @@ public class VCVS extends Element4Pin implements RHSElement {
         return current_pointer[0];
     }
 
+    @Override
+    public void compile(MatrixBuilder builder) {
+        sourceSlots = builder.voltageSourceSlots(getPinA(), getPinB(), address);
+        controlSlots = new int[]{builder.slot(address, MatrixBuilder.address(getPinC())), builder.slot(address, MatrixBuilder.address(getPinD()))};
+    }
+
     @Override
     public void stamp(MatrixBuilder builder) {
-        builder.stampVoltageSource(getPinA(), getPinB(), address, 0);
+        builder.stampVoltageSource(sourceSlots);
+        builder.stampRHS(address, 0);
         builder.stampCurrentSource(getPinC(), getPinD(), 0);
-        if (getPinC() != null)
-            builder.stampLHS(address, getPinC().address, -micro);
-        if (getPinD() != null)
-            builder.stampLHS(address, getPinD().address, micro);
+        builder.stampSlot(controlSlots[0], -micro);
+        builder.stampSlot(controlSlots[1], micro);
     }
 
     @Override
@@ -0,0 +1,90 @@
+package kuse.welbre.tools;
+
+/**
+ * The inverse of a Jacobian corrected by the (good) Broyden's method, without a new Jacobian or factorization.<br>
+ * Each secant step s, with the change y in f, corrects the inverse with a rank-one product:<br>
+ * B<sub>k+1</sub><sup>-1</sup> = (I + u * s<sup>T</sup>) * B<sub>k</sub><sup>-1</sup>,
+ * with z = B<sub>k</sub><sup>-1</sup> * y and u = (s - z) / (s<sup>T</sup> * z).<br><br>
+ * So B<sup>-1</sup> * b is a solve with the factorization of the first Jacobian B<sub>0</sub>, followed by the products of the updates,
+ * each one costs two times the size. When the rank is too big, or the update is ill-conditioned, a new Jacobian is needed.<br>
+ * All arrays are reused, so after the max rank is reached once no allocation is made.
+ */
+public final class BroydenUpdate {
+    ///The default amount of secant steps accumulated before a new Jacobian is needed.
+    public static final int DEFAULT_MAX_RANK = 16;
+    ///The smallest |s<sup>T</sup> * z| relative to |s| * |z| accepted in an update.
+    private static final double MIN_PROJECTION = 1e-10;
+
+    private final int size;
+    private final int maxRank;
+    private final double[][] u, s;
+    private int rank = 0;
+
+    public BroydenUpdate(int size, int maxRank) {
+        this.size = size;
+        this.maxRank = maxRank;
+        u = new double[maxRank][];
+        s = new double[maxRank][];
+    }
+
+    /**
+     * Correct x = B<sub>0</sub><sup>-1</sup> * b with all updates, so x = B<sup>-1</sup> * b.
+     */
+    public void correct(double[] x) {
+        for (int j = 0; j < rank; j++) {
+            final double[] uj = u[j], sj = s[j];
+            double projection = 0;
+            for (int k = 0; k < size; k++)
+                projection += sj[k] * x[k];
+            if (projection == 0)
+                continue;
+            for (int k = 0; k < size; k++)
+                x[k] += uj[k] * projection;
+        }
+    }
+
+    /**
+     * Add a secant step.
+     * @param step the step s of x.
+     * @param z the change y of f(x) in the step solved by the current inverse, z = B<sup>-1</sup> * y, see {@link BroydenUpdate#correct(double[])}.
+     * @return false if the max rank is reached, or if the step is almost orthogonal to z, so the update can't be applied.
+     */
+    public boolean update(double[] step, double[] z) {
+        if (rank == maxRank)
+            return false;
+        double projection = 0, normS = 0, normZ = 0;
+        for (int k = 0; k < size; k++) {
+            projection += step[k] * z[k];
+            normS += step[k] * step[k];
+            normZ += z[k] * z[k];
+        }
+        if (!(Math.abs(projection) > MIN_PROJECTION * Math.sqrt(normS * normZ)))
+            return false;
+
+        if (u[rank] == null) {
+            u[rank] = new double[size];
+            s[rank] = new double[size];
+        }
+        final double[] ur = u[rank], sr = s[rank];
+        for (int k = 0; k < size; k++) {
+            ur[k] = (step[k] - z[k]) / projection;
+            sr[k] = step[k];
+        }
+        rank++;
+        return true;
+    }
+
+    ///Remove all updates, used when B<sub>0</sub> is a new Jacobian.
+    public void clear() {
+        rank = 0;
+    }
+
+    ///@return the amount of secant steps accumulated.
+    public int rank() {
+        return rank;
+    }
+
+    public int getMaxRank() {
+        return maxRank;
+    }
+}
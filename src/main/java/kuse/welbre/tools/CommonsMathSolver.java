@@ -0,0 +1,85 @@
+package kuse.welbre.tools;
+
+import org.apache.commons.math4.legacy.linear.Array2DRowRealMatrix;
+import org.apache.commons.math4.legacy.linear.ArrayRealVector;
+import org.apache.commons.math4.legacy.linear.CholeskyDecomposition;
+import org.apache.commons.math4.legacy.linear.DecompositionSolver;
+import org.apache.commons.math4.legacy.linear.LUDecomposition;
+import org.apache.commons.math4.legacy.linear.QRDecomposition;
+
+/**
+ * A {@link LinearSolver} using the decompositions of commons-math.<br>
+ * Each factorization copies the matrix to a dense {@link Array2DRowRealMatrix}, and each solve allocates the result vector,
+ * so it isn't allocation free like {@link LU} and {@link SparseLU}.<br>
+ * If the {@link Decomposition#CHOLESKY Cholesky} decomposition fails, because the matrix isn't symmetric positive definite,
+ * the LU decomposition is used from that point on.
+ */
+public final class CommonsMathSolver implements LinearSolver {
+    public enum Decomposition {LU, QR, CHOLESKY}
+
+    /**
+     * The smallest pivot of a non-singular matrix, like in {@link LU} only a zero pivot is singular.<br>
+     * The default threshold of commons-math (1e-11) rejects the tiny conductances of the MNA, like a reverse biased diode.
+     */
+    private static final double SINGULARITY_THRESHOLD = Double.MIN_NORMAL;
+
+    private final int size;
+    private Decomposition decomposition;
+    private final double[][] data;
+    private DecompositionSolver solver;
+    private Matrix factored;
+
+    public CommonsMathSolver(int size, Decomposition decomposition) {
+        this.size = size;
+        this.decomposition = decomposition;
+        data = new double[size][size];
+    }
+
+    @Override
+    public void factor(Matrix matrix) {
+        if (matrix.size() != size)
+            throw new IllegalArgumentException("Matrix size (%d) is different from the solver size (%d)!".formatted(matrix.size(), size));
+        factored = null;
+        matrix.copyTo(data);
+        //the data isn't copied, the decompositions copy it when needed.
+        final Array2DRowRealMatrix m = new Array2DRowRealMatrix(data, false);
+        solver = switch (decomposition) {
+            case LU -> new LUDecomposition(m, SINGULARITY_THRESHOLD).getSolver();
+            case QR -> new QRDecomposition(m, SINGULARITY_THRESHOLD).getSolver();
+            case CHOLESKY -> {
+                try {
+                    yield new CholeskyDecomposition(m, CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD, SINGULARITY_THRESHOLD).getSolver();
+                } catch (RuntimeException notDefinite) {
+                    decomposition = Decomposition.LU;
+                    yield new LUDecomposition(m, SINGULARITY_THRESHOLD).getSolver();
+                }
+            }
+        };
+        if (!solver.isNonSingular())
+            throw new SingularMatrixException("Matrix is singular, can't be decomposed!");
+        factored = matrix;
+    }
+
+    @Override
+    public void solve(double[] rhs, double[] result) {
+        if (solver == null)
+            throw new IllegalStateException("Try solve a non factorized matrix!");
+        final double[] x = solver.solve(new ArrayRealVector(rhs, false)).toArray();
+        System.arraycopy(x, 0, result, 0, size);
+    }
+
+    @Override
+    public boolean isFactorOf(Matrix matrix) {
+        return factored == matrix;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    ///@return the decomposition in use, LU if a Cholesky decomposition failed.
+    public Decomposition getDecomposition() {
+        return decomposition;
+    }
+}
@@ -0,0 +1,97 @@
+package kuse.welbre.tools;
+
+/**
+ * A {@link Matrix} that storage all values in a double[size][size] array.
+ */
+public final class DenseMatrix implements Matrix {
+    private final double[][] data;
+
+    public DenseMatrix(int size) {
+        this(new double[size][size]);
+    }
+
+    public DenseMatrix(double[][] data) {
+        this.data = data;
+    }
+
+    ///@return the backing array, modifications in the array are reflected in this matrix.
+    public double[][] getData() {
+        return data;
+    }
+
+    @Override
+    public int size() {
+        return data.length;
+    }
+
+    @Override
+    public double get(int row, int colum) {
+        return data[row][colum];
+    }
+
+    @Override
+    public void add(int row, int colum, double value) {
+        data[row][colum] += value;
+    }
+
+    @Override
+    public void set(int row, int colum, double value) {
+        data[row][colum] = value;
+    }
+
+    ///The slot is the row in the high 16 bits and the colum in the low 16 bits, the addresses are shorts.
+    @Override
+    public int slot(int row, int colum) {
+        if (row < 0 || row >= data.length || colum < 0 || colum >= data.length)
+            throw new IndexOutOfBoundsException("Entry (%d,%d) is out of a %dx%d matrix!".formatted(row, colum, data.length, data.length));
+        return (row << 16) | colum;
+    }
+
+    @Override
+    public double getAt(int slot) {
+        return data[slot >>> 16][slot & 0xFFFF];
+    }
+
+    @Override
+    public void addAt(int slot, double value) {
+        data[slot >>> 16][slot & 0xFFFF] += value;
+    }
+
+    @Override
+    public void setAt(int slot, double value) {
+        data[slot >>> 16][slot & 0xFFFF] = value;
+    }
+
+    @Override
+    public int rowOf(int slot) {
+        return slot >>> 16;
+    }
+
+    @Override
+    public int columOf(int slot) {
+        return slot & 0xFFFF;
+    }
+
+    @Override
+    public void multiply(double[] x, double[] result) {
+        final int n = data.length;
+        for (int i = 0; i < n; i++) {
+            final double[] row = data[i];
+            double sum = 0;
+            for (int j = 0; j < n; j++)
+                sum += row[j] * x[j];
+            result[i] = sum;
+        }
+    }
+
+    @Override
+    public void copyTo(double[][] dense) {
+        for (int i = 0; i < data.length; i++)
+            System.arraycopy(data[i], 0, dense[i], 0, data.length);
+    }
+
+    @Override
+    public DenseMatrix copy() {
+        return new DenseMatrix(Tools.deepCopy(data));
+    }
+}
@@ -0,0 +1,162 @@
+package kuse.welbre.tools;
+
+/**
+ * The restarted generalized minimal residual method, GMRES(m), with right preconditioning.<br>
+ * Solves A * x = b only with products A * v, so A doesn't need to be a matrix, like the finite difference of a function.
+ * The preconditioner M ≈ A solves A * M<sup>-1</sup> * y = b, and x = M<sup>-1</sup> * y, so the residual minimized is the one of A.<br><br>
+ * The memory is the m + 1 Krylov vectors and the (m + 1) * m Hessenberg matrix, all reused between solves.
+ */
+public final class GMRES {
+    ///A linear operator, the product of a matrix with a vector.
+    @FunctionalInterface
+    public interface Operator {
+        ///result = A * v, the result isn't the v array.
+        void apply(double[] v, double[] result);
+    }
+
+    ///The default amount of Krylov vectors before a restart.
+    public static final int DEFAULT_RESTART = 30;
+
+    private final int size, restart;
+    ///The orthonormal base of the Krylov space.
+    private final double[][] v;
+    ///The Hessenberg matrix, rotated to an upper triangle.
+    private final double[][] h;
+    //the Givens rotations, and the rotated residual.
+    private final double[] cs, sn, g, y;
+    //work arrays
+    private final double[] w, z;
+    private int iterations = 0;
+
+    public GMRES(int size, int restart) {
+        this.size = size;
+        this.restart = restart;
+        v = new double[restart + 1][size];
+        h = new double[restart + 1][restart];
+        cs = new double[restart];
+        sn = new double[restart];
+        g = new double[restart + 1];
+        y = new double[restart];
+        w = new double[size];
+        z = new double[size];
+    }
+
+    /**
+     * Solve A * x = b from x = 0.
+     * @param preconditioner solves M * result = rhs, M must be close to A.
+     * @param tolerance the residual relative to b, ||b - A * x|| &lt;= tolerance * ||b||.
+     * @param maxIterations the max amount of products with A.
+     * @return true if converged, otherwise x is the best solution found.
+     */
+    public boolean solve(Operator a, LowRankUpdate.Solver preconditioner, double[] b, double[] x, double tolerance, int maxIterations) {
+        iterations = 0;
+        final double normB = Tools.norm(b);
+        for (int k = 0; k < size; k++)
+            x[k] = 0;
+        if (normB == 0)
+            return true;
+        final double target = tolerance * normB;
+
+        boolean first = true;
+        while (true) {
+            //r = b - A * x, in v[0].
+            final double[] r = v[0];
+            if (first) {
+                System.arraycopy(b, 0, r, 0, size);
+                first = false;
+            } else {
+                a.apply(x, w);
+                iterations++;
+                for (int k = 0; k < size; k++)
+                    r[k] = b[k] - w[k];
+            }
+            final double beta = Tools.norm(r);
+            if (beta <= target)
+                return true;
+            if (iterations >= maxIterations)
+                return false;
+            for (int k = 0; k < size; k++)
+                r[k] /= beta;
+            g[0] = beta;
+
+            int j = 0;
+            boolean converged = false;
+            while (j < restart && iterations < maxIterations) {
+                preconditioner.solve(v[j], z);
+                a.apply(z, w);
+                iterations++;
+
+                //modified Gram-Schmidt.
+                for (int i = 0; i <= j; i++) {
+                    final double[] vi = v[i];
+                    double dot = 0;
+                    for (int k = 0; k < size; k++)
+                        dot += w[k] * vi[k];
+                    h[i][j] = dot;
+                    for (int k = 0; k < size; k++)
+                        w[k] -= dot * vi[k];
+                }
+                final double normW = Tools.norm(w);
+                h[j + 1][j] = normW;
+                if (normW != 0) {
+                    final double[] next = v[j + 1];
+                    for (int k = 0; k < size; k++)
+                        next[k] = w[k] / normW;
+                }
+
+                //rotate the new colum with the old rotations, and eliminate h[j + 1][j].
+                for (int i = 0; i < j; i++) {
+                    final double t = cs[i] * h[i][j] + sn[i] * h[i + 1][j];
+                    h[i + 1][j] = -sn[i] * h[i][j] + cs[i] * h[i + 1][j];
+                    h[i][j] = t;
+                }
+                final double d = Math.hypot(h[j][j], h[j + 1][j]);
+                cs[j] = d == 0 ? 1 : h[j][j] / d;
+                sn[j] = d == 0 ? 0 : h[j + 1][j] / d;
+                h[j][j] = d;
+                h[j + 1][j] = 0;
+                g[j + 1] = -sn[j] * g[j];
+                g[j] = cs[j] * g[j];
+
+                j++;
+                if (Math.abs(g[j]) <= target || normW == 0) {
+                    converged = true;
+                    break;
+                }
+            }
+
+            //y = H^-1 * g, and x += M^-1 * V * y.
+            for (int i = j - 1; i >= 0; i--) {
+                double sum = g[i];
+                for (int k = i + 1; k < j; k++)
+                    sum -= h[i][k] * y[k];
+                y[i] = h[i][i] == 0 ? 0 : sum / h[i][i];
+            }
+            for (int k = 0; k < size; k++)
+                w[k] = 0;
+            for (int i = 0; i < j; i++) {
+                final double[] vi = v[i];
+                final double yi = y[i];
+                for (int k = 0; k < size; k++)
+                    w[k] += yi * vi[k];
+            }
+            preconditioner.solve(w, z);
+            for (int k = 0; k < size; k++)
+                x[k] += z[k];
+
+            if (converged)
+                return true;
+            if (iterations >= maxIterations)
+                return false;
+        }
+    }
+
+    ///@return the products with A of the last solve.
+    public int getIterations() {
+        return iterations;
+    }
+
+    public int getRestart() {
+        return restart;
+    }
+}
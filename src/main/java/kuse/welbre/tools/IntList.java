@@ -0,0 +1,51 @@
+package kuse.welbre.tools;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive int, used to track indexes in the tick without boxing.<br>
+ * {@link IntList#clear()} keeps the capacity, so after the first ticks no allocation is made.
+ */
+public final class IntList {
+    private int[] values;
+    private int size = 0;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, values.length * 2);
+        values[size++] = value;
+    }
+
+    public void add(int a, int b) {
+        if (size + 1 >= values.length)
+            values = Arrays.copyOf(values, values.length * 2 + 2);
+        values[size++] = a;
+        values[size++] = b;
+    }
+
+    public int get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index %d out of bounds for length %d".formatted(index, size));
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
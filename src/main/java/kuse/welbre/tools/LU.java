@@ -4,25 +4,75 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-public final class LU {
+public final class LU implements LinearSolver {
     public final double[][] lu;//storage the lower triangle and the up triangle in one matrix.
     public final int[] swaps;
+    private final double[] work;
+    ///The last matrix factorized by {@link LU#factor(Matrix)}.
+    private Matrix factored;
 
     private LU(double[][] lu, int[] swaps) {
         this.lu = lu;
         this.swaps = swaps;
+        this.work = new double[lu.length];
     }
 
+    /**
+     * Create a LU with a preallocated storage, used by {@link LU#refactor(double[][])} to decompose without allocations.
+     */
+    public LU(int size) {
+        this(new double[size][size], new int[size]);
+    }
 
     /**
      * Decompose a matrix to a lu instance.
      * @implNote The first param is modified in the process.
      */
     public static LU decompose(double[][] lu){
+        final int[] swaps = new int[lu.length];
+        decompose(lu, swaps);
+        return new LU(lu, swaps);
+    }
+
+    /**
+     * Decompose a matrix in the storage of this instance, the matrix isn't modified.
+     * @return this
+     */
+    public LU refactor(double[][] matrix){
+        factored = null;
+        for (int i = 0; i < lu.length; i++)
+            System.arraycopy(matrix[i], 0, lu[i], 0, lu.length);
+        decompose(lu, swaps);
+        return this;
+    }
+
+    /**
+     * Decompose a matrix in the storage of this instance, the matrix isn't modified.
+     */
+    @Override
+    public void factor(Matrix matrix){
+        if (matrix.size() != lu.length)
+            throw new IllegalArgumentException("Matrix size (%d) is different from the LU size (%d)!".formatted(matrix.size(), lu.length));
+        factored = null;
+        matrix.copyTo(lu);
+        decompose(lu, swaps);
+        factored = matrix;
+    }
+
+    @Override
+    public boolean isFactorOf(Matrix matrix) {
+        return factored == matrix;
+    }
+
+    @Override
+    public int size() {
+        return lu.length;
+    }
+
+    private static void decompose(double[][] lu, int[] swaps){
         final int length = lu.length;
 
-        final int[] swaps = new int[lu.length];//start swaps
-        for (int i = 0; i < swaps.length; i++)
+        for (int i = 0; i < swaps.length; i++)//start swaps
             swaps[i] = i ;
 
         for (int k = 0; k < length; k++) {//p_idx
@@ -37,7 +87,7 @@ public final class LU {
                     }
                 }
                 if (b_pivot == 0)
-                    throw new IllegalStateException("Matrix is singular, can be decomposed!");
+                    throw new SingularMatrixException("Matrix is singular, can be decomposed!");
                 if (biggest_row != k) { //needs swap
                     swap(lu,swaps, k,biggest_row);
                 }
@@ -54,8 +104,6 @@ public final class LU {
                 }
             }
         }
-
-        return new LU(lu, swaps);
     }
 
     private static <T> void swap(T[] a,int[] swaps, int row0, int row1){
@@ -68,9 +116,19 @@ public final class LU {
     }
 
     public double[] solve(double[] rhs){
-        int size = this.lu.length;
+        double[] r = new double[lu.length];
+        solve(rhs, r);
+        return r;
+    }
 
-        double[] r = new double[size];
+    /**
+     * Solve LU * result = rhs, without allocations.
+     * @implNote result and rhs can be the same array.
+     */
+    @Override
+    public void solve(double[] rhs, double[] result){
+        final int size = this.lu.length;
+        final double[] r = work;
 
         //Solve LY = rhs to find y
         for (int row = 0; row < size; row++) {
@@ -88,7 +146,7 @@ public final class LU {
             r[row] = (r[row] - summation) / this.lu[row][row];
         }
 
-        return r;
+        System.arraycopy(r, 0, result, 0, size);
     }
 
     @Override
@@ -0,0 +1,95 @@
+package kuse.welbre.tools;
+
+/**
+ * A factorization of the LHS {@link Matrix}, used to solve LHS * x = b many times with the same matrix.<br>
+ * The factorization is split like the circuit matrix changes:
+ * <ul>
+ *     <li>{@link LinearSolver#factor(Matrix) factor}: the first factorization, with all analysis of the matrix.</li>
+ *     <li>{@link LinearSolver#refactor(Matrix) refactor}: a new factorization of a matrix with the same pattern, like the LHS in the next tick,
+ *     that can reuse the analysis.</li>
+ * </ul>
+ * The implementations are chosen by a {@link Backend}.
+ */
+public interface LinearSolver {
+    /**
+     * The available solvers.<br>
+     * {@link Backend#AUTO AUTO} chooses from the matrix density, see {@link Backend#select(Matrix)}.
+     * The commons-math backends are only used when chosen, because each solve allocates.
+     */
+    enum Backend {
+        AUTO,
+        ///The dense {@link LU} decomposition, reuses its storage so doesn't allocate.
+        DENSE_LU,
+        ///The {@link SparseLU}, only works with a {@link SparseMatrix}.
+        SPARSE_LU,
+        ///The LU decomposition of commons-math, see {@link CommonsMathSolver}.
+        COMMONS_LU,
+        ///The QR decomposition of commons-math, slower but more stable than LU.
+        COMMONS_QR,
+        ///The Cholesky decomposition of commons-math, half of the LU cost, but only for symmetric positive definite matrices.
+        COMMONS_CHOLESKY;
+
+        ///A sparse matrix with more non-zero values than this fraction is factorized as a dense matrix.
+        public static final double SPARSE_DENSITY = 0.1;
+
+        /**
+         * Find the best allocation free solver to the matrix, a {@link SparseMatrix} with density less than {@link Backend#SPARSE_DENSITY}
+         * uses {@link Backend#SPARSE_LU SPARSE_LU}, otherwise {@link Backend#DENSE_LU DENSE_LU}.<br>
+         * Any other backend returns itself.
+         */
+        public Backend select(Matrix matrix) {
+            if (this != AUTO)
+                return this;
+            if (matrix instanceof SparseMatrix sparse && sparse.getDensity() < SPARSE_DENSITY)
+                return SPARSE_LU;
+            return DENSE_LU;
+        }
+
+        ///@return a new solver to the matrix, the matrix isn't factorized.
+        public LinearSolver create(Matrix matrix) {
+            final int size = matrix.size();
+            return switch (select(matrix)) {
+                case DENSE_LU -> new LU(size);
+                case SPARSE_LU -> {
+                    if (!(matrix instanceof SparseMatrix))
+                        throw new IllegalArgumentException("Sparse LU needs a sparse matrix storage!");
+                    yield new SparseLU(size);
+                }
+                case COMMONS_LU -> new CommonsMathSolver(size, CommonsMathSolver.Decomposition.LU);
+                case COMMONS_QR -> new CommonsMathSolver(size, CommonsMathSolver.Decomposition.QR);
+                case COMMONS_CHOLESKY -> new CommonsMathSolver(size, CommonsMathSolver.Decomposition.CHOLESKY);
+                case AUTO -> throw new IllegalStateException("AUTO must be selected!");
+            };
+        }
+    }
+
+    /**
+     * Factorize the matrix, with all analysis needed.
+     * @throws SingularMatrixException if the matrix is singular.
+     */
+    void factor(Matrix matrix);
+
+    /**
+     * Factorize a matrix with the same pattern of the last {@link LinearSolver#factor(Matrix) factor}, reusing the analysis if possible.
+     * @throws SingularMatrixException if the matrix is singular.
+     */
+    default void refactor(Matrix matrix) {
+        factor(matrix);
+    }
+
+    /**
+     * Solve matrix * result = rhs, using the last factorization.
+     * @implNote result and rhs can be the same array.
+     */
+    void solve(double[] rhs, double[] result);
+
+    ///Solve matrix * x = b, writing x in b.
+    default void solveInPlace(double[] b) {
+        solve(b, b);
+    }
+
+    ///@return true if the last factorization was of this matrix, the values may have changed since.
+    boolean isFactorOf(Matrix matrix);
+
+    int size();
+}
@@ -0,0 +1,175 @@
+package kuse.welbre.tools;
+
+/**
+ * Solves a matrix modified by a few conductances, A = A0 + U * D * U<sup>T</sup>, reusing the factorization of A0.<br>
+ * Each colum of U is a conductance between two rows (e<sub>a</sub> - e<sub>b</sub>), and D is the diagonal with the conductance values.
+ * The Sherman-Morrison-Woodbury formula gives:<br>
+ * x = x0 - W * C<sup>-1</sup> * D * U<sup>T</sup> * x0, with x0 = A0<sup>-1</sup> * b, W = A0<sup>-1</sup> * U and C = I + D * U<sup>T</sup> * W.<br><br>
+ * So each new conductance costs one solve in A0, and each solve costs one solve in A0 plus the rank times the size.
+ * When the rank is too big a new factorization is cheaper.<br>
+ * All work arrays are allocated in the constructor, so an update or a solve doesn't allocate.
+ */
+public final class LowRankUpdate {
+    ///Solves the original matrix A0.
+    @FunctionalInterface
+    public interface Solver {
+        ///Solve A0 * result = rhs.
+        void solve(double[] rhs, double[] result);
+    }
+
+    ///The default amount of conductances accumulated before a full factorization is needed.
+    public static final int DEFAULT_MAX_RANK = 8;
+
+    private final int size;
+    private final int maxRank;
+    private final Solver base;
+
+    //The U colums, -1 is the ground.
+    private final int[] rowA, rowB;
+    private final double[] delta;
+    ///W = A0^-1 * U, each array is a colum.
+    private final double[][] w;
+    private int rank = 0;
+
+    //C matrix and its decomposition to each rank.
+    private final double[][][] c;
+    private final LU[] capacitance;
+
+    //work arrays
+    private final double[] u, y, z;
+
+    /**
+     * @param base solves the matrix A0.
+     */
+    public LowRankUpdate(int size, int maxRank, Solver base) {
+        this.size = size;
+        this.maxRank = maxRank;
+        this.base = base;
+        rowA = new int[maxRank];
+        rowB = new int[maxRank];
+        delta = new double[maxRank];
+        w = new double[maxRank][size];
+        c = new double[maxRank + 1][][];
+        capacitance = new LU[maxRank + 1];
+        for (int r = 1; r <= maxRank; r++) {
+            c[r] = new double[r][r];
+            capacitance[r] = new LU(r);
+        }
+        u = new double[size];
+        y = new double[maxRank];
+        z = new double[maxRank];
+    }
+
+    /**
+     * Add a conductance between the rows a and b, a conductance between the same rows is accumulated.
+     * @param a the first row, or -1 if it is the ground.
+     * @param b the second row, or -1 if it is the ground.
+     * @return false if the max rank is reached, so the update can't be applied.
+     */
+    public boolean update(int a, int b, double conductance) {
+        if (a < b) {
+            final int t = a;
+            a = b;
+            b = t;
+        }
+        if (a < 0 || conductance == 0)
+            return true;
+
+        int i = 0;
+        while (i < rank && (rowA[i] != a || rowB[i] != b))
+            i++;
+
+        if (i < rank) {
+            delta[i] += conductance;
+            if (delta[i] == 0)//returns to the original value.
+                remove(i);
+        } else {
+            if (rank == maxRank)
+                return false;
+            u[a] = 1;
+            if (b >= 0)
+                u[b] = -1;
+            rowA[rank] = a;
+            rowB[rank] = b;
+            delta[rank] = conductance;
+            base.solve(u, w[rank++]);
+            u[a] = 0;
+            if (b >= 0)
+                u[b] = 0;
+        }
+        decompose();
+        return true;
+    }
+
+    private void remove(int i) {
+        rank--;
+        rowA[i] = rowA[rank];
+        rowB[i] = rowB[rank];
+        delta[i] = delta[rank];
+        //swap to keep the array to reuse.
+        final double[] t = w[i];
+        w[i] = w[rank];
+        w[rank] = t;
+    }
+
+    ///Remove all conductances, used when A0 is factorized again with the conductances.
+    public void clear() {
+        rank = 0;
+    }
+
+    ///u^T * v
+    private double project(int i, double[] v) {
+        return rowB[i] < 0 ? v[rowA[i]] : v[rowA[i]] - v[rowB[i]];
+    }
+
+    private void decompose() {
+        if (rank == 0)
+            return;
+        final double[][] m = c[rank];
+        for (int i = 0; i < rank; i++) {
+            for (int j = 0; j < rank; j++)
+                m[i][j] = delta[i] * project(i, w[j]);
+            m[i][i] += 1;
+        }
+        capacitance[rank].refactor(m);
+    }
+
+    /**
+     * Solve A * x = b.
+     * @implNote x and b can be the same array if the base solver accepts it.
+     */
+    public void solve(double[] b, double[] x) {
+        base.solve(b, x);
+        if (rank == 0)
+            return;
+
+        for (int i = 0; i < rank; i++)
+            y[i] = delta[i] * project(i, x);
+        capacitance[rank].solve(y, z);
+        for (int i = 0; i < rank; i++) {
+            final double zi = z[i];
+            final double[] wi = w[i];
+            for (int k = 0; k < size; k++)
+                x[k] -= wi[k] * zi;
+        }
+    }
+
+    /**
+     * Solve A * x = b.
+     * @return x
+     */
+    public double[] solve(double[] b) {
+        double[] x = new double[size];
+        solve(b, x);
+        return x;
+    }
+
+    ///@return the amount of conductances accumulated.
+    public int rank() {
+        return rank;
+    }
+
+    public int getMaxRank() {
+        return maxRank;
+    }
+}
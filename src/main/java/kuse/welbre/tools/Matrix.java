@@ -0,0 +1,100 @@
+package kuse.welbre.tools;
+
+/**
+ * A square matrix used as left-hand side (LHS) of the circuit equation system.<br>
+ * The stamp process only needs to add or set values in a row and colum, so the storage can be
+ * {@link DenseMatrix dense} or {@link SparseMatrix sparse} without the stamp API knowing it.
+ */
+public interface Matrix {
+    /**
+     * The storage used in a {@link StaticBuilder}.<br>
+     * {@link Storage#AUTO AUTO} uses a {@link SparseMatrix} when the matrix size is equal or bigger than {@link Storage#SPARSE_THRESHOLD},
+     * otherwise a {@link DenseMatrix}.
+     */
+    enum Storage {
+        AUTO, DENSE, SPARSE;
+
+        ///Matrices bigger than this value are mostly zeros in a circuit, so the sparse storage is used.
+        public static final int SPARSE_THRESHOLD = 128;
+
+        public boolean isSparse(int size){
+            return this == SPARSE || (this == AUTO && size >= SPARSE_THRESHOLD);
+        }
+
+        public Matrix create(int size){
+            return isSparse(size) ? new SparseMatrix(size) : new DenseMatrix(size);
+        }
+    }
+
+    /**
+     * The order of the unknowns (node voltages and branch currents) in the matrix.<br>
+     * The LU decomposition of a sparse matrix creates new non-zero values (fill-in), and the amount depends on the order of the rows.<br>
+     * {@link Ordering#AUTO AUTO} uses {@link Ordering#MINIMUM_DEGREE MINIMUM_DEGREE} with a sparse storage,
+     * and keeps the natural order in a dense matrix, where the fill-in doesn't change the cost.
+     */
+    enum Ordering {
+        AUTO,
+        ///The nodes in the order they are found, followed by the branch currents.
+        NATURAL,
+        ///The {@link MinimumDegree minimum degree} heuristic.
+        MINIMUM_DEGREE;
+
+        /**
+         * @param graph the neighbors of each unknown in the natural order.
+         * @param sparse if the matrix uses a sparse storage.
+         * @return the new order, order[k] is the unknown placed in the row k.
+         */
+        public int[] order(int[][] graph, boolean sparse) {
+            if (this == MINIMUM_DEGREE || (this == AUTO && sparse))
+                return MinimumDegree.order(graph);
+            int[] order = new int[graph.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            return order;
+        }
+    }
+
+    ///@return the number of rows (and columns) of the matrix.
+    int size();
+
+    double get(int row, int colum);
+
+    void add(int row, int colum, double value);
+
+    void set(int row, int colum, double value);
+
+    /**
+     * Register the entry (row, colum), so it can be accessed by the slot without searching it.<br>
+     * The slot of an entry never changes, and is the same in a {@link Matrix#copy() copy}.
+     * @return the slot of the entry.
+     */
+    int slot(int row, int colum);
+
+    double getAt(int slot);
+
+    void addAt(int slot, double value);
+
+    void setAt(int slot, double value);
+
+    ///@return the row of the slot.
+    int rowOf(int slot);
+
+    ///@return the colum of the slot.
+    int columOf(int slot);
+
+    ///Compute result = this * x.
+    void multiply(double[] x, double[] result);
+
+    ///Write all values in a dense array with the same size.
+    void copyTo(double[][] dense);
+
+    ///@return a deep copy of this matrix.
+    Matrix copy();
+
+    ///@return a new dense array with the values of this matrix.
+    default double[][] toArray() {
+        double[][] dense = new double[size()][size()];
+        copyTo(dense);
+        return dense;
+    }
+}
@@ -3,24 +3,68 @@ package kuse.welbre.tools;
 import kuse.welbre.sim.electrical.CircuitAnalyser;
 import kuse.welbre.sim.electrical.Circuit.Pin;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * A {@link StaticBuilder} that after the {@link MatrixBuilder#close() close} accepts modifications over the static values,
+ * that are undone by {@link MatrixBuilder#clear()}.<br>
+ * The modified indexes are tracked in primitive lists, and the factorization, solution and lock arrays are reused,
+ * so a tick in a closed builder doesn't allocate.
+ */
 public class MatrixBuilder extends StaticBuilder {
-    private final List<int[]> lhs_pairs = new ArrayList<>();
-    private final List<Integer> rhs_pairs = new ArrayList<>();
-    private final List<Integer> rhs_lock_pairs = new ArrayList<>();
-    private double[][] lhs_overlap;
+    ///A {@link MatrixBuilder#shortConductance(Pin, Pin) short} is this factor bigger than the conductances connected to its pins,
+    ///and an {@link MatrixBuilder#openConductance(Pin, Pin) open} this factor smaller.
+    ///The operating point corrects the error of the ratio, so it only trades the corrections of each solve with the conditioning.
+    public static final double SHORT_RATIO = 1e3;
+
+    ///The modified LHS entries, as (row, colum) pairs.
+    private final IntList lhs_pairs = new IntList();
+    ///The modified LHS slots.
+    private final IntList lhs_slots = new IntList();
+    private final IntList rhs_pairs = new IntList();
+    private final IntList rhs_lock_pairs = new IntList();
+    private Matrix lhs_overlap;
 
     private double[] rhs_overlap;
     private double[] rhs_lock;
     private final double[] rhs_static;
-    protected LU lu;
+    ///The factorization of the LHS with the modifications, shared with other builders of the same circuit.
+    protected LinearSolver solver;
+    private LinearSolver.Backend backend = LinearSolver.Backend.AUTO;
+    ///Conductances changed after the factorization, see {@link MatrixBuilder#updateConductance(Pin, Pin, double)}.
+    private LowRankUpdate lowRank;
+    private int maxUpdateRank = LowRankUpdate.DEFAULT_MAX_RANK;
+    private int factorizations = 0;
+    private int lowRankUpdates = 0;
+    ///The rows that can change after the close, see {@link MatrixBuilder#setCondensation(boolean[])}.
+    private boolean[] activeRows;
+    private SchurComplement schur;
+
+    ///The static LHS before the temporary changes, see {@link MatrixBuilder#save()}, and the entries changed since.
+    private Matrix saved;
+    private final IntList saved_pairs = new IntList();
+    ///The factorizations when saved, -1 if the factorization can't be kept in the restore.
+    private int savedFactorizations;
+
+    ///The solution of the static RHS, and of a unit in each modified row of the RHS, see {@link MatrixBuilder#setResponse(boolean)}.
+    private double[] response_base;
+    private double[][] responses;
+    ///The version of the LHS of each solution, the base and each colum are solved again when it changes.
+    private int[] response_versions;
+    private int responseVersion = 1, baseVersion = 0;
+    ///The rows already applied in a response, and a unit vector.
+    private boolean[] responded;
+    private double[] unit;
+    private boolean isResponding = false;
 
     private boolean isLocked = false;
+    ///If the factorization of the LHS with the modifications is updated.
+    private boolean isFactored = false;
 
     public MatrixBuilder(CircuitAnalyser analyser) {
-        super(analyser);
+        this(analyser, Matrix.Storage.AUTO);
+    }
+
+    public MatrixBuilder(CircuitAnalyser analyser, Matrix.Storage storage) {
+        super(analyser, storage);
         rhs_static = new double[analyser.matrixSize];
     }
 
@@ -30,68 +74,220 @@ public class MatrixBuilder extends StaticBuilder {
     }
 
     public void stampCurrentSource(Pin a, Pin b, double current){
+        stampCurrentSource(address(a), address(b), current);
+    }
+
+    ///Stamp a current source from the row a to the row b, -1 is the ground.
+    public void stampCurrentSource(int a, int b, double current){
         if (isClosed) {
-            if (a != null) {
+            if (a >= 0) {
                 if (isLocked) {
-                    rhs_lock[a.address] += current;
-                    rhs_lock_pairs.add((int) a.address);
+                    rhs_lock[a] += current;
+                    rhs_lock_pairs.add(a);
                 }
                 else {
-                    rhs_overlap[a.address] += current;
-                    rhs_pairs.add((int) a.address);
+                    rhs_overlap[a] += current;
+                    rhs_pairs.add(a);
                 }
             }
-            if (b != null) {
+            if (b >= 0) {
                 if (isLocked) {
-                    rhs_lock[b.address] -= current;
-                    rhs_lock_pairs.add((int) b.address);
+                    rhs_lock[b] -= current;
+                    rhs_lock_pairs.add(b);
                 }
                 else {
-                    rhs_overlap[b.address] -= current;
-                    rhs_pairs.add((int) b.address);
+                    rhs_overlap[b] -= current;
+                    rhs_pairs.add(b);
                 }
             }
         }
         else {
-            if (a != null)
-                rhs_static[a.address] += current;
-            if (b != null)
-                rhs_static[b.address] -= current;
+            if (a >= 0)
+                rhs_static[a] += current;
+            if (b >= 0)
+                rhs_static[b] -= current;
         }
     }
 
     @Override
     public void stampLHS(int row, int colum, double value) {
         if (isClosed) {
-            lhs_overlap[row][colum] += value;
-            lhs_pairs.add(new int[]{row,colum});
+            touch(row, colum);
+            lhs_overlap.add(row, colum, value);
+            lhs_pairs.add(row, colum);
+            isFactored = false;
         } else
             super.stampLHS(row, colum, value);
     }
 
+    @Override
+    public void stampSlot(int slot, double value) {
+        if (isClosed) {
+            if (slot < 0)
+                return;
+            if (schur != null)
+                touch(lhs.rowOf(slot), lhs.columOf(slot));
+            lhs_overlap.addAt(slot, value);
+            lhs_slots.add(slot);
+            isFactored = false;
+        } else
+            super.stampSlot(slot, value);
+    }
+
     @Override
     public void stampConductance(Pin a, Pin b, double conductance) {
         if (isClosed)
         {
+            touch(address(a), address(b));
+            isFactored = false;
             if (a != null) {
-                lhs_overlap[a.address][a.address] += conductance;
-                lhs_pairs.add(new int[]{a.address, a.address});
+                lhs_overlap.add(a.address, a.address, conductance);
+                lhs_pairs.add(a.address, a.address);
                 if (b != null) {
-                    lhs_overlap[a.address][b.address] -= conductance;
-                    lhs_overlap[b.address][a.address] -= conductance;
-                    lhs_pairs.add(new int[]{a.address, b.address});
-                    lhs_pairs.add(new int[]{b.address, a.address});
+                    lhs_overlap.add(a.address, b.address, -conductance);
+                    lhs_overlap.add(b.address, a.address, -conductance);
+                    lhs_pairs.add(a.address, b.address);
+                    lhs_pairs.add(b.address, a.address);
                 }
             }
             if (b != null) {
-                lhs_overlap[b.address][b.address] += conductance;
-                lhs_pairs.add(new int[]{b.address, b.address});
+                lhs_overlap.add(b.address, b.address, conductance);
+                lhs_pairs.add(b.address, b.address);
             }
         }
         else
             super.stampConductance(a, b, conductance);
     }
 
+    /**
+     * Add a conductance between two pins in the static LHS of a closed builder, like a switch that changes the state.<br>
+     * Instead of a new factorization, the current one is updated by a {@link LowRankUpdate low-rank update},
+     * until {@link MatrixBuilder#setMaxUpdateRank(int) max rank} conductances are accumulated.
+     */
+    public void updateConductance(Pin a, Pin b, double conductance) {
+        updateConductance(address(a), address(b), conductance);
+    }
+
+    ///Add a conductance between the rows a and b, -1 is the ground, see {@link MatrixBuilder#updateConductance(Pin, Pin, double)}.
+    public void updateConductance(int a, int b, double conductance) {
+        if (!isClosed) {
+            addConductance(lhs, a, b, conductance);
+            return;
+        }
+
+        //the change is permanent, so it goes to the static LHS and the overlap.
+        touch(a, b);
+        responseVersion++;
+        if (saved != null)
+            savePair(a, b);
+        addConductance(lhs, a, b, conductance);
+        addConductance(lhs_overlap, a, b, conductance);
+
+        if (schur != null) {//the Schur complement is small, so a new factorization is cheap.
+            isFactored = false;
+            return;
+        }
+
+        if (isFactorValid() && lowRank != null) {
+            if (lowRank.update(a, b, conductance)) {
+                lowRankUpdates++;
+                return;
+            }
+        }
+        isFactored = false;
+    }
+
+    /**
+     * Save the static LHS, so the {@link MatrixBuilder#updateConductance(Pin, Pin, double) conductance updates} until the
+     * {@link MatrixBuilder#restore() restore} are temporary, like the model of the operating point.
+     */
+    public void save() {
+        if (!isClosed)
+            throw new IllegalStateException("Try save a non closed matrix builder!");
+        saved = lhs.copy();
+        saved_pairs.clear();
+        savedFactorizations = isFactorValid() && (lowRank == null || lowRank.rank() == 0) ? factorizations : -1;
+    }
+
+    /**
+     * Restore the static LHS of the {@link MatrixBuilder#save() save}, exactly, without the rounding of the opposite updates.<br>
+     * If the temporary conductances were only low-rank updates, the factorization is the one of the restored LHS, so it is kept.
+     * The overlap must be {@link MatrixBuilder#clear() clear}.
+     */
+    public void restore() {
+        if (saved == null)
+            return;
+        for (int i = 0; i < saved_pairs.size(); i += 2) {
+            final int row = saved_pairs.get(i), colum = saved_pairs.get(i + 1);
+            final double value = saved.get(row, colum);
+            lhs.set(row, colum, value);
+            lhs_overlap.set(row, colum, value);
+        }
+        if (!saved_pairs.isEmpty()) {
+            responseVersion++;
+            isFactored = isFactorValid() && factorizations == savedFactorizations;
+            if (isFactored && lowRank != null)
+                lowRank.clear();
+        }
+        saved = null;
+        saved_pairs.clear();
+    }
+
+    private void savePair(int a, int b) {
+        if (a >= 0)
+            saved_pairs.add(a, a);
+        if (b >= 0)
+            saved_pairs.add(b, b);
+        if (a >= 0 && b >= 0) {
+            saved_pairs.add(a, b);
+            saved_pairs.add(b, a);
+        }
+    }
+
+    /**
+     * A conductance that shorts two pins, {@link MatrixBuilder#SHORT_RATIO} times the biggest diagonal of their rows in the static LHS.
+     * So it is a short to the circuit around the pins, without a huge conductance that ruins the conditioning of the matrix.
+     * The short has a relative error of 1 / {@link MatrixBuilder#SHORT_RATIO}, to an exact short the current of this conductance must be moved to a source and solved again.
+     */
+    public double shortConductance(Pin a, Pin b) {
+        return SHORT_RATIO * diagonal(a, b);
+    }
+
+    ///A conductance that opens two pins, the biggest diagonal of their rows in the static LHS over the {@link MatrixBuilder#SHORT_RATIO}.
+    ///As the {@link MatrixBuilder#shortConductance(Pin, Pin) short}, it has a relative error of 1 / {@link MatrixBuilder#SHORT_RATIO}.
+    public double openConductance(Pin a, Pin b) {
+        return diagonal(a, b) / SHORT_RATIO;
+    }
+
+    private double diagonal(Pin a, Pin b) {
+        double diagonal = 0;
+        if (a != null)
+            diagonal = Math.abs(lhs.get(a.address, a.address));
+        if (b != null)
+            diagonal = Math.max(diagonal, Math.abs(lhs.get(b.address, b.address)));
+        return diagonal > 0 ? diagonal : 1;
+    }
+
+    ///Disable the condensation if a modification is outside the active rows.
+    private void touch(int row, int colum) {
+        if (schur != null && !(schur.isActive(row) && schur.isActive(colum))) {
+            schur = null;
+            isFactored = false;
+        }
+    }
+
+    private static void addConductance(Matrix m, int a, int b, double conductance) {
+        if (a >= 0) {
+            m.add(a, a, conductance);
+            if (b >= 0) {
+                m.add(a, b, -conductance);
+                m.add(b, a, -conductance);
+            }
+        }
+        if (b >= 0)
+            m.add(b, b, conductance);
+    }
+
     public void stampRHS(int idx, double value){
         if (isClosed) {
             if (isLocked) {
@@ -109,29 +305,251 @@ public class MatrixBuilder extends StaticBuilder {
     @Override
     public void close() {
         super.close();
-        lhs_overlap = Tools.deepCopy(lhs);
+        lhs_overlap = lhs.copy();
         rhs_overlap = Tools.deepCopy(rhs_static);
+        rhs_lock = new double[rhs_static.length];
+        createLowRank();
+        isFactored = false;
         clear();
+        if (activeRows != null) {
+            try {
+                schur = new SchurComplement(lhs, activeRows, backend);
+            } catch (SingularMatrixException singular) {
+                schur = null;//the static rows alone are singular, so the full matrix is used.
+            }
+        }
+    }
+
+    ///Allocate the low-rank update of a closed builder once, so an update in a tick doesn't allocate.
+    private void createLowRank() {
+        lowRank = isClosed && maxUpdateRank > 0 ? new LowRankUpdate(lhs.size(), maxUpdateRank, this::baseSolve) : null;
     }
 
     /**
-     * @return The equation system result, using {@link LU}.
+     * Eliminate the static rows once in the {@link MatrixBuilder#close() close}, so the factorizations and solves use
+     * the {@link SchurComplement Schur complement} over the active rows.<br>
+     * Only the active rows can be modified after the close, a modification outside them disables the condensation.
+     * @param activeRows the rows that can change after the close, or null to disable the condensation.
      */
-    public double[] getResult(){
+    public void setCondensation(boolean[] activeRows) {
+        if (isClosed)
+            throw new IllegalStateException("The condensation must be defined before the close!");
+        if (activeRows != null && activeRows.length != lhs.size())
+            throw new IllegalArgumentException("Active rows length (%d) is different from the matrix size (%d)!".formatted(activeRows.length, lhs.size()));
+        this.activeRows = activeRows;
+    }
+
+    ///@return true if the solves use the Schur complement of the active rows.
+    public boolean isCondensed() {
+        return schur != null;
+    }
+
+    ///@return the Schur complement used in the solves, or null if isn't condensed.
+    public SchurComplement getSchurComplement() {
+        return schur;
+    }
+
+    /**
+     * Use a {@link LinearSolver} shared with other builders, so the analysis is reused if the pattern is the same,
+     * like the symbolic analysis of a {@link SparseLU}.
+     */
+    public void setSolver(LinearSolver solver) {
+        this.solver = solver;
+        isFactored = false;
+        responseVersion++;
+    }
+
+    ///@return the solver, or null if the LHS wasn't factorized yet.
+    public LinearSolver getSolver() {
+        return solver;
+    }
+
+    ///@return the solver if it is a {@link SparseLU}, otherwise null.
+    public SparseLU getSparseLU() {
+        return solver instanceof SparseLU sparse ? sparse : null;
+    }
+
+    /**
+     * Defines the backend used to create the solver in the first factorization, if none is {@link MatrixBuilder#setSolver(LinearSolver) set}.
+     */
+    public void setBackend(LinearSolver.Backend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Defines how many conductances {@link MatrixBuilder#updateConductance(Pin, Pin, double) updates} are accumulated
+     * before a new factorization, 0 always factorizes again.
+     */
+    public void setMaxUpdateRank(int maxUpdateRank) {
+        if (maxUpdateRank < 0)
+            throw new IllegalArgumentException("Max update rank must be positive!");
+        this.maxUpdateRank = maxUpdateRank;
+        createLowRank();
+        isFactored = false;
+        responseVersion++;
+    }
+
+    public int getMaxUpdateRank() {
+        return maxUpdateRank;
+    }
+
+    ///@return how many times the LHS was factorized by this builder.
+    public int getFactorizations() {
+        return factorizations;
+    }
+
+    ///@return how many conductance updates were applied without a new factorization.
+    public int getLowRankUpdates() {
+        return lowRankUpdates;
+    }
+
+    ///@return true if the factorization of the LHS with all modifications is updated, so a solve doesn't factorize again.
+    public boolean isFactored() {
+        return isFactorValid();
+    }
+
+    private boolean isFactorValid() {
+        return isFactored && (schur != null || solver.isFactorOf(lhs_overlap));
+    }
+
+    /**
+     * Factorize the LHS with all modifications, if something changes since the last factorization.<br>
+     * The {@link LinearSolver solver} is created by the {@link MatrixBuilder#setBackend(LinearSolver.Backend) backend} if none was set,
+     * and {@link LinearSolver#refactor(Matrix) refactor} reuses the analysis of the pattern.
+     * When {@link MatrixBuilder#isCondensed() condensed}, only the Schur complement is factorized.
+     */
+    public void factorize(){
+        if (!isClosed)
+            throw new IllegalStateException("Try factorize a non closed matrix builder!");
+        if (isFactorValid())
+            return;
+
+        if (schur != null)
+            schur.factor(lhs_overlap);
+        else {
+            if (solver == null)
+                solver = backend.create(lhs_overlap);
+            solver.refactor(lhs_overlap);
+        }
+        if (lowRank != null)
+            lowRank.clear();
+        isFactored = true;
+        factorizations++;
+        responseVersion++;
+    }
+
+    ///Solve using only the factorization, without the low-rank updates.
+    private void baseSolve(double[] b, double[] x){
+        solver.solve(b, x);
+    }
+
+    /**
+     * Solve the LHS with all modifications, LHS * x = b, without allocations.
+     * @implNote x and b can be the same array.
+     */
+    public void solve(double[] b, double[] x){
+        factorize();
+        if (schur != null)
+            schur.solve(b, x);
+        else if (lowRank == null)
+            baseSolve(b, x);
+        else
+            lowRank.solve(b, x);
+    }
+
+    /**
+     * Solve the LHS with all modifications, LHS * x = b.
+     * @return x
+     */
+    public double[] solve(double[] b){
+        double[] x = new double[lhs.size()];
+        solve(b, x);
+        return x;
+    }
+
+    /**
+     * Write the equation system result in the array, using the {@link LinearSolver}.
+     */
+    public void getResult(double[] result){
         if (!isClosed)
             throw new IllegalStateException("Try get result in a non closed matrix builder!");
 
-        double[] solution;
-        if (rhs_pairs.isEmpty() && lhs_pairs.isEmpty()) {
-            if (lu == null)
-                lu = LU.decompose(Tools.deepCopy(lhs_overlap));
-            solution = lu.solve(getRhs());
-        } else {
-            lu = LU.decompose(Tools.deepCopy(lhs_overlap));
-            solution = lu.solve(getRhs());
+        if (isResponding && !isLocked && lhs_pairs.isEmpty() && lhs_slots.isEmpty())
+            respond(result);
+        else
+            solve(getRhs(), result);
+        if (!(rhs_pairs.isEmpty() && lhs_pairs.isEmpty() && lhs_slots.isEmpty()))
             clear();
+    }
+
+    ///The result by superposition of the static solution and the colums of the modified rows, see {@link MatrixBuilder#setResponse(boolean)}.
+    private void respond(double[] result) {
+        factorize();
+        final int size = rhs_static.length;
+        if (response_base == null) {
+            response_base = new double[size];
+            responses = new double[size][];
+            response_versions = new int[size];
+            responded = new boolean[size];
+            unit = new double[size];
+        }
+        if (baseVersion != responseVersion) {
+            solve(rhs_static, response_base);
+            baseVersion = responseVersion;
+        }
+
+        System.arraycopy(response_base, 0, result, 0, size);
+        for (int i = 0; i < rhs_pairs.size(); i++) {
+            final int row = rhs_pairs.get(i);
+            if (responded[row])
+                continue;
+            responded[row] = true;
+            final double delta = rhs_overlap[row] - rhs_static[row];
+            if (delta == 0)
+                continue;
+            final double[] colum = colum(row);
+            for (int k = 0; k < size; k++)
+                result[k] += delta * colum[k];
         }
+        for (int i = 0; i < rhs_pairs.size(); i++)
+            responded[rhs_pairs.get(i)] = false;
+    }
+
+    ///@return the colum of LHS<sup>-1</sup> of the row, solved if the LHS changed since the last solve.
+    private double[] colum(int row) {
+        if (responses[row] == null)
+            responses[row] = new double[rhs_static.length];
+        if (response_versions[row] != responseVersion) {
+            unit[row] = 1;
+            solve(unit, responses[row]);
+            unit[row] = 0;
+            response_versions[row] = responseVersion;
+        }
+        return responses[row];
+    }
 
+    /**
+     * Compute the {@link MatrixBuilder#getResult(double[]) results} by superposition, to a LHS that doesn't change between the solves,
+     * like a linear circuit where only the sources and the companion models change.<br>
+     * The solution of the static RHS and the solution of a unit in each modified row, a colum of LHS<sup>-1</sup>, are kept,
+     * so a result with s modified rows costs O(n * s) instead of a full forward and back substitution.
+     * Each colum is solved the first time its row is modified, and all are solved again after a change in the LHS,
+     * a result with temporary LHS modifications is a full solve.
+     */
+    public void setResponse(boolean response) {
+        this.isResponding = response;
+    }
+
+    public boolean isResponse() {
+        return isResponding;
+    }
+
+    /**
+     * @return The equation system result, using the {@link LinearSolver}.
+     */
+    public double[] getResult(){
+        double[] solution = new double[lhs.size()];
+        getResult(solution);
         return solution;
     }
 
@@ -143,18 +561,29 @@ public class MatrixBuilder extends StaticBuilder {
         return Tools.deepCopy(rhs_static);
     }
 
+    ///@return the LHS without the modifications made after the close.
+    public Matrix getStaticMatrix() {
+        return lhs;
+    }
+
+    ///@return the LHS with all modifications after the close, or the static LHS if isn't closed.
+    @Override
+    public Matrix getMatrix() {
+        return isClosed ? lhs_overlap : lhs;
+    }
+
     @Override
     public double[][] getLhs() {
-        return lhs_overlap;
+        return asArray(getMatrix());
     }
 
     public void lock(){
-        rhs_lock = Tools.deepCopy(rhs_overlap);
+        System.arraycopy(rhs_overlap, 0, rhs_lock, 0, rhs_overlap.length);
+        rhs_lock_pairs.clear();
         this.isLocked = true;
     }
 
     public void unlock(){
-        rhs_lock = null;
         this.isLocked = false;
     }
 
@@ -166,20 +595,33 @@ public class MatrixBuilder extends StaticBuilder {
 
     public void clearRhs(){
         if (isLocked) {
-            for (int idx : rhs_lock_pairs)
+            for (int i = 0; i < rhs_lock_pairs.size(); i++) {
+                final int idx = rhs_lock_pairs.get(i);
                 rhs_lock[idx] = rhs_overlap[idx];
+            }
             rhs_lock_pairs.clear();
         }
         else {
-            for (int idx : rhs_pairs)
+            for (int i = 0; i < rhs_pairs.size(); i++) {
+                final int idx = rhs_pairs.get(i);
                 rhs_overlap[idx] = rhs_static[idx];
+            }
             rhs_pairs.clear();
         }
     }
 
     public void clearLhs(){
-        for (int[] pair : lhs_pairs)
-            lhs_overlap[pair[0]][pair[1]] = lhs[pair[0]][pair[1]];
+        if (!(lhs_pairs.isEmpty() && lhs_slots.isEmpty()))
+            isFactored = false;
+        for (int i = 0; i < lhs_slots.size(); i++) {
+            final int slot = lhs_slots.get(i);
+            lhs_overlap.setAt(slot, lhs.getAt(slot));
+        }
+        lhs_slots.clear();
+        for (int i = 0; i < lhs_pairs.size(); i += 2) {
+            final int row = lhs_pairs.get(i), colum = lhs_pairs.get(i + 1);
+            lhs_overlap.set(row, colum, lhs.get(row, colum));
+        }
 
         lhs_pairs.clear();
     }
@@ -0,0 +1,158 @@
+package kuse.welbre.tools;
+
+import java.util.Arrays;
+
+/**
+ * Fill-reducing ordering of a symmetric sparse matrix, using the minimum degree heuristic.<br>
+ * The matrix is seen as a graph, each row is a vertex, and each non-zero value outside the diagonal is an edge.
+ * Eliminating a vertex connects all its neighbors (the fill-in), so the vertex with fewer neighbors is eliminated first.<br>
+ * The graph is the pattern of A + A<sup>T</sup>, so an unsymmetric matrix can also be ordered.
+ */
+public final class MinimumDegree {
+    private final int size;
+    private final int[][] adjacency;
+    private final int[] degree;
+    private final int[] marks;
+    private int mark = 0;
+    private long fill = 0;
+    private final long entries;
+
+    //degree buckets, a doubly linked list for each degree.
+    private final int[] head, next, prev;
+
+    private MinimumDegree(int[][] graph) {
+        size = graph.length;
+        adjacency = new int[size][];
+        degree = new int[size];
+        marks = new int[size];
+        head = new int[size + 1];
+        next = new int[size];
+        prev = new int[size];
+
+        //copy the graph without self loops and duplicated edges, and symmetric.
+        int[][] lists = new int[size][];
+        for (int v = 0; v < size; v++)
+            lists[v] = new int[Math.max(4, graph[v].length * 2)];
+        for (int v = 0; v < size; v++) {
+            for (int u : graph[v]) {
+                if (u == v) continue;
+                addEdge(lists, v, u);
+                addEdge(lists, u, v);
+            }
+        }
+        long edges = 0;
+        for (int v = 0; v < size; v++) {
+            adjacency[v] = lists[v];
+            edges += degree[v];
+        }
+        entries = size + edges;
+    }
+
+    private void addEdge(int[][] lists, int v, int u) {
+        final int[] list = lists[v];
+        for (int i = 0; i < degree[v]; i++)
+            if (list[i] == u)
+                return;
+        if (degree[v] == list.length)
+            lists[v] = Arrays.copyOf(list, list.length * 2);
+        lists[v][degree[v]++] = u;
+    }
+
+    /**
+     * Find an order that reduces the fill-in of the LU decomposition.
+     * @param graph the neighbors of each vertex.
+     * @return the elimination order, order[k] is the vertex eliminated in the step k.
+     */
+    public static int[] order(int[][] graph) {
+        return new MinimumDegree(graph).eliminate(null);
+    }
+
+    /**
+     * Estimate the fill ratio of the LU decomposition if the vertex are eliminated in this order, assuming diagonal pivots.
+     * @return the ratio between the non-zero values in L + U and in the matrix.
+     */
+    public static double fillRatio(int[][] graph, int[] order) {
+        MinimumDegree md = new MinimumDegree(graph);
+        md.eliminate(order);
+        return md.entries == 0 ? 1 : (md.size + 2 * md.fill) / (double) md.entries;
+    }
+
+    ///Eliminate all vertex, in the fixed order or in the minimum degree order if fixed is null.
+    private int[] eliminate(int[] fixed) {
+        final int[] order = new int[size];
+        Arrays.fill(head, -1);
+        for (int v = 0; v < size; v++)
+            insert(v);
+
+        int minDegree = 0;
+        for (int k = 0; k < size; k++) {
+            final int v;
+            if (fixed == null) {
+                while (head[minDegree] == -1)
+                    minDegree++;
+                v = head[minDegree];
+            } else
+                v = fixed[k];
+            remove(v);
+            order[k] = v;
+
+            final int[] neighbors = adjacency[v];
+            final int count = degree[v];
+            fill += count;
+
+            //remove v from the neighbors.
+            for (int i = 0; i < count; i++) {
+                final int u = neighbors[i];
+                remove(u);//the bucket depends on the degree.
+                final int[] list = adjacency[u];
+                for (int j = 0; j < degree[u]; j++) {
+                    if (list[j] == v) {
+                        list[j] = list[--degree[u]];
+                        break;
+                    }
+                }
+            }
+
+            //connect all neighbors.
+            for (int i = 0; i < count; i++) {
+                final int u = neighbors[i];
+                mark++;
+                marks[u] = mark;
+                for (int j = 0; j < degree[u]; j++)
+                    marks[adjacency[u][j]] = mark;
+                for (int j = 0; j < count; j++) {
+                    final int w = neighbors[j];
+                    if (marks[w] == mark) continue;
+                    if (degree[u] == adjacency[u].length)
+                        adjacency[u] = Arrays.copyOf(adjacency[u], adjacency[u].length * 2);
+                    adjacency[u][degree[u]++] = w;
+                }
+                insert(u);
+                if (degree[u] < minDegree)
+                    minDegree = degree[u];
+            }
+            adjacency[v] = null;
+        }
+
+        return order;
+    }
+
+    private void insert(int v) {
+        final int d = Math.min(degree[v], size);
+        prev[v] = -1;
+        next[v] = head[d];
+        if (head[d] != -1)
+            prev[head[d]] = v;
+        head[d] = v;
+    }
+
+    private void remove(int v) {
+        final int d = Math.min(degree[v], size);
+        if (prev[v] != -1)
+            next[prev[v]] = next[v];
+        else
+            head[d] = next[v];
+        if (next[v] != -1)
+            prev[next[v]] = prev[v];
+    }
+}
@@ -0,0 +1,271 @@
+package kuse.welbre.tools;
+
+import java.util.Arrays;
+
+/**
+ * Condensation of the LHS in the active rows, the rows that can change after the close.<br>
+ * The matrix is split in static (s) and active (a) rows and colums:
+ * <pre>
+ * | Ass Asa | | xs |   | bs |
+ * | Aas Aaa | | xa | = | ba |
+ * </pre>
+ * The static rows are eliminated once, and each new LHS only needs the factorization of the Schur complement, with the active size:<br>
+ * (Aaa - Aas * Ass<sup>-1</sup> * Asa) * xa = ba - Aas * Ass<sup>-1</sup> * bs<br>
+ * xs = Ass<sup>-1</sup> * bs - Ass<sup>-1</sup> * Asa * xa<br><br>
+ * So a big linear network with a few non-linear elements is solved at the cost of the non-linear subsystem,
+ * plus the static size times the active size to rebuild the static values.
+ */
+public final class SchurComplement {
+    private final int size;
+    ///The matrix row of each active index.
+    private final int[] active;
+    ///The matrix row of each static index.
+    private final int[] statics;
+    ///The index of each matrix row in the active or static set.
+    private final int[] position;
+    private final boolean[] isActive;
+
+    ///Ass factorization
+    private final LinearSolver staticSolver;
+
+    //Aas entries, (active index, static index, value).
+    private final int[] asRows, asColums;
+    private final double[] asValues;
+    ///z[j] = Ass^-1 * Asa(:,j)
+    private final double[][] z;
+    ///f = -Aas * Ass^-1 * Asa
+    private final double[][] f;
+    ///m = Aaa + f, the Schur complement.
+    private final double[][] m;
+    private final LU mLU;
+
+    //The entries of an overlap sparse matrix in the active block, (entry, m position).
+    private int[] aaEntries = new int[16], aaPositions = new int[16];
+    private int aaCount = 0, scanned = 0;
+
+    //The last static rhs and its solution, the static rhs usually doesn't change between ticks.
+    private final double[] lastBs, lastYs;
+    private boolean hasLast = false;
+
+    //work arrays
+    private final double[] bs, ba, xa;
+
+    /**
+     * Eliminate the static rows of the matrix.<br>
+     * A static row with all values in active colums (or a static colum with all values in active rows) is also active,
+     * otherwise Ass is singular, like a voltage source between two active nodes.
+     * @param lhs the matrix, only the active block can change after.
+     * @param activeRows the rows that can change.
+     * @param backend the solver of the static block.
+     * @throws SingularMatrixException if the static block is singular.
+     */
+    public SchurComplement(Matrix lhs, boolean[] activeRows, LinearSolver.Backend backend) {
+        size = lhs.size();
+        isActive = activeRows.clone();
+
+        //all non-zero values of the matrix.
+        final int[] rows, colums;
+        final double[] values;
+        {
+            IntList r = new IntList(), c = new IntList();
+            double[] v = new double[16];
+            int count = 0;
+            if (lhs instanceof SparseMatrix sparse) {
+                final double[] sv = sparse.getValues();
+                for (int e = 0; e < sparse.getEntries(); e++) {
+                    if (sv[e] == 0) continue;
+                    r.add(sparse.getRow(e));
+                    c.add(sparse.getColum(e));
+                    if (count == v.length) v = Arrays.copyOf(v, count * 2);
+                    v[count++] = sv[e];
+                }
+            } else {
+                for (int i = 0; i < size; i++)
+                    for (int j = 0; j < size; j++) {
+                        final double value = lhs.get(i, j);
+                        if (value == 0) continue;
+                        r.add(i);
+                        c.add(j);
+                        if (count == v.length) v = Arrays.copyOf(v, count * 2);
+                        v[count++] = value;
+                    }
+            }
+            rows = new int[count];
+            colums = new int[count];
+            for (int i = 0; i < count; i++) {
+                rows[i] = r.get(i);
+                colums[i] = c.get(i);
+            }
+            values = Arrays.copyOf(v, count);
+        }
+
+        //a static row (colum) without static values makes Ass singular.
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            boolean[] rowHasStatic = new boolean[size], columHasStatic = new boolean[size];
+            for (int e = 0; e < rows.length; e++) {
+                if (!isActive[colums[e]]) rowHasStatic[rows[e]] = true;
+                if (!isActive[rows[e]]) columHasStatic[colums[e]] = true;
+            }
+            for (int i = 0; i < size; i++) {
+                if (!isActive[i] && !(rowHasStatic[i] && columHasStatic[i])) {
+                    isActive[i] = true;
+                    changed = true;
+                }
+            }
+        }
+
+        position = new int[size];
+        int k = 0, ns = 0;
+        for (int i = 0; i < size; i++)
+            position[i] = isActive[i] ? k++ : ns++;
+        active = new int[k];
+        statics = new int[ns];
+        for (int i = 0; i < size; i++) {
+            if (isActive[i]) active[position[i]] = i;
+            else statics[position[i]] = i;
+        }
+
+        //split the blocks.
+        final Matrix ass = lhs instanceof SparseMatrix ? new SparseMatrix(ns) : new DenseMatrix(ns);
+        final double[][] asa = new double[k][];
+        IntList asR = new IntList(), asC = new IntList();
+        double[] asV = new double[16];
+        int asCount = 0;
+        for (int e = 0; e < rows.length; e++) {
+            final int r = rows[e], c = colums[e];
+            if (!isActive[r] && !isActive[c])
+                ass.add(position[r], position[c], values[e]);
+            else if (!isActive[r]) {//Asa
+                if (asa[position[c]] == null)
+                    asa[position[c]] = new double[ns];
+                asa[position[c]][position[r]] += values[e];
+            } else if (!isActive[c]) {//Aas
+                asR.add(position[r]);
+                asC.add(position[c]);
+                if (asCount == asV.length) asV = Arrays.copyOf(asV, asCount * 2);
+                asV[asCount++] = values[e];
+            }
+        }
+        asRows = new int[asCount];
+        asColums = new int[asCount];
+        for (int i = 0; i < asCount; i++) {
+            asRows[i] = asR.get(i);
+            asColums[i] = asC.get(i);
+        }
+        asValues = Arrays.copyOf(asV, asCount);
+
+        staticSolver = backend.create(ass);
+        staticSolver.factor(ass);
+
+        //Z and F
+        z = new double[k][];
+        f = new double[k][k];
+        for (int j = 0; j < k; j++) {
+            z[j] = new double[ns];
+            if (asa[j] != null)
+                staticSolver.solve(asa[j], z[j]);
+        }
+        for (int e = 0; e < asCount; e++) {
+            final int i = asRows[e], s = asColums[e];
+            final double v = asValues[e];
+            for (int j = 0; j < k; j++)
+                f[i][j] -= v * z[j][s];
+        }
+
+        m = new double[k][k];
+        mLU = new LU(k);
+        lastBs = new double[ns];
+        lastYs = new double[ns];
+        bs = new double[ns];
+        ba = new double[k];
+        xa = new double[k];
+    }
+
+    ///@return if the row is in the active set, the ground (-1) is active.
+    public boolean isActive(int row) {
+        return row < 0 || isActive[row];
+    }
+
+    ///@return the size of the Schur complement.
+    public int getActiveSize() {
+        return active.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Factorize the Schur complement of the matrix, the static block must be the same used in the condensation.
+     */
+    public void factor(Matrix overlap) {
+        final int k = active.length;
+        for (int i = 0; i < k; i++)
+            System.arraycopy(f[i], 0, m[i], 0, k);
+
+        if (overlap instanceof SparseMatrix sparse) {
+            //the entries never move, so only the new entries are scanned.
+            final int entries = sparse.getEntries();
+            for (int e = scanned; e < entries; e++) {
+                final int r = sparse.getRow(e), c = sparse.getColum(e);
+                if (!(isActive[r] && isActive[c])) continue;
+                if (aaCount == aaEntries.length) {
+                    aaEntries = Arrays.copyOf(aaEntries, aaCount * 2);
+                    aaPositions = Arrays.copyOf(aaPositions, aaCount * 2);
+                }
+                aaEntries[aaCount] = e;
+                aaPositions[aaCount++] = position[r] * k + position[c];
+            }
+            scanned = entries;
+            final double[] values = sparse.getValues();
+            for (int i = 0; i < aaCount; i++) {
+                final int p = aaPositions[i];
+                m[p / k][p % k] += values[aaEntries[i]];
+            }
+        } else {
+            for (int i = 0; i < k; i++)
+                for (int j = 0; j < k; j++)
+                    m[i][j] += overlap.get(active[i], active[j]);
+        }
+
+        mLU.refactor(m);
+    }
+
+    /**
+     * Solve the factorized matrix, matrix * x = b.
+     * @implNote x and b can be the same array.
+     */
+    public void solve(double[] b, double[] x) {
+        final int k = active.length, ns = statics.length;
+
+        boolean same = hasLast;
+        for (int s = 0; s < ns; s++) {
+            bs[s] = b[statics[s]];
+            if (same && bs[s] != lastBs[s])
+                same = false;
+        }
+        final double[] ys = lastYs;
+        if (!same) {
+            System.arraycopy(bs, 0, lastBs, 0, ns);
+            staticSolver.solve(bs, ys);
+            hasLast = true;
+        }
+
+        for (int i = 0; i < k; i++)
+            ba[i] = b[active[i]];
+        for (int e = 0; e < asValues.length; e++)
+            ba[asRows[e]] -= asValues[e] * ys[asColums[e]];
+        mLU.solve(ba, xa);
+
+        for (int i = 0; i < k; i++)
+            x[active[i]] = xa[i];
+        for (int s = 0; s < ns; s++) {
+            double v = ys[s];
+            for (int j = 0; j < k; j++)
+                v -= z[j][s] * xa[j];
+            x[statics[s]] = v;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package kuse.welbre.tools;
+
+import java.io.Serial;
+
+/**
+ * Thrown by a {@link LinearSolver} when the matrix is singular and can't be decomposed.<br>
+ * A singular Jacobian is a state of the simulation that a continuation can leave, unlike the other {@link IllegalStateException}s of a wrong use.
+ */
+public class SingularMatrixException extends IllegalStateException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    public SingularMatrixException(String message) {
+        super(message);
+    }
+}
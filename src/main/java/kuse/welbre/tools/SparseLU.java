@@ -0,0 +1,355 @@
+package kuse.welbre.tools;
+
+import java.util.Arrays;
+
+/**
+ * A LU decomposition of a {@link SparseMatrix}, that only computes and storage the non-zero values of L and U.<br>
+ * The factorization is split in two steps, like the KLU solver:<br>
+ * <ul>
+ *     <li>{@link SparseLU#factor(SparseMatrix) factor}: the symbolic analysis, that finds the pivot order and the fill pattern of L and U,
+ *     and computes the values. Uses the left-looking Gilbert-Peierls algorithm with threshold partial pivoting.</li>
+ *     <li>{@link SparseLU#refactor(SparseMatrix) refactor}: only recomputes the values, reusing the pivot order and the pattern.</li>
+ * </ul>
+ * The pattern of a circuit matrix never changes between ticks, so after the first factorization only the numeric step is needed,
+ * and the cost depends on the non-zero values instead of the cube of the size.
+ */
+public final class SparseLU implements LinearSolver {
+    /**
+     * A diagonal pivot is accepted if it is bigger than this fraction of the biggest candidate in the colum.<br>
+     * Preferring the diagonal keeps the fill-in predicted by the node ordering.
+     */
+    public static final double PIVOT_TOLERANCE = 1e-3;
+
+    private final int size;
+    ///The colum order, colum k of the factors is the colum q[k] of the matrix.
+    private final int[] q;
+    ///The row pivot, row i of the matrix is the row pinv[i] of the factors.
+    private final int[] pinv;
+
+    //L is unit lower triangular, the diagonal is storage in the first position of each colum.
+    private int[] lp, li;
+    private double[] lx;
+    //U is upper triangular, the diagonal is storage in the last position of each colum.
+    private int[] up, ui;
+    private double[] ux;
+
+    //The matrix pattern used in the analysis.
+    private int[] analysedPointers, analysedRows;
+    private boolean isAnalysed = false;
+    ///The last matrix factorized.
+    private SparseMatrix factored;
+
+    //work arrays
+    private final double[] x;
+    private final int[] xi, stack, pstack, marks;
+    private int mark = 0;
+
+    private int factorizations = 0;
+    private int refactorizations = 0;
+    private int matrixEntries = 0;
+
+    public SparseLU(int size) {
+        this.size = size;
+        q = new int[size];
+        for (int i = 0; i < size; i++)
+            q[i] = i;
+        pinv = new int[size];
+        lp = new int[size + 1];
+        up = new int[size + 1];
+        li = new int[size * 4 + 1];
+        lx = new double[li.length];
+        ui = new int[size * 4 + 1];
+        ux = new double[ui.length];
+
+        x = new double[size];
+        xi = new int[size];
+        stack = new int[size];
+        pstack = new int[size];
+        marks = new int[size];
+    }
+
+    /**
+     * Numeric factorization reusing the pivot order and pattern found in the last {@link SparseLU#factor(SparseMatrix) factor}.<br>
+     * If the matrix pattern is different from the analysed, or a pivot became too small, a full factorization is computed.
+     */
+    public void refactor(SparseMatrix a) {
+        if (!isAnalysed || !isSamePattern(a) || !numeric(a))
+            factor(a);
+        else {
+            factored = a;
+            refactorizations++;
+        }
+    }
+
+    @Override
+    public void refactor(Matrix a) {
+        refactor(asSparse(a));
+    }
+
+    @Override
+    public void factor(Matrix a) {
+        factor(asSparse(a));
+    }
+
+    private static SparseMatrix asSparse(Matrix a) {
+        if (a instanceof SparseMatrix sparse)
+            return sparse;
+        throw new IllegalArgumentException("Sparse LU needs a sparse matrix!");
+    }
+
+    /**
+     * Symbolic and numeric factorization, finds the pivot order and the pattern of L and U.
+     * @throws SingularMatrixException if the matrix is singular.
+     */
+    public void factor(SparseMatrix a) {
+        if (a.size() != size)
+            throw new IllegalArgumentException("Matrix size (%d) is different from the LU size (%d)!".formatted(a.size(), size));
+        isAnalysed = false;
+        factored = null;
+        final int[] ap = a.getColumPointers(), ai = a.getColumRows(), ae = a.getColumEntries();
+        final double[] av = a.getValues();
+
+        Arrays.fill(pinv, -1);
+        int lnz = 0, unz = 0;
+        for (int k = 0; k < size; k++) {
+            lp[k] = lnz;
+            up[k] = unz;
+            if (lnz + size > li.length) {
+                li = Arrays.copyOf(li, 2 * li.length + size);
+                lx = Arrays.copyOf(lx, li.length);
+            }
+            if (unz + size > ui.length) {
+                ui = Arrays.copyOf(ui, 2 * ui.length + size);
+                ux = Arrays.copyOf(ux, ui.length);
+            }
+
+            final int col = q[k];
+            final int top = reach(ap, ai, col);
+            //x = L \ A(:,col)
+            for (int p = ap[col]; p < ap[col + 1]; p++)
+                x[ai[p]] = av[ae[p]];
+            for (int px = top; px < size; px++) {
+                final int j = xi[px];
+                final int J = pinv[j];
+                if (J < 0) continue;
+                final double xj = x[j];
+                for (int p = lp[J] + 1; p < lp[J + 1]; p++)
+                    x[li[p]] -= lx[p] * xj;
+            }
+
+            //find the pivot.
+            int ipiv = -1;
+            double biggest = -1;
+            for (int px = top; px < size; px++) {
+                final int i = xi[px];
+                if (pinv[i] < 0) {
+                    final double t = Math.abs(x[i]);
+                    if (t > biggest) {
+                        biggest = t;
+                        ipiv = i;
+                    }
+                } else {
+                    ui[unz] = pinv[i];
+                    ux[unz++] = x[i];
+                }
+            }
+            if (ipiv == -1 || biggest <= 0 || !Double.isFinite(biggest)) {
+                Arrays.fill(x, 0);
+                throw new SingularMatrixException("Matrix is singular, can be decomposed!");
+            }
+            if (pinv[col] < 0 && Math.abs(x[col]) >= biggest * PIVOT_TOLERANCE)//x[col] is 0 if col isn't in the reach.
+                ipiv = col;
+
+            final double pivot = x[ipiv];
+            ui[unz] = k;
+            ux[unz++] = pivot;
+            pinv[ipiv] = k;
+            li[lnz] = ipiv;
+            lx[lnz++] = 1;
+            for (int px = top; px < size; px++) {
+                final int i = xi[px];
+                if (pinv[i] < 0) {
+                    li[lnz] = i;
+                    lx[lnz++] = x[i] / pivot;
+                }
+                x[i] = 0;
+            }
+        }
+        lp[size] = lnz;
+        up[size] = unz;
+        //rows of L in pivot order.
+        for (int p = 0; p < lnz; p++)
+            li[p] = pinv[li[p]];
+
+        analysedPointers = ap;
+        analysedRows = ai;
+        matrixEntries = ap[size];
+        factored = a;
+        isAnalysed = true;
+        factorizations++;
+    }
+
+    ///Recompute the values of L and U with the analysed pattern, returns false if a pivot is too small.
+    private boolean numeric(SparseMatrix a) {
+        final int[] ap = a.getColumPointers(), ai = a.getColumRows(), ae = a.getColumEntries();
+        final double[] av = a.getValues();
+        boolean stable = true;
+
+        for (int k = 0; k < size; k++) {
+            final int col = q[k];
+            for (int p = ap[col]; p < ap[col + 1]; p++)
+                x[pinv[ai[p]]] = av[ae[p]];
+
+            //the U pattern is in topological order, so x[j] is final when it is used.
+            final int diag = up[k + 1] - 1;
+            for (int p = up[k]; p < diag; p++) {
+                final int j = ui[p];
+                final double xj = x[j];
+                ux[p] = xj;
+                x[j] = 0;
+                for (int pl = lp[j] + 1; pl < lp[j + 1]; pl++)
+                    x[li[pl]] -= lx[pl] * xj;
+            }
+
+            final double pivot = x[k];
+            x[k] = 0;
+            ux[diag] = pivot;
+            double biggest = 0;
+            for (int pl = lp[k] + 1; pl < lp[k + 1]; pl++) {
+                final int i = li[pl];
+                biggest = Math.max(biggest, Math.abs(x[i]));
+                lx[pl] = x[i] / pivot;
+                x[i] = 0;
+            }
+            if (!(Math.abs(pivot) >= biggest * PIVOT_TOLERANCE) || pivot == 0)
+                stable = false;//keep going to leave x clean.
+        }
+
+        return stable;
+    }
+
+    private boolean isSamePattern(SparseMatrix a) {
+        final int[] ap = a.getColumPointers(), ai = a.getColumRows();
+        if (ap == analysedPointers && ai == analysedRows)
+            return true;
+        if (Arrays.equals(ap, analysedPointers) && Arrays.equals(ai, analysedRows)) {
+            analysedPointers = ap;
+            analysedRows = ai;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find all rows that can be non-zero in x = L \ A(:,col), using a depth-first search in the graph of L.
+     * @return top, the rows are in xi[top..size-1] in topological order.
+     */
+    private int reach(int[] ap, int[] ai, int col) {
+        if (++mark == Integer.MAX_VALUE) {
+            Arrays.fill(marks, 0);
+            mark = 1;
+        }
+        int top = size;
+        for (int p = ap[col]; p < ap[col + 1]; p++)
+            if (marks[ai[p]] != mark)
+                top = dfs(ai[p], top);
+        return top;
+    }
+
+    private int dfs(int start, int top) {
+        int head = 0;
+        stack[0] = start;
+        while (head >= 0) {
+            final int j = stack[head];
+            final int jnew = pinv[j];
+            if (marks[j] != mark) {
+                marks[j] = mark;
+                pstack[head] = jnew < 0 ? 0 : lp[jnew] + 1;
+            }
+            boolean done = true;
+            final int end = jnew < 0 ? 0 : lp[jnew + 1];
+            for (int p = pstack[head]; p < end; p++) {
+                final int i = li[p];
+                if (marks[i] == mark) continue;
+                pstack[head] = p;
+                stack[++head] = i;
+                done = false;
+                break;
+            }
+            if (done) {
+                head--;
+                xi[--top] = j;
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Solve A * result = rhs.
+     * @implNote result and rhs can be the same array.
+     */
+    @Override
+    public void solve(double[] rhs, double[] result) {
+        if (!isAnalysed)
+            throw new IllegalStateException("Try solve a non factorized matrix!");
+        final double[] y = x;
+        for (int i = 0; i < size; i++)
+            y[pinv[i]] = rhs[i];
+
+        for (int j = 0; j < size; j++) {
+            final double yj = y[j];
+            if (yj == 0) continue;
+            for (int p = lp[j] + 1; p < lp[j + 1]; p++)
+                y[li[p]] -= lx[p] * yj;
+        }
+
+        for (int j = size - 1; j >= 0; j--) {
+            final int diag = up[j + 1] - 1;
+            final double yj = y[j] /= ux[diag];
+            if (yj == 0) continue;
+            for (int p = up[j]; p < diag; p++)
+                y[ui[p]] -= ux[p] * yj;
+        }
+
+        for (int k = 0; k < size; k++) {
+            result[q[k]] = y[k];
+            y[k] = 0;
+        }
+    }
+
+    public double[] solve(double[] rhs) {
+        double[] result = new double[size];
+        solve(rhs, result);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isFactorOf(Matrix a) {
+        return factored == a;
+    }
+
+    ///@return how many full factorizations (symbolic + numeric) were computed.
+    public int getFactorizations() {
+        return factorizations;
+    }
+
+    ///@return how many numeric only factorizations were computed.
+    public int getRefactorizations() {
+        return refactorizations;
+    }
+
+    ///@return the non-zero values in L and U, the unit diagonal of L isn't counted.
+    public int getFactorEntries() {
+        return isAnalysed ? lp[size] - size + up[size] : 0;
+    }
+
+    ///@return the ratio between the non-zero values in L + U and in the factorized matrix.
+    public double getFillRatio() {
+        return matrixEntries == 0 ? 0 : getFactorEntries() / (double) matrixEntries;
+    }
+}
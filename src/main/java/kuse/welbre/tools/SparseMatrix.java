@@ -0,0 +1,313 @@
+package kuse.welbre.tools;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Matrix} that only storage the non-zero entries.<br>
+ * In a circuit each node touches only a few others, so almost all values in the LHS are zeros.<br><br>
+ * The entries are kept in a table (row, colum, value), and a hash index is used to find an entry by its row and colum.
+ * An entry never changes its position in the table, so the entry index can be used to access the value directly.<br>
+ * A compressed sparse row (CSR) and a compressed sparse colum (CSC) view of the table are built on demand,
+ * and rebuilt only if a new entry is created.
+ */
+public final class SparseMatrix implements Matrix {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int size;
+    private int entries = 0;
+    private int[] rows;
+    private int[] colums;
+    private double[] values;
+
+    ///Open addressing hash index, each slot storages entry + 1, and 0 for an empty slot.
+    private int[] index;
+
+    //CSR view.
+    private int[] rowPointers;
+    private int[] rowColums;
+    private int[] rowEntries;
+    //CSC view.
+    private int[] columPointers;
+    private int[] columRows;
+    private int[] columEntries;
+    private boolean isCompressed = false;
+
+    public SparseMatrix(int size) {
+        this(size, Math.max(INITIAL_CAPACITY, size * 4));
+    }
+
+    public SparseMatrix(int size, int capacity) {
+        this.size = size;
+        rows = new int[capacity];
+        colums = new int[capacity];
+        values = new double[capacity];
+        index = new int[Integer.highestOneBit(Math.max(capacity, 2) * 2) << 1];
+    }
+
+    private SparseMatrix(SparseMatrix other) {
+        this.size = other.size;
+        this.entries = other.entries;
+        this.rows = other.rows.clone();
+        this.colums = other.colums.clone();
+        this.values = other.values.clone();
+        this.index = other.index.clone();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    ///@return the amount of entries storage, included entries with zero value.
+    public int getEntries() {
+        return entries;
+    }
+
+    public int getRow(int entry) {
+        return rows[entry];
+    }
+
+    public int getColum(int entry) {
+        return colums[entry];
+    }
+
+    ///@return the backing values array, indexed by entry.
+    public double[] getValues() {
+        return values;
+    }
+
+    private static int hash(int row, int colum) {
+        int h = row * 0x9E3779B1 + colum;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Find the entry at row and colum.
+     * @return the entry index or -1 if the entry doesn't exist.
+     */
+    public int find(int row, int colum) {
+        final int mask = index.length - 1;
+        int slot = hash(row, colum) & mask;
+        int e;
+        while ((e = index[slot]) != 0) {
+            e--;
+            if (rows[e] == row && colums[e] == colum)
+                return e;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Find the entry at row and colum, if the entry doesn't exist a new one with value 0 is created.
+     * @return the entry index.
+     */
+    public int entry(int row, int colum) {
+        if (row < 0 || row >= size || colum < 0 || colum >= size)
+            throw new IndexOutOfBoundsException("Entry (%d,%d) is out of a %dx%d matrix!".formatted(row, colum, size, size));
+        final int mask = index.length - 1;
+        int slot = hash(row, colum) & mask;
+        int e;
+        while ((e = index[slot]) != 0) {
+            e--;
+            if (rows[e] == row && colums[e] == colum)
+                return e;
+            slot = (slot + 1) & mask;
+        }
+
+        if (entries == rows.length) {
+            final int capacity = rows.length * 2;
+            rows = Arrays.copyOf(rows, capacity);
+            colums = Arrays.copyOf(colums, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        e = entries++;
+        rows[e] = row;
+        colums[e] = colum;
+        values[e] = 0;
+        isCompressed = false;
+
+        if (entries * 2 > index.length)
+            rehash();
+        else
+            index[slot] = e + 1;
+
+        return e;
+    }
+
+    private void rehash() {
+        index = new int[index.length * 2];
+        final int mask = index.length - 1;
+        for (int e = 0; e < entries; e++) {
+            int slot = hash(rows[e], colums[e]) & mask;
+            while (index[slot] != 0)
+                slot = (slot + 1) & mask;
+            index[slot] = e + 1;
+        }
+    }
+
+    @Override
+    public double get(int row, int colum) {
+        final int e = find(row, colum);
+        return e == -1 ? 0 : values[e];
+    }
+
+    @Override
+    public void add(int row, int colum, double value) {
+        final int e = entry(row, colum);//entry can grow the values array.
+        values[e] += value;
+    }
+
+    @Override
+    public void set(int row, int colum, double value) {
+        final int e = entry(row, colum);
+        values[e] = value;
+    }
+
+    ///The slot is the entry index.
+    @Override
+    public int slot(int row, int colum) {
+        return entry(row, colum);
+    }
+
+    @Override
+    public double getAt(int slot) {
+        return values[slot];
+    }
+
+    @Override
+    public void addAt(int slot, double value) {
+        values[slot] += value;
+    }
+
+    @Override
+    public void setAt(int slot, double value) {
+        values[slot] = value;
+    }
+
+    @Override
+    public int rowOf(int slot) {
+        return getRow(slot);
+    }
+
+    @Override
+    public int columOf(int slot) {
+        return getColum(slot);
+    }
+
+    /**
+     * Build the compressed sparse row (CSR) and colum (CSC) views, if the pattern changes since the last call.<br>
+     * In each row the colums are sorted, and in each colum the rows are sorted.
+     */
+    public void compress() {
+        if (isCompressed)
+            return;
+
+        rowPointers = new int[size + 1];
+        rowColums = new int[entries];
+        rowEntries = new int[entries];
+        group(rows, colums, rowPointers, rowColums, rowEntries);
+
+        columPointers = new int[size + 1];
+        columRows = new int[entries];
+        columEntries = new int[entries];
+        group(colums, rows, columPointers, columRows, columEntries);
+
+        isCompressed = true;
+    }
+
+    ///Group the entries by major index, and sort each group by the minor index.
+    private void group(int[] major, int[] minor, int[] pointers, int[] minors, int[] positions) {
+        for (int e = 0; e < entries; e++)
+            pointers[major[e] + 1]++;
+        for (int i = 0; i < size; i++)
+            pointers[i + 1] += pointers[i];
+
+        final int[] next = Arrays.copyOf(pointers, size);
+        for (int e = 0; e < entries; e++) {
+            final int p = next[major[e]]++;
+            minors[p] = minor[e];
+            positions[p] = e;
+        }
+
+        //insertion sort by the minor index, groups are short.
+        for (int i = 0; i < size; i++) {
+            for (int p = pointers[i] + 1; p < pointers[i + 1]; p++) {
+                final int m = minors[p], e = positions[p];
+                int q = p - 1;
+                while (q >= pointers[i] && minors[q] > m) {
+                    minors[q + 1] = minors[q];
+                    positions[q + 1] = positions[q];
+                    q--;
+                }
+                minors[q + 1] = m;
+                positions[q + 1] = e;
+            }
+        }
+    }
+
+    ///@return the CSR row pointers, the row i is in [pointers[i], pointers[i+1]).
+    public int[] getRowPointers() {
+        compress();
+        return rowPointers;
+    }
+
+    ///@return the CSR colum of each position.
+    public int[] getRowColums() {
+        compress();
+        return rowColums;
+    }
+
+    ///@return the entry index of each CSR position.
+    public int[] getRowEntries() {
+        compress();
+        return rowEntries;
+    }
+
+    ///@return the CSC colum pointers, the colum j is in [pointers[j], pointers[j+1]).
+    public int[] getColumPointers() {
+        compress();
+        return columPointers;
+    }
+
+    ///@return the CSC row of each position.
+    public int[] getColumRows() {
+        compress();
+        return columRows;
+    }
+
+    ///@return the entry index of each CSC position.
+    public int[] getColumEntries() {
+        compress();
+        return columEntries;
+    }
+
+    @Override
+    public void multiply(double[] x, double[] result) {
+        compress();
+        for (int i = 0; i < size; i++) {
+            double sum = 0;
+            for (int p = rowPointers[i]; p < rowPointers[i + 1]; p++)
+                sum += values[rowEntries[p]] * x[rowColums[p]];
+            result[i] = sum;
+        }
+    }
+
+    @Override
+    public void copyTo(double[][] dense) {
+        for (double[] row : dense)
+            Arrays.fill(row, 0);
+        for (int e = 0; e < entries; e++)
+            dense[rows[e]][colums[e]] = values[e];
+    }
+
+    @Override
+    public SparseMatrix copy() {
+        return new SparseMatrix(this);
+    }
+
+    ///@return the proportion of entries in relation to a dense matrix with the same size.
+    public double getDensity() {
+        return size == 0 ? 0 : entries / ((double) size * size);
+    }
+}
@@ -4,15 +4,23 @@ import kuse.welbre.sim.electrical.CircuitAnalyser;
 import kuse.welbre.sim.electrical.Circuit.Pin;
 
 public class StaticBuilder {
-    protected final double[][] lhs;
+    protected final Matrix lhs;
 
     protected boolean isClosed = false;
 
     public StaticBuilder(CircuitAnalyser analyser) {
-        this(new double[analyser.matrixSize][analyser.matrixSize]);
+        this(analyser, Matrix.Storage.AUTO);
+    }
+
+    public StaticBuilder(CircuitAnalyser analyser, Matrix.Storage storage) {
+        this(storage.create(analyser.matrixSize));
     }
 
     public StaticBuilder(double[][] lhs) {
+        this(new DenseMatrix(lhs));
+    }
+
+    public StaticBuilder(Matrix lhs) {
         this.lhs = lhs;
     }
 
@@ -24,39 +32,116 @@ public class StaticBuilder {
         if (isClosed)
             throw new IllegalStateException("Try stamp a conductance in a closed builder!");
         if (a != null) {
-            lhs[a.address][a.address] += conductance;
+            lhs.add(a.address, a.address, conductance);
             if (b != null) {
-                lhs[a.address][b.address] -= conductance;
-                lhs[b.address][a.address] -= conductance;
+                lhs.add(a.address, b.address, -conductance);
+                lhs.add(b.address, a.address, -conductance);
             }
         }
         if (b != null) {
-            lhs[b.address][b.address] += conductance;
+            lhs.add(b.address, b.address, conductance);
         }
     }
 
     public void stampVoltageSource(Pin a, Pin b, int sor_idx){
         if (isClosed) throw new IllegalStateException("Try stamp a voltage source in a closed builder!");
         if (a != null) {
-            lhs[a.address][sor_idx] = 1;
-            lhs[sor_idx][a.address] = 1;
+            lhs.set(a.address, sor_idx, 1);
+            lhs.set(sor_idx, a.address, 1);
         }
         if (b != null) {
-            lhs[b.address][sor_idx] = -1;
-            lhs[sor_idx][b.address] = -1;
+            lhs.set(b.address, sor_idx, -1);
+            lhs.set(sor_idx, b.address, -1);
         }
     }
 
     public void stampLHS(int row, int colum, double value){
         if (isClosed) throw new IllegalStateException("Try stamp left hand side in a closed builder!");
-        lhs[row][colum] += value;
+        lhs.add(row, colum, value);
+    }
+
+    ///@return the matrix index of the pin, or -1 if the pin is the ground.
+    public static int address(Pin pin) {
+        return pin == null ? -1 : pin.address;
+    }
+
+    /**
+     * Register the entry (row, colum) of the LHS, so the element can stamp it by the slot without searching it.<br>
+     * The slots are registered in the {@link kuse.welbre.sim.electrical.abstractt.Element#compile(MatrixBuilder) compile} step, before the close.
+     * @return the slot used by {@link StaticBuilder#stampSlot(int, double)}, or -1 if the row or colum is the ground (-1).
+     */
+    public int slot(int row, int colum) {
+        if (isClosed) throw new IllegalStateException("Try register a slot in a closed builder!");
+        return row < 0 || colum < 0 ? -1 : lhs.slot(row, colum);
+    }
+
+    /**
+     * Register the entries between all pins.
+     * @return the slot of (pins[i], pins[j]) in the position i * pins.length + j.
+     */
+    public int[] slots(Pin... pins) {
+        int[] slots = new int[pins.length * pins.length];
+        for (int i = 0; i < pins.length; i++)
+            for (int j = 0; j < pins.length; j++)
+                slots[i * pins.length + j] = slot(address(pins[i]), address(pins[j]));
+        return slots;
+    }
+
+    /**
+     * Register the entries of a voltage source, used by {@link StaticBuilder#stampVoltageSource(int[])}.
+     */
+    public int[] voltageSourceSlots(Pin a, Pin b, int sor_idx) {
+        return new int[]{
+                slot(address(a), sor_idx), slot(sor_idx, address(a)),
+                slot(address(b), sor_idx), slot(sor_idx, address(b))
+        };
+    }
+
+    ///Add a value in the slot, the ground slot (-1) is ignored.
+    public void stampSlot(int slot, double value) {
+        if (isClosed) throw new IllegalStateException("Try stamp left hand side in a closed builder!");
+        if (slot >= 0)
+            lhs.addAt(slot, value);
+    }
+
+    ///Stamp a conductance in the slots registered by {@link StaticBuilder#slots(Pin...) slots(a, b)}.
+    public void stampConductance(int[] slots, double conductance) {
+        stampSlot(slots[0], conductance);
+        stampSlot(slots[1], -conductance);
+        stampSlot(slots[2], -conductance);
+        stampSlot(slots[3], conductance);
+    }
+
+    ///Stamp a voltage source in the slots registered by {@link StaticBuilder#voltageSourceSlots(Pin, Pin, int)}.
+    public void stampVoltageSource(int[] slots) {
+        if (isClosed) throw new IllegalStateException("Try stamp a voltage source in a closed builder!");
+        for (int i = 0; i < 4; i++)
+            if (slots[i] >= 0)
+                lhs.setAt(slots[i], i < 2 ? 1 : -1);
     }
 
     public void close(){
         isClosed = true;
     }
 
-    public double[][] getLhs() {
+    public boolean isSparse() {
+        return lhs instanceof SparseMatrix;
+    }
+
+    ///@return the matrix used to storage the LHS.
+    public Matrix getMatrix() {
         return lhs;
     }
+
+    /**
+     * @return the LHS as an array, if the storage is {@link DenseMatrix dense} the backing array is returned,
+     * otherwise a dense copy is created.
+     */
+    public double[][] getLhs() {
+        return asArray(lhs);
+    }
+
+    protected static double[][] asArray(Matrix matrix) {
+        return matrix instanceof DenseMatrix dense ? dense.getData() : matrix.toArray();
+    }
 }
@@ -2,9 +2,19 @@ package kuse.welbre.sim;
 
 import kuse.welbre.sim.Tools.ElementOMeter;
 import kuse.welbre.sim.electrical.Circuit;
+import kuse.welbre.sim.electrical.CircuitBuilder;
+import kuse.welbre.sim.electrical.NonConvergenceException;
+import kuse.welbre.sim.electrical.NonLinearHelper;
 import kuse.welbre.sim.electrical.abstractt.Element;
+import kuse.welbre.sim.electrical.abstractt.NonLinear;
 import kuse.welbre.sim.electrical.elements.*;
 import kuse.welbre.sim.electrical.exemples.Circuits;
+import kuse.welbre.tools.BroydenUpdate;
+import kuse.welbre.tools.GMRES;
+import kuse.welbre.tools.LinearSolver;
+import kuse.welbre.tools.Matrix;
+import kuse.welbre.tools.MatrixBuilder;
+import kuse.welbre.tools.SparseLU;
 import kuse.welbre.tools.Tools;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Nested;
@@ -12,13 +22,26 @@ import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.opentest4j.AssertionFailedError;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static java.lang.Math.abs;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 class CircuitTest {
 
@@ -61,6 +84,71 @@ class CircuitTest {
         }
     }
 
+    /**
+     * Two circuits of the provider, compiled.
+     * @param configure change the second circuit, before it's compiled.
+     * @return the default and the configured circuit.
+     */
+    public static Circuit[] compile(Supplier<Circuit> provider, Consumer<Circuit> configure){
+        Circuit expected = provider.get();
+        Circuit configured = provider.get();
+        configure.accept(configured);
+        expected.preCompile();
+        configured.preCompile();
+        return new Circuit[]{expected, configured};
+    }
+
+    ///Tick the two compiled circuits, each value of the X matrix must be the same in the relative tolerance.
+    public static void compareX(Circuit expected, Circuit got, double time, double tolerance){
+        for (double t = 0; t < time; t += expected.getTickRate()) {
+            expected.tick();
+            got.tick();
+            final double[][] a = expected.getX(), b = got.getX();
+            for (int i = 0; i < a.length; i++)
+                assertTrue(abs(a[i][0] - b[i][0]) <= tolerance * Math.max(1, abs(a[i][0])), createExpectedXReceivedMsg("X[%d]".formatted(i), a[i][0], b[i][0]));
+        }
+    }
+
+    /**
+     * Simulate the same circuit with the default settings and with a configured one, the X matrix must be the same, see {@link CircuitTest#compareX(Circuit, Circuit, double, double)}.
+     * @param configure change the second circuit, before it's compiled.
+     * @return the default and the configured circuit, after the simulation.
+     */
+    public static Circuit[] compareX(Supplier<Circuit> provider, Consumer<Circuit> configure, double time, double tolerance){
+        final Circuit[] circuits = compile(provider, configure);
+        compareX(circuits[0], circuits[1], time, tolerance);
+        return circuits;
+    }
+
+    /**
+     * Tick the two compiled circuits, each element must have the same current in the relative tolerance.
+     * @param voltages also compare the voltages of the elements, a node that floats can have any voltage.
+     */
+    public static void compareElements(Circuit expected, Circuit got, double time, double tolerance, boolean voltages){
+        for (double t = 0; t < time; t += expected.getTickRate()) {
+            expected.tick();
+            got.tick();
+            final Element[] a = expected.getElements(), b = got.getElements();
+            for (int i = 0; i < a.length; i++) {
+                assertTrue(abs(a[i].getCurrent() - b[i].getCurrent()) <= tolerance * Math.max(1, abs(a[i].getCurrent())), createExpectedXReceivedMsg("I of element %d".formatted(i), a[i].getCurrent(), b[i].getCurrent()));
+                if (voltages)
+                    assertTrue(abs(a[i].getVoltageDifference() - b[i].getVoltageDifference()) <= tolerance * Math.max(1, abs(a[i].getVoltageDifference())), createExpectedXReceivedMsg("V of element %d".formatted(i), a[i].getVoltageDifference(), b[i].getVoltageDifference()));
+            }
+        }
+    }
+
+    /**
+     * Simulate the same circuit with the default Newton and with a configured one, the elements must have the same currents.<br>
+     * The voltages aren't compared, the bridge nodes float when all diodes are off, so any voltage is a solution with 1e-12 S.
+     * @param configure change the method of the second circuit, before it's compiled.
+     * @return the default and the configured circuit, after the simulation.
+     */
+    public static Circuit[] compareCurrents(Supplier<Circuit> provider, Consumer<Circuit> configure, double time){
+        final Circuit[] circuits = compile(provider, configure);
+        compareElements(circuits[0], circuits[1], time, 1e-3, false);
+        return circuits;
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
     ////////////////////////////////////////Resistence Tests/////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -134,6 +222,28 @@ class CircuitTest {
         Main.printAllElements(circuit);
     }
 
+    ///A grid of resistors, each node connected to the right and bottom nodes, fed by a voltage source in a corner.
+    static Circuit getGrid(int side){
+        return getGrid(side, new VoltageSource(new Circuit.Pin((short) 0), null, 10));
+    }
+
+    ///A grid of resistors fed by the source, connected to the node 0 (pin address 0).
+    static Circuit getGrid(int side, Element source){
+        Circuit c = new Circuit();
+        Circuit.Pin[] pins = new Circuit.Pin[side * side];
+        for (int i = 0; i < pins.length; i++)
+            pins[i] = new Circuit.Pin((short) i);//unique addresses, so no pin is merged.
+        for (int r = 0; r < side; r++) {
+            for (int col = 0; col < side; col++) {
+                if (col + 1 < side) c.addElement(new Resistor(pins[r * side + col], pins[r * side + col + 1], 1 + r));
+                if (r + 1 < side) c.addElement(new Resistor(pins[r * side + col], pins[(r + 1) * side + col], 1 + col));
+            }
+        }
+        c.addElement(source);
+        c.addElement(new Resistor(pins[pins.length - 1], null, 5));
+        return c;
+    }
+
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
     ///////////////////////////////////////////Dynamic Tests/////////////////////////////////////////////////
     /////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -489,6 +599,34 @@ class CircuitTest {
             double[][] answersFinal = {{50,0,0},{0,0,0},{50,0,0},{0,0,0}};
             new DynamicTest.DynamicData(Circuits.Switches::getPWM_switch, answersInitial, answersFinal, 2).setTickRate(0.005).test();
         }
+
+        @Test
+        @Order(3)
+        void testLowRankUpdate() {
+            //the same PWM, updating the factorization and factorizing again in each toggle.
+            Circuit updated = Circuits.Switches.getPWM_switch();
+            Circuit factorized = Circuits.Switches.getPWM_switch();
+            factorized.setMaxUpdateRank(0);
+            updated.setTickRate(0.005);
+            factorized.setTickRate(0.005);
+            updated.preCompile();
+            factorized.preCompile();
+
+            MatrixBuilder builder = updated.getMatrixBuilder();
+            for (int i = 0; i < 400; i++) {
+                updated.tick();
+                factorized.tick();
+                double[][] expected = factorized.getX(), got = updated.getX();
+                for (int j = 0; j < expected.length; j++)
+                    assertTrue(abs(expected[j][0] - got[j][0]) <= 1e-9 * Math.max(1, abs(expected[j][0])), createExpectedXReceivedMsg("X[%d]".formatted(j), expected[j][0], got[j][0]));
+            }
+
+            //the matrix isn't rebuilt, and the switch returns to the factorized value in each two toggles.
+            assertSame(builder, updated.getMatrixBuilder());
+            assertTrue(builder.getLowRankUpdates() >= 399);
+            assertEquals(1, builder.getFactorizations());
+            assertTrue(factorized.getMatrixBuilder().getFactorizations() >= 400);
+        }
     }
 
     @Nested
@@ -625,4 +763,1116 @@ class CircuitTest {
             Main.printAllElements(c);
         }
     }
-}
\ No newline at end of file
+
+    @Nested
+    @Order(7)
+    class Storage {
+        ///Simulate the same circuit with a dense and a sparse matrix, the X matrix must be the same.
+        private void compare(Supplier<Circuit> provider, double time){
+            compare(provider, time, 1e-9);
+        }
+
+        private void compare(Supplier<Circuit> provider, double time, double tolerance){
+            final Circuit sparse = compareX(() -> {
+                Circuit c = provider.get();
+                c.setStorage(Matrix.Storage.DENSE);
+                //same order, so X can be compared by index.
+                c.setOrdering(Matrix.Ordering.MINIMUM_DEGREE);
+                return c;
+            }, c -> {
+                c.setStorage(Matrix.Storage.SPARSE);
+                //the small circuits are too dense to select the sparse LU.
+                c.setSolverBackend(LinearSolver.Backend.SPARSE_LU);
+            }, time, tolerance)[1];
+            assertTrue(sparse.getMatrixBuilder().isSparse());
+        }
+
+        @Test
+        void testResistors(){
+            compare(Circuits.Resistors::getCircuit4, 0.5);
+            compare(Circuits.CurrentControlledCurrentSources::getCCVSWithResistors, 0.5);
+            compare(Circuits.CurrentControlledCurrentSources::getVCVSWithResistors, 0.5);
+        }
+
+        @Test
+        void testDynamics(){
+            compare(Circuits.Capacitors::getMultiplesCapacitorsCircuit, 5);
+            compare(Circuits.RLC::getParallel, 3);
+            compare(Circuits.Relays::getPwmWithSquareWaveSource, 3);
+        }
+
+        @Test
+        void testNonLinear(){
+            //the Newton iterations stop in a tolerance, so the rounding can change the result a little.
+            compare(Circuits.Diodes::getFullHaveRectifier, 0.5, 1e-3);
+            compare(Circuits.BJT::getNPNCircuit, 0.5, 1e-3);
+        }
+
+        @Test
+        void testSymbolicAnalysisReuse(){
+            Circuit c = Circuits.Diodes.getFullHaveRectifier();
+            c.setStorage(Matrix.Storage.SPARSE);
+            c.setSolverBackend(LinearSolver.Backend.SPARSE_LU);
+            c.setTickRate(0.005);
+            c.preCompile();
+            c.tick(0.5);
+
+            //only when a diode changes the state a new pivot order may be needed.
+            SparseLU lu = c.getMatrixBuilder().getSparseLU();
+            assertTrue(lu.getFactorizations() * 10 < lu.getRefactorizations());
+        }
+
+        @Test
+        void testOrdering(){
+            Circuit natural = getGrid(15);
+            Circuit ordered = getGrid(15);
+            natural.setStorage(Matrix.Storage.SPARSE);
+            natural.setOrdering(Matrix.Ordering.NATURAL);
+            ordered.setStorage(Matrix.Storage.SPARSE);
+            natural.preCompile();
+            ordered.preCompile();
+
+            assertTrue(ordered.getFillRatio() < natural.getFillRatio());
+            assertTrue(ordered.getMatrixBuilder().getSparseLU().getFactorEntries() < natural.getMatrixBuilder().getSparseLU().getFactorEntries());
+
+            //the order only changes the addresses, not the values.
+            Element[] a = natural.getElements(), b = ordered.getElements();
+            for (int i = 0; i < a.length; i++) {
+                assertTrue(abs(a[i].getCurrent() - b[i].getCurrent()) < 1e-9, createExpectedXReceivedMsg("I", a[i].getCurrent(), b[i].getCurrent()));
+                assertTrue(abs(a[i].getVoltageDifference() - b[i].getVoltageDifference()) < 1e-9, createExpectedXReceivedMsg("V", a[i].getVoltageDifference(), b[i].getVoltageDifference()));
+            }
+        }
+
+        @Test
+        void testAutoStorage(){
+            Circuit small = Circuits.Resistors.getCircuit0();
+            small.preCompile();
+            assertFalse(small.getMatrixBuilder().isSparse());
+
+            Circuit ladder = new Circuit();
+            VoltageSource v = new VoltageSource(new Circuit.Pin((short) 0), null, 10);
+            ladder.addElement(v);
+            Circuit.Pin last = v.getPinA();
+            for (int i = 0; i < Matrix.Storage.SPARSE_THRESHOLD; i++) {
+                Resistor r = new Resistor(last, new Circuit.Pin((short) (i + 1)), 1);
+                ladder.addElement(r);
+                last = r.getPinB();
+            }
+            ladder.addElement(new Resistor(last, null, 1));
+            ladder.preCompile();
+            assertTrue(ladder.getMatrixBuilder().isSparse());
+            assertTrue(CircuitTest.equals(v.getCurrent(), -10.0 / (Matrix.Storage.SPARSE_THRESHOLD + 1)));
+        }
+    }
+
+    @Nested
+    @Order(8)
+    class Allocation {
+        ///The consecutive windows of 1000 ticks without allocation, after the warm-up.
+        private static final int CLEAN_WINDOWS = 3;
+
+        ///Tick the circuit until all work arrays are allocated, so the next ticks can't allocate.
+        private void assertNoAllocation(Supplier<Circuit> provider, Matrix.Storage storage){
+            Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            Assumptions.assumeTrue(bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled());
+
+            Circuit c = provider.get();
+            c.setStorage(storage);
+            c.preCompile();
+            for (int i = 0; i < 2000; i++)
+                c.tick();
+
+            //a C2 compilation or deoptimization in the window allocates some bytes in this thread, outside the tick code,
+            //so the window is measured again until the compilations settle, and the last windows must all be clean.
+            //An allocation that only happens in some ticks, like a rare branch, is in one of them.
+            bean.getCurrentThreadAllocatedBytes();
+            long allocated = 0;
+            int clean = 0;
+            for (int window = 0; window < 20; window++) {
+                final long before = bean.getCurrentThreadAllocatedBytes();
+                for (int i = 0; i < 1000; i++)
+                    c.tick();
+                allocated = bean.getCurrentThreadAllocatedBytes() - before;
+                clean = allocated == 0 ? clean + 1 : 0;
+                if (clean == CLEAN_WINDOWS)
+                    return;
+            }
+            assertEquals(0, allocated, "%d bytes allocated in 1000 ticks with %s storage, %d clean windows in a row!".formatted(allocated, storage, clean));
+            fail("only %d clean windows of 1000 ticks in a row with %s storage!".formatted(clean, storage));
+        }
+
+        private void assertNoAllocation(Supplier<Circuit> provider){
+            assertNoAllocation(provider, Matrix.Storage.DENSE);
+            assertNoAllocation(provider, Matrix.Storage.SPARSE);
+        }
+
+        @Test
+        void testLinear(){
+            assertNoAllocation(Circuits.Resistors::getCircuit4);
+            assertNoAllocation(Circuits.RLC::getParallel);
+        }
+
+        @Test
+        void testOperational(){
+            assertNoAllocation(Circuits.Switches::getPWM_switch);
+            assertNoAllocation(Circuits.Relays::getPwmWithSquareWaveSource);
+        }
+
+        @Test
+        void testNonLinear(){
+            assertNoAllocation(Circuits.Diodes::getFullHaveRectifier);
+            assertNoAllocation(Circuits.BJT::getNPNCircuit);
+        }
+
+        @Test
+        void testAutoBackend(){
+            //a dense symmetric matrix with more than 64 rows, the backend is chosen by AUTO.
+            assertNoAllocation(() -> getGrid(9, new CurrentSource(new Circuit.Pin((short) 0), null, 1)), Matrix.Storage.AUTO);
+        }
+    }
+
+    @Nested
+    @Order(9)
+    class Condensation {
+        ///Simulate the same circuit with and without condensation, the X matrix must be the same.
+        private void compare(Supplier<Circuit> provider, double time, double tolerance){
+            final Circuit condensed = compareX(provider, c -> c.setCondensed(true), time, tolerance)[1];
+            assertTrue(condensed.getMatrixBuilder().isCondensed());
+        }
+
+        @Test
+        void testLinear(){
+            compare(Circuits.Resistors::getCircuit4, 0.5, 1e-9);
+            compare(Circuits.Capacitors::getMultiplesCapacitorsCircuit, 5, 1e-9);
+            compare(Circuits.RLC::getParallel, 3, 1e-9);
+        }
+
+        @Test
+        void testOperational(){
+            //the open switch resistance is huge, so the rounding of the two factorizations is different.
+            compare(Circuits.Switches::getPWM_switch, 3, 1e-6);
+            compare(Circuits.Relays::getPwmWithSquareWaveSource, 3, 1e-6);
+        }
+
+        @Test
+        void testNonLinear(){
+            //the Newton iterations stop in a tolerance, so the rounding can change the result a little.
+            compare(Circuits.Diodes::getFullHaveRectifier, 0.5, 1e-3);
+            compare(Circuits.BJT::getNPNCircuit, 0.5, 1e-3);
+        }
+
+        @Test
+        void testResistiveNetworkWithDiode(){
+            final int side = 15;
+            Supplier<Circuit> provider = () -> {
+                Circuit c = getGrid(side);
+                //a diode from the middle of the grid to the ground, the pin is merged with the grid node.
+                c.addElement(new Diode(new Circuit.Pin((short) (side * side / 2)), null));
+                return c;
+            };
+            compare(provider, 0.5, 1e-3);
+
+            Circuit c = provider.get();
+            c.setCondensed(true);
+            c.setStorage(Matrix.Storage.SPARSE);
+            c.preCompile();
+            //only the diode node is active.
+            assertEquals(1, c.getMatrixBuilder().getSchurComplement().getActiveSize());
+        }
+
+        @Test
+        void testDisabled(){
+            Circuit c = Circuits.Resistors.getCircuit4();
+            c.preCompile();
+            assertFalse(c.getMatrixBuilder().isCondensed());
+        }
+    }
+
+    @Nested
+    @Order(10)
+    class Reduction {
+        ///Simulate the same circuit with and without reduction, all elements must have the same values.
+        private void compare(Supplier<Circuit> provider, double time, double tolerance){
+            //the eliminated nodes aren't in X, so the elements are compared.
+            final Circuit[] circuits = compile(provider, c -> c.setReduced(true));
+            compareElements(circuits[0], circuits[1], time, tolerance, true);
+        }
+
+        ///The series ladder of {@link CircuitBenchmark}.
+        private Circuit getLadder(int size, Resistor[] resistors){
+            Circuit c = new Circuit();
+            VoltageSource v = new VoltageSource(new Circuit.Pin((short) 0), null, size);
+            c.addElement(v);
+            Circuit.Pin last = v.getPinA();
+            for (int i = 0; i < size; i++) {
+                resistors[i] = new Resistor(last, i == size - 1 ? null : new Circuit.Pin((short) (i + 1)), 1);
+                c.addElement(resistors[i]);
+                last = resistors[i].getPinB();
+            }
+            return c;
+        }
+
+        @Test
+        void testLadder(){
+            final int size = 800;
+            Resistor[] resistors = new Resistor[size];
+            Circuit c = getLadder(size, resistors);
+            c.setReduced(true);
+            c.preCompile();
+            c.tick();
+
+            //only the voltage source node and current are left.
+            assertEquals(size - 1, c.getEliminatedNodes());
+            assertEquals(2, c.getX().length);
+            for (int i = 0; i < size; i++) {
+                assertTrue(CircuitTest.equals(resistors[i].getCurrent(), 1), createExpectedXReceivedMsg("I", 1, resistors[i].getCurrent()));
+                assertTrue(CircuitTest.equals(resistors[i].getPinA().P_voltage[0], size - i), createExpectedXReceivedMsg("V", size - i, resistors[i].getPinA().P_voltage[0]));
+            }
+        }
+
+        @Test
+        void testWatchedResistor(){
+            final int size = 10;
+            Resistor[] resistors = new Resistor[size];
+            Circuit c = getLadder(size, resistors);
+            resistors[4].watch(c, r -> {});
+            c.setReduced(true);
+            c.preCompile();
+            //the watched resistor splits the chain, so its two nodes are kept.
+            assertEquals(size - 3, c.getEliminatedNodes());
+            assertTrue(CircuitTest.equals(resistors[4].getCurrent(), 1));
+        }
+
+        @Test
+        void testResistors(){
+            compare(Circuits.Resistors::getCircuit0, 0.5, 1e-9);
+            compare(Circuits.Resistors::getCircuit4, 0.5, 1e-9);
+            compare(() -> getGrid(8), 0.5, 1e-9);
+        }
+
+        @Test
+        void testMixed(){
+            compare(Circuits.RLC::getParallel, 3, 1e-9);
+            compare(Circuits.Diodes::getFullHaveRectifier, 0.5, 1e-3);
+            compare(Circuits.Relays::getPwmWithSquareWaveSource, 3, 1e-6);
+            //a ladder with a capacitor and a diode in the middle, the chains between them are reduced.
+            compare(() -> {
+                Circuit c = getLadder(30, new Resistor[30]);
+                c.addElement(new Capacitor(new Circuit.Pin((short) 10), null, 0.01));
+                c.addElement(new Diode(new Circuit.Pin((short) 20), null));
+                return c;
+            }, 1, 1e-3);
+        }
+    }
+
+    @Nested
+    @Order(11)
+    class Solvers {
+        @Test
+        void testSelection(){
+            Circuit small = Circuits.Resistors.getCircuit4();
+            small.preCompile();
+            assertEquals(LinearSolver.Backend.DENSE_LU, small.getSelectedBackend());
+
+            Circuit grid = getGrid(15);
+            grid.preCompile();
+            assertEquals(LinearSolver.Backend.SPARSE_LU, grid.getSelectedBackend());
+            assertTrue(grid.getMatrixBuilder().getSolver() instanceof SparseLU);
+
+            //only conductances and a current source, a symmetric positive definite matrix still uses the allocation free LU.
+            Circuit symmetric = getGrid(9, new CurrentSource(new Circuit.Pin((short) 0), null, 1));
+            symmetric.setStorage(Matrix.Storage.DENSE);
+            symmetric.preCompile();
+            assertEquals(LinearSolver.Backend.DENSE_LU, symmetric.getSelectedBackend());
+            symmetric.setSolverBackend(LinearSolver.Backend.COMMONS_CHOLESKY);
+            symmetric.preCompile();
+            assertEquals(LinearSolver.Backend.COMMONS_CHOLESKY, symmetric.getSelectedBackend());
+        }
+
+        @Test
+        void testOverride(){
+            for (LinearSolver.Backend backend : new LinearSolver.Backend[]{LinearSolver.Backend.COMMONS_LU, LinearSolver.Backend.COMMONS_QR, LinearSolver.Backend.COMMONS_CHOLESKY}) {
+                final Circuit[] circuits = compile(Circuits.Diodes::getFullHaveRectifier, c -> c.setSolverBackend(backend));
+                assertEquals(backend, circuits[1].getSelectedBackend());
+                compareX(circuits[0], circuits[1], 20 * circuits[0].getTickRate(), 1e-3);
+            }
+        }
+    }
+
+    @Nested
+    @Order(12)
+    class Chord {
+        ///Simulate the same circuit with full and chord Newton, see {@link CircuitTest#compareCurrents(Supplier, Consumer, double)}.
+        private void compare(Supplier<Circuit> provider, double time){
+            final Circuit[] circuits = compareCurrents(provider, c -> c.setChordRate(0.5), time);
+            final Circuit newton = circuits[0], chord = circuits[1];
+            assertTrue(chord.getSavedFactorizations() > 0);
+            assertTrue(chord.getMatrixBuilder().getFactorizations() <= newton.getMatrixBuilder().getFactorizations());
+        }
+
+        @Test
+        void testNonLinear(){
+            compare(Circuits.Diodes::getFullHaveRectifier, 0.5);
+            compare(Circuits.BJT::getNPNCircuit, 0.5);
+        }
+
+        @Test
+        void testFullNewton(){
+            Circuit c = Circuits.Diodes.getFullHaveRectifier();
+            assertEquals(Circuit.DEFAULT_CHORD_RATE, c.getChordRate());
+            c.preCompile();
+            c.tick(0.5);
+            assertEquals(0, c.getSavedFactorizations());
+            assertThrows(IllegalArgumentException.class, () -> c.setChordRate(1));
+        }
+    }
+
+    @Nested
+    @Order(13)
+    class Bypass {
+        @Test
+        void testBypass(){
+            final Circuit[] circuits = compareX(Circuits.Diodes::getFullHaveRectifier, c -> c.setBypassTolerance(1e-6), 0.5, 1e-6);
+            final Circuit exact = circuits[0], bypassed = circuits[1];
+            //the same voltages are always bypassed, like the evaluation of the Jacobian in the point of the last f(x).
+            assertTrue(exact.getBypassRate() > 0);
+            assertTrue(bypassed.getBypassRate() > exact.getBypassRate());
+        }
+    }
+
+    @Nested
+    @Order(14)
+    class Predictor {
+        @Test
+        void testPredictor(){
+            final Circuit[] circuits = compile(() -> {
+                Circuit c = Circuits.Diodes.getVoltageMultiplayer();
+                //each start point stops in a different point inside the convergence tolerances.
+                c.setTolerances(1e-6, Circuit.DEFAULT_VOLTAGE_TOLERANCE, Circuit.DEFAULT_CURRENT_TOLERANCE);
+                return c;
+            }, c -> c.setPredictorOrder(2));
+            final Circuit last = circuits[0], predicted = circuits[1];
+            final long lastStart = last.getNewtonIterations(), predictedStart = predicted.getNewtonIterations();
+
+            compareX(last, predicted, 0.5, 1e-6);
+            //the predicted start is still solved by Newton.
+            assertTrue(predicted.getLastIterations() > 0);
+            assertTrue(predicted.getNewtonIterations() - predictedStart < last.getNewtonIterations() - lastStart);
+            assertThrows(IllegalArgumentException.class, () -> last.setPredictorOrder(Circuit.MAX_PREDICTOR_ORDER + 1));
+        }
+    }
+
+    @Nested
+    @Order(15)
+    class Convergence {
+        @Test
+        void testJunctionLimit(){
+            final double vt = 0.025852, critical = NonLinear.criticalVoltage(vt, Diode.DEFAULT_SATURATION);
+            //a big step above the critical voltage follows the logarithm.
+            final double limited = NonLinear.limitJunction(5, 0.6, vt, critical);
+            assertTrue(limited > 0.6 && limited < 0.6 + 10 * vt);
+            //from a reverse biased junction.
+            assertTrue(NonLinear.limitJunction(5, -1, vt, critical) < 1);
+            //small steps, and steps below the critical voltage, aren't limited.
+            assertEquals(0.61, NonLinear.limitJunction(0.61, 0.6, vt, critical));
+            assertEquals(-10, NonLinear.limitJunction(-10, 0.6, vt, critical));
+        }
+
+        @Test
+        void testTolerances(){
+            for (double relative : new double[]{Circuit.DEFAULT_RELATIVE_TOLERANCE, 1e-9}) {
+                var c = Circuits.BJT.getNPNCircuit();
+                ((VoltageSource) c.getElements()[1]).setSourceVoltage(5);
+                c.setTolerances(relative, 1e-9, 1e-12);
+                c.preCompile();
+                //the emissor current of the BJT flows in the load, both converged with the relative tolerance.
+                final double emissor = c.getElements()[2].getCurrent(), load = c.getElements()[4].getCurrent();
+                assertTrue(abs(emissor - load) <= 10 * relative * abs(load), createExpectedXReceivedMsg("Emissor current", load, emissor));
+            }
+            assertThrows(IllegalArgumentException.class, () -> new Circuit().setTolerances(-1, 1e-6, 1e-12));
+        }
+    }
+
+    @Nested
+    @Order(16)
+    class Bank {
+        ///A full wave rectifier, like {@link Circuits.Diodes#getFullHaveRectifier()}, with the diodes of the supplier.
+        private Circuit rectifier(Supplier<Diode> diode){
+            Circuit c = new Circuit();
+            ACVoltageSource v = new ACVoltageSource(12, 5);
+            Diode d00 = diode.get(), d01 = diode.get(), d10 = diode.get(), d11 = diode.get();
+            Capacitor ka = new Capacitor(0.5);
+            Resistor r = new Resistor(2);
+            c.addElement(v, d00, d01, d10, d11, ka, r);
+            ka.connectB(null);
+            d00.connect(v.getPinA(), ka.getPinA());
+            d01.connect(ka.getPinB(), v.getPinA());
+            d10.connect(v.getPinB(), ka.getPinA());
+            d11.connect(ka.getPinB(), v.getPinB());
+            r.connect(ka.getPinA(), ka.getPinB());
+            return c;
+        }
+
+        ///The banked diodes must have the same currents of the diodes evaluated one by one, a subclass isn't banked.
+        @Test
+        void testSameResult(){
+            Circuit banked = rectifier(Diode::new);
+            Circuit single = rectifier(() -> new Diode() {});
+            banked.preCompile();
+            single.preCompile();
+
+            compareElements(single, banked, 0.25, 1e-6, false);
+            //the model change must reach the bank.
+            ((Diode) banked.getElements()[1]).setSaturation(1e-9);
+            ((Diode) single.getElements()[1]).setSaturation(1e-9);
+            compareElements(single, banked, 0.25, 1e-6, false);
+        }
+    }
+
+    @Nested
+    @Order(17)
+    class Parallel {
+        ///Many resistor and diode branches, half of the diodes are banked.
+        ///The pins have sequential addresses, the random ones of many pins can be equal and merged.
+        private Circuit branches(int count){
+            Circuit c = new Circuit();
+            ACVoltageSource v = new ACVoltageSource(12, 5);
+            Circuit.Pin in = new Circuit.Pin((short) 0);
+            v.connect(in, null);
+            c.addElement(v);
+            for (int k = 0; k < count; k++) {
+                Resistor r = new Resistor(k + 1);
+                Diode d = k % 2 == 0 ? new Diode() : new Diode() {};
+                Circuit.Pin node = new Circuit.Pin((short) (k + 1));
+                r.connect(in, node);
+                d.connect(node, null);
+                c.addElement(r, d);
+            }
+            return c;
+        }
+
+        @Test
+        void testBitIdentical(){
+            Circuit sequential = branches(256);
+            Circuit parallel = branches(256);
+            //a own pool, so the count of stripes doesn't depend on the cores of the host.
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                parallel.setParallelPool(pool);
+                parallel.setParallelThreshold(1);
+                sequential.preCompile();
+                parallel.preCompile();
+                assertTrue(parallel.isParallel());
+                assertFalse(sequential.isParallel());
+
+                for (int i = 0; i < 200; i++) {
+                    sequential.tick();
+                    parallel.tick();
+                    double[][] a = sequential.getX(), b = parallel.getX();
+                    for (int j = 0; j < a.length; j++)
+                        assertEquals(a[j][0], b[j][0], "X[%d] isn't bit-identical!".formatted(j));
+                }
+                assertEquals(sequential.getNewtonIterations(), parallel.getNewtonIterations());
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        @Test
+        void testThreshold(){
+            Circuit c = branches(8);
+            c.setParallelThreshold(9);
+            c.preCompile();
+            assertFalse(c.isParallel());
+            assertThrows(IllegalArgumentException.class, () -> c.setParallelThreshold(-1));
+        }
+    }
+
+    @Nested
+    @Order(18)
+    class Residual {
+        ///Write the values in the pins, like the circuit does before each f(x).
+        private void inject(Circuit c, double[] x){
+            for (Element e : c.getElements())
+                for (Circuit.Pin pin : e.getPins())
+                    if (pin != null)
+                        pin.P_voltage[0] = x[pin.address];
+        }
+
+        ///The points of the line search, interpolated from the products of the start and the full step, are the same of a full f(x).
+        @Test
+        void testLine(){
+            Circuit c = Circuits.Diodes.getFullHaveRectifier();
+            c.preCompile();
+            for (int i = 0; i < 10; i++)
+                c.tick();
+            List<NonLinear> nonLinear = new ArrayList<>();
+            for (Element e : c.getElements())
+                if (e instanceof NonLinear n)
+                    nonLinear.add(n);
+            NonLinearHelper nl = new NonLinearHelper(c.getMatrixBuilder(), nonLinear);
+
+            final double[][] X = c.getX();
+            final int size = X.length;
+            double[] x = new double[size], dx = new double[size], t = new double[size];
+            double[] line = new double[size], full = new double[size];
+            for (int i = 0; i < size; i++) {
+                x[i] = X[i][0];
+                dx[i] = (i % 2 == 0 ? 0.3 : -0.2) * (i + 1);
+            }
+
+            inject(c, x);
+            nl.f(x, full);
+            nl.startLine();
+            for (int i = 0; i < size; i++)
+                t[i] = x[i] - dx[i];
+            inject(c, t);
+            nl.f(t, full);
+            for (double a = 0.5; a > 1e-3; a /= 2) {
+                for (int i = 0; i < size; i++)
+                    t[i] = x[i] - a * dx[i];
+                inject(c, t);
+                nl.fLine(a, line);
+                nl.f(t, full);
+                for (int i = 0; i < size; i++)
+                    assertEquals(full[i], line[i], 1e-9 * Math.max(1, abs(full[i])), "f[%d] with a = %f".formatted(i, a));
+            }
+        }
+    }
+
+    @Nested
+    @Order(19)
+    class Broyden {
+        ///Simulate the same circuit with Newton and Broyden, see {@link CircuitTest#compareCurrents(Supplier, Consumer, double)}.
+        private void compare(Supplier<Circuit> provider, double time){
+            final Circuit broyden = compareCurrents(provider, c -> c.setNonLinearMethod(Circuit.NonLinearMethod.BROYDEN), time)[1];
+            assertTrue(broyden.getSavedFactorizations() > 0);
+        }
+
+        @Test
+        void testNonLinear(){
+            compare(Circuits.Diodes::getFullHaveRectifier, 0.5);
+            compare(Circuits.BJT::getNPNCircuit, 0.5);
+        }
+
+        @Test
+        void testUpdate(){
+            //the secant equation, the updated inverse maps the change of f to the step.
+            BroydenUpdate update = new BroydenUpdate(3, 2);
+            double[] step = {1, 2, -1}, z = {0.5, 1, 1};
+            assertTrue(update.update(step, z));
+            update.correct(z);
+            for (int i = 0; i < 3; i++)
+                assertEquals(step[i], z[i], 1e-12);
+            //orthogonal step and z.
+            assertFalse(update.update(new double[]{1, 0, 0}, new double[]{0, 1, 0}));
+            assertEquals(Circuit.NonLinearMethod.NEWTON, new Circuit().getNonLinearMethod());
+        }
+    }
+
+    @Nested
+    @Order(20)
+    class JFNK {
+        ///Simulate the same circuit with Newton and JFNK, see {@link CircuitTest#compareCurrents(Supplier, Consumer, double)}.
+        private void compare(Supplier<Circuit> provider, double time){
+            final Circuit krylov = compareCurrents(provider, c -> c.setNonLinearMethod(Circuit.NonLinearMethod.JFNK), time)[1];
+            assertTrue(krylov.getKrylovIterations() > 0);
+        }
+
+        @Test
+        void testNonLinear(){
+            compare(Circuits.Diodes::getFullHaveRectifier, 0.5);
+            compare(Circuits.BJT::getNPNCircuit, 0.5);
+        }
+
+        @Test
+        void testGMRES(){
+            //a non-symmetric matrix, without preconditioner.
+            final double[][] a = {{4, 1, 0}, {2, 5, 1}, {0, -1, 3}};
+            final double[] expected = {1, -2, 0.5};
+            final double[] b = new double[3];
+            for (int i = 0; i < 3; i++)
+                for (int j = 0; j < 3; j++)
+                    b[i] += a[i][j] * expected[j];
+
+            GMRES gmres = new GMRES(3, 2);
+            final double[] x = new double[3];
+            assertTrue(gmres.solve((v, result) -> {
+                for (int i = 0; i < 3; i++) {
+                    result[i] = 0;
+                    for (int j = 0; j < 3; j++)
+                        result[i] += a[i][j] * v[j];
+                }
+            }, (rhs, result) -> System.arraycopy(rhs, 0, result, 0, 3), b, x, 1e-12, 50));
+            for (int i = 0; i < 3; i++)
+                assertEquals(expected[i], x[i], 1e-9);
+            //restarted, more products than the restart.
+            assertTrue(gmres.getIterations() > gmres.getRestart());
+        }
+    }
+
+    @Nested
+    @Order(21)
+    class Adaptive {
+        @Test
+        void testRcCircuit(){
+            Circuit fixed = Circuits.Capacitors.getRcCircuit();
+            Circuit adaptive = Circuits.Capacitors.getRcCircuit();
+            fixed.setTickRate(1e-4);
+            adaptive.setTickRate(1e-4);
+            adaptive.setAdaptive(true);
+            fixed.preCompile();
+            adaptive.preCompile();
+
+            int ticks = 0;
+            while (adaptive.getTime() < 0.1) {
+                adaptive.tick();
+                ticks++;
+                final double expected = 10 * (1 - Math.exp(-adaptive.getTime() / 0.01));
+                final double got = adaptive.getElements()[2].getVoltageDifference();
+                assertTrue(abs(expected - got) < 0.1, createExpectedXReceivedMsg("Capacitor voltage at %fs".formatted(adaptive.getTime()), expected, got));
+            }
+            fixed.tick(0.1);
+            assertTrue(ticks * 10 < 0.1 / fixed.getTickRate(), "Adaptive used %d ticks".formatted(ticks));
+            assertEquals(adaptive.getTime(), 0.1, adaptive.getLastStep());
+        }
+
+        @Test
+        void testRejected(){
+            //the oscillation starts with a big step, so it is rejected.
+            Circuit fixed = Circuits.RLC.getSeries();
+            Circuit adaptive = Circuits.RLC.getSeries();
+            fixed.setTickRate(1e-4);
+            adaptive.setTickRate(0.01);
+            adaptive.setAdaptive(true);
+            adaptive.setStepLimits(1e-6, 0.05);
+            fixed.preCompile();
+            adaptive.preCompile();
+
+            fixed.tick(1);
+            adaptive.tick(1);
+            assertTrue(adaptive.getRejectedSteps() > 0);
+            assertTrue(adaptive.getTickRate() <= 0.05);
+            final double expected = fixed.getElements()[2].getVoltageDifference();
+            final double got = adaptive.getElements()[2].getVoltageDifference();
+            assertEquals(expected, got, 0.2);
+        }
+
+        ///The steps of an adaptive run until 1s.
+        private int steps(Circuit.IntegrationMethod method){
+            Circuit c = Circuits.RLC.getSeries();
+            c.setTickRate(1e-4);
+            c.setIntegrationMethod(method);
+            c.setAdaptive(true);
+            c.setStepLimits(1e-6, 0.05);
+            c.preCompile();
+            int ticks = 0;
+            while (c.getTime() < 1) {
+                c.tick();
+                ticks++;
+            }
+            return ticks;
+        }
+
+        @Test
+        void testSecondOrder(){
+            //the same tolerance allows bigger steps to a second order method.
+            final int euler = steps(Circuit.IntegrationMethod.BACKWARD_EULER);
+            final int trapezoidal = steps(Circuit.IntegrationMethod.TRAPEZOIDAL);
+            assertTrue(trapezoidal < euler, "Trapezoidal used %d steps, backward Euler %d".formatted(trapezoidal, euler));
+        }
+    }
+
+    @Nested
+    @Order(22)
+    class Integration {
+        ///The max error of the capacitor voltage in the series RLC, against the underdamped solution.
+        private double error(Circuit.IntegrationMethod method, double step){
+            final double alpha = 5, omega = Math.sqrt(1000 - alpha * alpha);
+            Circuit circuit = Circuits.RLC.getSeries();
+            circuit.setTickRate(step);
+            circuit.setIntegrationMethod(method);
+            circuit.preCompile();
+
+            double error = 0;
+            while (circuit.getTime() < 0.5 - 1e-9) {
+                circuit.tick();
+                final double t = circuit.getTime();
+                final double expected = 12 * (1 - Math.exp(-alpha * t) * (Math.cos(omega * t) + alpha / omega * Math.sin(omega * t)));
+                error = Math.max(error, abs(abs(circuit.getElements()[2].getVoltageDifference()) - expected));
+            }
+            return error;
+        }
+
+        @Test
+        void testSecondOrder(){
+            //a 10 times bigger step with a smaller error.
+            final double euler = error(Circuit.IntegrationMethod.BACKWARD_EULER, 1e-3);
+            assertTrue(error(Circuit.IntegrationMethod.TRAPEZOIDAL, 1e-2) < euler);
+            assertTrue(error(Circuit.IntegrationMethod.BDF2, 1e-3) < euler / 10);
+            assertTrue(error(Circuit.IntegrationMethod.TRAPEZOIDAL, 1e-3) < euler / 10);
+        }
+
+        @Test
+        void testSerialization() throws IOException {
+            for (Circuit.IntegrationMethod method : Circuit.IntegrationMethod.values()) {
+                Circuit circuit = Circuits.RLC.getParallel();
+                circuit.setTickRate(1e-3);
+                circuit.setIntegrationMethod(method);
+                circuit.preCompile();
+                for (int i = 0; i < 50; i++)
+                    circuit.tick();
+
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                circuit.serialize(new DataOutputStream(stream));
+                Circuit copy = new Circuit();
+                copy.unSerialize(new DataInputStream(new ByteArrayInputStream(stream.toByteArray())));
+                assertEquals(method, copy.getIntegrationMethod());
+
+                //the copy continues with the same history.
+                for (int i = 0; i < 50; i++) {
+                    circuit.tick();
+                    copy.tick();
+                }
+                final Element[] a = circuit.getElements(), b = copy.getElements();
+                for (int i = 0; i < a.length; i++)
+                    assertEquals(a[i].getCurrent(), b[i].getCurrent(), 1e-9, "Element %d with %s".formatted(i, method));
+            }
+        }
+    }
+
+    @Nested
+    @Order(23)
+    class Breakpoints {
+        @Test
+        void testSquareWave(){
+            //4Hz with 30% duty, the edges aren't in the 50ms grid.
+            CircuitBuilder builder = new CircuitBuilder();
+            Circuit.Pin a = builder.pin(), b = builder.pin();
+            SquareVoltageSource source = new SquareVoltageSource(a, null, 5, 4, 0.3);
+            new Resistor(a, b, 10);
+            new Capacitor(b, null, 0.01);
+            Circuit circuit = builder.close();
+            circuit.setTickRate(0.05);
+            circuit.setBreakpoints(true);
+            circuit.preCompile();
+
+            List<Double> times = new ArrayList<>();
+            while (circuit.getTime() < 1) {
+                circuit.tick();
+                times.add(circuit.getTime());
+                assertTrue(circuit.getLastStep() <= 0.05 + 1e-12);
+                //the level is the one of the whole step.
+                final double middle = (circuit.getTime() - circuit.getLastStep() / 2) % 0.25;
+                assertEquals(middle < 0.075 ? 5 : -5, source.getVoltageDifference(), 1e-12, "Step ended in %fs".formatted(circuit.getTime()));
+            }
+            for (int k = 0; k < 4; k++)
+                for (double edge : new double[]{0.25 * k + 0.075, 0.25 * (k + 1)})
+                    assertTrue(times.stream().anyMatch(t -> abs(t - edge) < 1e-9), "No tick in the edge %fs".formatted(edge));
+        }
+
+        @Test
+        void testSchedule(){
+            Circuit circuit = Circuits.Switches.getSwitchResistence();
+            Switch sw = (Switch) circuit.getElements()[1];
+            circuit.preCompile();
+            circuit.schedule(0.123, () -> sw.setOpen(false));
+
+            while (sw.isOpen()) {
+                assertTrue(circuit.getTime() < 0.123);
+                circuit.tick();
+            }
+            assertEquals(0.123, circuit.getTime(), 1e-12);
+            //the next tick is with the closed switch, and the regular step.
+            final double open = sw.getCurrent();
+            circuit.tick();
+            assertTrue(sw.getCurrent() > open * 1000);
+            assertEquals(circuit.getTickRate(), circuit.getLastStep());
+        }
+    }
+
+    @Nested
+    @Order(24)
+    class OperatingPoint {
+        @Test
+        void testDcOperatingPoint(){
+            CircuitBuilder builder = new CircuitBuilder();
+            Circuit.Pin a = builder.pin(), b = builder.pin(), c = builder.pin();
+            new VoltageSource(a, null, 10);
+            new Resistor(a, b, 1);
+            Capacitor capacitor = new Capacitor(b, null, 0.01);
+            Inductor inductor = new Inductor(b, c, 0.01);
+            new Resistor(c, null, 4);
+            Circuit circuit = builder.close();
+            circuit.setTickRate(1e-3);
+            circuit.setInitialConditions(Circuit.InitialConditions.OPERATING_POINT);
+            circuit.preCompile();
+
+            //the capacitor is open and the inductor is a short, exact in the roundoff and not to the ratio of the penalty conductances.
+            assertEquals(8, capacitor.getVoltageDifference(), 1e-10);
+            assertEquals(0, capacitor.getCurrent(), 1e-12);
+            assertEquals(2, inductor.getCurrent(), 1e-10);
+            assertEquals(0, inductor.getVoltageDifference(), 1e-12);
+            //so the circuit starts in the steady state.
+            circuit.tick(0.1);
+            assertEquals(8, capacitor.getVoltageDifference(), 1e-5);
+            assertEquals(2, inductor.getCurrent(), 1e-5);
+        }
+
+        @Test
+        void testNonLinearOperatingPoint(){
+            //the same circuit without the capacitor and inductor is the exact operating point.
+            CircuitBuilder builder = new CircuitBuilder();
+            Circuit.Pin a = builder.pin(), b = builder.pin(), c = builder.pin(), d = builder.pin();
+            new VoltageSource(a, null, 10);
+            new Resistor(a, b, 1);
+            Capacitor capacitor = new Capacitor(b, null, 0.01);
+            Diode diode = new Diode(b, c);
+            Inductor inductor = new Inductor(c, d, 0.01);
+            new Resistor(d, null, 4);
+            Circuit circuit = builder.close();
+            circuit.setInitialConditions(Circuit.InitialConditions.OPERATING_POINT);
+            circuit.setTolerances(1e-9, Circuit.DEFAULT_VOLTAGE_TOLERANCE, Circuit.DEFAULT_CURRENT_TOLERANCE);
+            circuit.preCompile();
+
+            builder = new CircuitBuilder();
+            a = builder.pin(); b = builder.pin(); c = builder.pin();
+            new VoltageSource(a, null, 10);
+            new Resistor(a, b, 1);
+            Diode reference = new Diode(b, c);
+            new Resistor(c, null, 4);
+            Circuit exact = builder.close();
+            exact.setTolerances(1e-9, Circuit.DEFAULT_VOLTAGE_TOLERANCE, Circuit.DEFAULT_CURRENT_TOLERANCE);
+            exact.preCompile();
+
+            assertEquals(reference.getVoltageDifference(), diode.getVoltageDifference(), 1e-10);
+            assertEquals(reference.getCurrent(), diode.getCurrent(), 1e-10);
+            assertEquals(abs(reference.getCurrent()), inductor.getCurrent(), 1e-10);
+            assertEquals(0, inductor.getVoltageDifference(), 1e-12);
+            assertEquals(0, capacitor.getCurrent(), 1e-12);
+        }
+
+        @Test
+        void testGivenInitialConditions(){
+            CircuitBuilder builder = new CircuitBuilder();
+            Circuit.Pin a = builder.pin(), b = builder.pin();
+            Capacitor capacitor = new Capacitor(a, null, 0.01);
+            new Resistor(a, null, 1);
+            Inductor inductor = new Inductor(b, null, 0.01);
+            new Resistor(b, null, 1);
+            capacitor.setInitialVoltage(5);
+            inductor.setInitialCurrent(2);
+            Circuit circuit = builder.close();
+            circuit.setTickRate(1e-4);
+            circuit.setIntegrationMethod(Circuit.IntegrationMethod.TRAPEZOIDAL);
+            circuit.preCompile();
+
+            assertEquals(5, capacitor.getVoltageDifference());
+            assertEquals(-5, capacitor.getCurrent(), 1e-9);
+            assertEquals(2, inductor.getCurrent(), 1e-12);
+            assertEquals(-2, inductor.getVoltageDifference(), 1e-12);
+            //both decay with the time constant of 10ms.
+            circuit.tick(0.01);
+            final double decay = Math.exp(-circuit.getTime() / 0.01);
+            assertEquals(5 * decay, capacitor.getVoltageDifference(), 1e-4);
+            assertEquals(2 * decay, inductor.getCurrent(), 1e-4);
+        }
+
+        @Test
+        void testSingleFactorization(){
+            //the operating point is solved by low-rank updates of the transient factorization, that is kept to the ticks.
+            for (Circuit.IntegrationMethod method : Circuit.IntegrationMethod.values()) {
+                Circuit circuit = Circuits.Capacitors.getRcCircuit();
+                circuit.setIntegrationMethod(method);
+                circuit.preCompile();
+                circuit.tick(0.5);
+                assertEquals(1, circuit.getMatrixBuilder().getFactorizations(), method.name());
+            }
+        }
+    }
+
+    @Nested
+    @Order(25)
+    class Continuations {
+        private Diode first;
+        private Resistor load;
+
+        ///Diodes in series driven by a current source, the Newton method needs 6 iterations from 0 V.
+        private Circuit diodes(){
+            CircuitBuilder builder = new CircuitBuilder();
+            Circuit.Pin a = builder.pin(), m = builder.pin(), c = builder.pin();
+            new CurrentSource(a, null, 1);
+            first = new Diode(a, m);
+            new Diode(m, c);
+            load = new Resistor(m, null, 100);
+            new Diode(c, null);
+            return builder.close();
+        }
+
+        @Test
+        void testStrategies(){
+            Circuit reference = diodes();
+            reference.preCompile();
+            assertEquals(Circuit.Continuation.NONE, reference.getContinuation());
+            final double voltage = first.getVoltageDifference(), current = load.getCurrent();
+
+            for (Circuit.Continuation strategy : new Circuit.Continuation[]{Circuit.Continuation.GMIN_STEPPING, Circuit.Continuation.SOURCE_STEPPING}) {
+                Circuit circuit = diodes();
+                circuit.setMaxIterations(5);
+                circuit.setContinuations(strategy);
+                circuit.preCompile();
+                assertEquals(strategy, circuit.getContinuation());
+                assertTrue(circuit.getContinuationSteps() > 1);
+                assertEquals(voltage, first.getVoltageDifference(), 1e-6, strategy.name());
+                assertEquals(current, load.getCurrent(), 1e-6, strategy.name());
+                //the gmin is removed, so the transient is the same.
+                circuit.setMaxIterations(Circuit.DEFAULT_MAX_ITERATIONS);
+                circuit.tick();
+                assertEquals(current, load.getCurrent(), 1e-6, strategy.name());
+            }
+        }
+
+        @Test
+        void testWithoutContinuation(){
+            Circuit circuit = diodes();
+            circuit.setMaxIterations(5);
+            circuit.setContinuations();
+            assertThrows(NonConvergenceException.class, circuit::preCompile);
+        }
+
+        @Test
+        void testWrongUseIsNotContinued(){
+            //an error of the element isn't a step that can't converge, so it isn't hidden by the continuations.
+            CircuitBuilder builder = new CircuitBuilder();
+            Circuit.Pin a = builder.pin();
+            new CurrentSource(a, null, 1);
+            new Diode(a, null) {
+                @Override
+                public boolean evaluate(double tolerance) {
+                    throw new IllegalStateException("Wrong use!");
+                }
+            };
+            Circuit circuit = builder.close();
+            IllegalStateException e = assertThrows(IllegalStateException.class, circuit::preCompile);
+            assertEquals("Wrong use!", e.getMessage());
+            assertEquals(Circuit.Continuation.NONE, circuit.getContinuation());
+        }
+    }
+
+    @Nested
+    @Order(26)
+    class StateSpace {
+        private Capacitor capacitor;
+        private Inductor inductor;
+        private Resistor resistor;
+
+        ///A series RLC with a source, underdamped, so the jump must follow the oscillation.
+        private Circuit series(boolean stateSpace){
+            CircuitBuilder builder = new CircuitBuilder();
+            Circuit.Pin a = builder.pin(), b = builder.pin(), c = builder.pin();
+            new VoltageSource(a, null, 12);
+            resistor = new Resistor(a, b, 1);
+            capacitor = new Capacitor(b, c, 0.01);
+            inductor = new Inductor(c, null, 0.1);
+            Circuit circuit = builder.close();
+            circuit.setTickRate(1e-5);
+            circuit.setStateSpace(stateSpace);
+            circuit.preCompile();
+            return circuit;
+        }
+
+        @Test
+        void testJumpIsTheSameTransient(){
+            //the jump counts the steps of the time, without the rounding of the sum of each step.
+            final long steps = Math.round(0.123 / 1e-5);
+            Circuit solved = series(false);
+            final Capacitor solvedCapacitor = capacitor;
+            for (long i = 0; i < steps; i++)
+                solved.tick();
+            final double voltage = capacitor.getVoltageDifference(), current = inductor.getCurrent(), resistorCurrent = resistor.getCurrent();
+
+            Circuit jumped = series(true);
+            jumped.tick(0.123);
+            assertEquals(0, solved.getJumpedSteps());
+            assertEquals(steps - 1, jumped.getJumpedSteps());
+            assertEquals(solved.getTime(), jumped.getTime(), 1e-9);
+            assertEquals(voltage, capacitor.getVoltageDifference(), 1e-8);
+            assertEquals(current, inductor.getCurrent(), 1e-8);
+            assertEquals(resistorCurrent, resistor.getCurrent(), 1e-8);
+
+            //the next ticks continue from the jumped state.
+            for (int i = 0; i < 1000; i++)
+                solved.tick();
+            jumped.tick(0.01);
+            assertEquals(solved.getTime(), jumped.getTime(), 1e-9);
+            assertEquals(solvedCapacitor.getVoltageDifference(), capacitor.getVoltageDifference(), 1e-8);
+            assertEquals(solvedCapacitor.getCurrent(), capacitor.getCurrent(), 1e-8);
+        }
+
+        @Test
+        void testVaryingCircuitIsSolved(){
+            Circuit circuit = Circuits.Capacitors.getRcCircuit();
+            circuit.setStateSpace(true);
+            circuit.setIntegrationMethod(Circuit.IntegrationMethod.TRAPEZOIDAL);
+            circuit.preCompile();
+            circuit.tick(0.5);
+            assertEquals(0, circuit.getJumpedSteps());
+            assertFalse(new Circuit().isStateSpace());
+        }
+    }
+
+    @Nested
+    @Order(27)
+    class Response {
+        private Capacitor capacitor;
+        private Resistor load;
+
+        ///An AC source in a resistor ladder with a capacitor, so only the rows of the source and of the capacitor change.
+        private Circuit ladder(boolean response){
+            CircuitBuilder builder = new CircuitBuilder();
+            Circuit.Pin[] pins = new Circuit.Pin[20];
+            for (int i = 0; i < pins.length; i++)
+                pins[i] = builder.pin();
+            new ACVoltageSource(pins[0], null, 10, 50);
+            for (int i = 1; i < pins.length; i++) {
+                new Resistor(pins[i - 1], pins[i], 10);
+                new Resistor(pins[i], null, 1000);
+            }
+            capacitor = new Capacitor(pins[10], null, 1e-4);
+            load = new Resistor(pins[19], null, 100);
+            Circuit circuit = builder.close();
+            circuit.setTickRate(1e-4);
+            circuit.setIntegrationMethod(Circuit.IntegrationMethod.TRAPEZOIDAL);
+            circuit.setResponse(response);
+            circuit.preCompile();
+            return circuit;
+        }
+
+        @Test
+        void testSameResult(){
+            Circuit solved = ladder(false);
+            final Capacitor solvedCapacitor = capacitor;
+            final Resistor solvedLoad = load;
+            Circuit responded = ladder(true);
+            assertTrue(responded.getMatrixBuilder().isResponse());
+
+            for (int i = 0; i < 300; i++) {
+                solved.tick();
+                responded.tick();
+                assertEquals(solvedCapacitor.getVoltageDifference(), capacitor.getVoltageDifference(), 1e-9);
+                assertEquals(solvedLoad.getCurrent(), load.getCurrent(), 1e-9);
+            }
+            //the trapezoidal coefficient changes after the first step, so the colums are solved in the new LHS.
+            assertEquals(solved.getMatrixBuilder().getFactorizations(), responded.getMatrixBuilder().getFactorizations());
+        }
+
+        @Test
+        void testNonLinearIsSolved(){
+            Circuit circuit = Circuits.Diodes.getSeriesDiode();
+            circuit.setResponse(true);
+            circuit.preCompile();
+            assertFalse(circuit.getMatrixBuilder().isResponse());
+        }
+    }
+}
@@ -14,6 +14,9 @@ import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
 public class SerializationTest {
     public static Consumer<Element> getIfFails(Circuit expected, Circuit value){
         return broken -> {
@@ -112,4 +115,42 @@ public class SerializationTest {
         System.out.println("-".repeat(30));
         Main.printAllElements(circuit1);
     }
+
+    @Test
+    void serializeBaseline() throws IOException {
+        //the series RLC after 20 ticks, written before the serial version, so without the integrators.
+        final byte[] bytes = java.util.Base64.getDecoder().decode(
+                "P6mZmZmZmZoAAAAEQCgAAAAAAABAKAAAYwpOsj7hUoK6vJJJPsjCk6yAAAAAAAAEAQAAAAQAAAAAAAEAAAEAAEAoAAAAAAAAAAgAAAABAQACAAE/8AAAAAAAAAAJAAAAAQIAAwACP4R64UeuFHvAAzM0MN4jmcAn//9N4iMGPsjCk6yAAAAACgAAAAEDAAMAAD+5mZmZmZmavsjCk6x3cLA=");
+        Circuit circuit = new Circuit();
+        circuit.unSerialize(new DataInputStream(new ByteArrayInputStream(bytes)));
+        assertEquals(0.05, circuit.getTickRate());
+        assertEquals(Circuit.IntegrationMethod.BACKWARD_EULER, circuit.getIntegrationMethod());
+        Element[] elements = circuit.getElements();
+        assertEquals(4, elements.length);
+        assertEquals(-11.999994691710082, elements[2].getVoltageDifference(), 1e-12);
+
+        //the next tick of the circuit that wrote the stream.
+        circuit.tick();
+        final double[][] expected = {{12, 7.437122451214861E-8}, {7.43712238460148E-8, 7.43712238460148E-8},
+                {-11.999994319853961, 7.437122429010401E-8}, {5.7545172632725695E-6, -7.437122421112454E-8}};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i][0], elements[i].getVoltageDifference(), 1e-12, "Voltage of element %d".formatted(i));
+            assertEquals(expected[i][1], elements[i].getCurrent(), 1e-12, "Current of element %d".formatted(i));
+        }
+    }
+
+    @Test
+    void serializeVersion() throws IOException {
+        Circuit circuit = Circuits.Capacitors.getMultiplesCapacitorsCircuit();
+        circuit.preCompile();
+        ByteArrayOutputStream st = new ByteArrayOutputStream();
+        circuit.serialize(new DataOutputStream(st));
+        byte[] bytes = st.toByteArray();
+        assertEquals(Circuit.SERIAL_VERSION, new DataInputStream(new ByteArrayInputStream(bytes)).readInt());
+
+        //a stream of another version can't be read.
+        bytes[3]++;
+        final byte[] other = bytes;
+        assertThrows(IOException.class, () -> new Circuit().unSerialize(new DataInputStream(new ByteArrayInputStream(other))));
+    }
 }
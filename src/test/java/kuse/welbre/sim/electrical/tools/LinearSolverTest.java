@@ -0,0 +1,97 @@
+package kuse.welbre.sim.electrical.tools;
+
+import kuse.welbre.tools.CommonsMathSolver;
+import kuse.welbre.tools.DenseMatrix;
+import kuse.welbre.tools.LinearSolver;
+import kuse.welbre.tools.Matrix;
+import kuse.welbre.tools.SparseMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinearSolverTest {
+    ///A random conductance matrix with a voltage source in the last row, so it isn't symmetric positive definite.
+    private static Matrix circuit(Matrix m, Random random, boolean source){
+        final int nodes = source ? m.size() - 1 : m.size();
+        for (int i = 0; i < nodes; i++) {
+            m.add(i, i, 1e-3);
+            for (int k = 0; k < 3; k++) {
+                int j = random.nextInt(nodes);
+                if (j == i) continue;
+                final double g = random.nextDouble() + 0.1;
+                m.add(i, i, g);
+                m.add(j, j, g);
+                m.add(i, j, -g);
+                m.add(j, i, -g);
+            }
+        }
+        if (source) {
+            m.add(0, nodes, 1);
+            m.add(nodes, 0, 1);
+        }
+        return m;
+    }
+
+    private static void assertSolves(Matrix m, LinearSolver solver, Random random){
+        final int size = m.size();
+        double[] expected = new double[size];
+        for (int i = 0; i < size; i++)
+            expected[i] = random.nextDouble() * 10 - 5;
+        double[] b = new double[size];
+        m.multiply(expected, b);
+
+        double[] x = new double[size];
+        solver.solve(b, x);
+        solver.solveInPlace(b);
+        for (int i = 0; i < size; i++) {
+            assertEquals(expected[i], x[i], 1e-8);
+            assertEquals(expected[i], b[i], 1e-8);
+        }
+    }
+
+    @Test
+    void backends(){
+        Random random = new Random(7);
+        for (LinearSolver.Backend backend : LinearSolver.Backend.values()) {
+            if (backend == LinearSolver.Backend.AUTO) continue;
+            final boolean symmetric = backend == LinearSolver.Backend.COMMONS_CHOLESKY;
+            Matrix m = circuit(backend == LinearSolver.Backend.SPARSE_LU ? new SparseMatrix(40) : new DenseMatrix(40), random, !symmetric);
+            LinearSolver solver = backend.create(m);
+            solver.factor(m);
+            assertTrue(solver.isFactorOf(m));
+            assertSolves(m, solver, random);
+
+            //new values with the same pattern.
+            for (int i = 0; i < m.size(); i++)
+                m.add(i, i, 0.5);
+            solver.refactor(m);
+            assertSolves(m, solver, random);
+        }
+    }
+
+    @Test
+    void choleskyFallback(){
+        Random random = new Random(3);
+        Matrix m = circuit(new DenseMatrix(20), random, true);
+        CommonsMathSolver solver = new CommonsMathSolver(20, CommonsMathSolver.Decomposition.CHOLESKY);
+        solver.factor(m);
+        assertEquals(CommonsMathSolver.Decomposition.LU, solver.getDecomposition());
+        assertSolves(m, solver, random);
+    }
+
+    @Test
+    void select(){
+        Random random = new Random(5);
+        assertEquals(LinearSolver.Backend.DENSE_LU, LinearSolver.Backend.AUTO.select(circuit(new DenseMatrix(10), random, true)));
+        assertEquals(LinearSolver.Backend.SPARSE_LU, LinearSolver.Backend.AUTO.select(circuit(new SparseMatrix(200), random, true)));
+        //dense enough to not use the sparse LU.
+        assertEquals(LinearSolver.Backend.DENSE_LU, LinearSolver.Backend.AUTO.select(circuit(new SparseMatrix(10), random, true)));
+        //commons-math allocates in each solve, so it is only used when chosen.
+        assertEquals(LinearSolver.Backend.DENSE_LU, LinearSolver.Backend.AUTO.select(circuit(new DenseMatrix(100), random, false)));
+        assertEquals(LinearSolver.Backend.COMMONS_QR, LinearSolver.Backend.COMMONS_QR.select(new DenseMatrix(1)));
+
+        assertThrows(IllegalArgumentException.class, () -> LinearSolver.Backend.SPARSE_LU.create(new DenseMatrix(3)));
+    }
+}
@@ -0,0 +1,80 @@
+package kuse.welbre.sim.electrical.tools;
+
+import kuse.welbre.tools.LU;
+import kuse.welbre.tools.LowRankUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LowRankUpdateTest {
+    ///A random conductance matrix, all nodes are connected to the ground.
+    private static double[][] conductances(int size, Random random){
+        double[][] m = new double[size][size];
+        for (int i = 0; i < size; i++) {
+            m[i][i] += 1e-3;
+            for (int k = 0; k < 3; k++) {
+                int j = random.nextInt(size);
+                if (j == i) continue;
+                addConductance(m, i, j, random.nextDouble() + 0.1);
+            }
+        }
+        return m;
+    }
+
+    private static void addConductance(double[][] m, int a, int b, double g){
+        if (a >= 0) m[a][a] += g;
+        if (b >= 0) m[b][b] += g;
+        if (a >= 0 && b >= 0) {
+            m[a][b] -= g;
+            m[b][a] -= g;
+        }
+    }
+
+    private static double[][] copy(double[][] m){
+        double[][] c = new double[m.length][];
+        for (int i = 0; i < m.length; i++)
+            c[i] = m[i].clone();
+        return c;
+    }
+
+    @Test
+    void sameAsRefactor(){
+        Random random = new Random(5);
+        double[][] a = conductances(40, random);
+        LU base = LU.decompose(copy(a));
+        LowRankUpdate update = new LowRankUpdate(a.length, 4, base::solve);
+
+        double[] b = new double[a.length];
+        for (int i = 0; i < b.length; i++)
+            b[i] = random.nextGaussian();
+
+        //a switch between 3 and 7 closes (1mΩ), and a switch from 10 to ground opens.
+        assertTrue(update.update(3, 7, 1e3));
+        addConductance(a, 3, 7, 1e3);
+        assertTrue(update.update(-1, 10, -0.5));
+        addConductance(a, 10, -1, -0.5);
+        assertEquals(2, update.rank());
+        assertArrayEquals(LU.decompose(copy(a)).solve(b), update.solve(b), 1e-9);
+
+        //the same pair is accumulated, and removed when it returns to the original value.
+        assertTrue(update.update(7, 3, -1e3));
+        addConductance(a, 3, 7, -1e3);
+        assertEquals(1, update.rank());
+        assertArrayEquals(LU.decompose(copy(a)).solve(b), update.solve(b), 1e-9);
+    }
+
+    @Test
+    void maxRank(){
+        Random random = new Random(8);
+        double[][] a = conductances(20, random);
+        LowRankUpdate update = new LowRankUpdate(a.length, 2, LU.decompose(copy(a))::solve);
+        assertTrue(update.update(0, 1, 1));
+        assertTrue(update.update(2, 3, 1));
+        assertFalse(update.update(4, 5, 1));
+        //an existing pair can still be changed.
+        assertTrue(update.update(0, 1, 1));
+        assertEquals(2, update.rank());
+    }
+}
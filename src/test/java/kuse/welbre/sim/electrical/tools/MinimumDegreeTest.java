@@ -0,0 +1,74 @@
+package kuse.welbre.sim.electrical.tools;
+
+import kuse.welbre.tools.MinimumDegree;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinimumDegreeTest {
+    ///A star, the vertex 0 is connected to all others.
+    private static int[][] star(int size){
+        int[][] graph = new int[size][];
+        graph[0] = new int[size - 1];
+        for (int i = 1; i < size; i++) {
+            graph[0][i - 1] = i;
+            graph[i] = new int[]{0};
+        }
+        return graph;
+    }
+
+    ///A square grid, each vertex is connected to the right and bottom ones.
+    private static int[][] grid(int side){
+        int[][] graph = new int[side * side][];
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                int[] neighbors = new int[2];
+                int n = 0;
+                if (c + 1 < side) neighbors[n++] = r * side + c + 1;
+                if (r + 1 < side) neighbors[n++] = (r + 1) * side + c;
+                graph[r * side + c] = Arrays.copyOf(neighbors, n);
+            }
+        }
+        return graph;
+    }
+
+    private static int[] natural(int size){
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        return order;
+    }
+
+    private static void assertPermutation(int[] order){
+        int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        assertArrayEquals(natural(order.length), sorted);
+    }
+
+    @Test
+    void star(){
+        int[][] graph = star(50);
+        int[] order = MinimumDegree.order(graph);
+        assertPermutation(order);
+        //the center must be one of the last, otherwise all leaves are connected.
+        assertTrue(order[49] == 0 || order[48] == 0);
+        assertEquals(1.0, MinimumDegree.fillRatio(graph, order), 1e-12);
+        assertTrue(MinimumDegree.fillRatio(graph, natural(50)) > 10);
+    }
+
+    @Test
+    void grid(){
+        int[][] graph = grid(20);
+        int[] order = MinimumDegree.order(graph);
+        assertPermutation(order);
+        assertTrue(MinimumDegree.fillRatio(graph, order) < MinimumDegree.fillRatio(graph, natural(graph.length)));
+    }
+
+    @Test
+    void empty(){
+        assertEquals(0, MinimumDegree.order(new int[0][]).length);
+        assertEquals(1.0, MinimumDegree.fillRatio(new int[][]{{}, {}}, natural(2)));
+    }
+}
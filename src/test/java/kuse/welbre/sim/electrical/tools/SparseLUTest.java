@@ -0,0 +1,98 @@
+package kuse.welbre.sim.electrical.tools;
+
+import kuse.welbre.tools.LU;
+import kuse.welbre.tools.SingularMatrixException;
+import kuse.welbre.tools.SparseLU;
+import kuse.welbre.tools.SparseMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseLUTest {
+    ///A random MNA like matrix, a conductance network with some voltage sources (rows with zero diagonal).
+    private static SparseMatrix mna(int nodes, int sources, Random random){
+        SparseMatrix m = new SparseMatrix(nodes + sources);
+        for (int i = 0; i < nodes; i++) {
+            m.add(i, i, 1e-3);
+            for (int k = 0; k < 3; k++) {
+                int j = random.nextInt(nodes);
+                if (j == i) continue;
+                double g = random.nextDouble() + 0.1;
+                m.add(i, i, g);
+                m.add(j, j, g);
+                m.add(i, j, -g);
+                m.add(j, i, -g);
+            }
+        }
+        for (int s = 0; s < sources; s++) {
+            int node = random.nextInt(nodes), row = nodes + s;
+            m.set(node, row, 1);
+            m.set(row, node, 1);
+        }
+        return m;
+    }
+
+    private static double[] random(int n, Random random){
+        double[] b = new double[n];
+        for (int i = 0; i < n; i++)
+            b[i] = random.nextGaussian();
+        return b;
+    }
+
+    @Test
+    void sameAsDense(){
+        Random random = new Random(3);
+        for (int test = 0; test < 20; test++) {
+            SparseMatrix a = mna(30 + test, 1 + test % 4, random);
+            double[] b = random(a.size(), random);
+
+            SparseLU lu = new SparseLU(a.size());
+            lu.factor(a);
+            double[] expected = LU.decompose(a.toArray()).solve(b);
+            assertArrayEquals(expected, lu.solve(b), 1e-8);
+        }
+    }
+
+    @Test
+    void refactorReusesTheAnalysis(){
+        Random random = new Random(11);
+        SparseMatrix a = mna(200, 5, random);
+        SparseLU lu = new SparseLU(a.size());
+        lu.factor(a);
+
+        for (int i = 0; i < 10; i++) {
+            //change values, but not the pattern.
+            for (int k = 0; k < 20; k++) {
+                int node = random.nextInt(200);
+                a.add(node, node, random.nextDouble());
+            }
+            double[] b = random(a.size(), random);
+            lu.refactor(a);
+            assertArrayEquals(LU.decompose(a.toArray()).solve(b), lu.solve(b), 1e-8);
+        }
+        assertEquals(1, lu.getFactorizations());
+        assertEquals(10, lu.getRefactorizations());
+        assertTrue(lu.getFillRatio() >= 1);
+
+        //a new entry changes the pattern, so a new analysis is needed.
+        int col = 199;
+        while (a.find(0, col) != -1)
+            col--;
+        a.add(0, col, 0.5);
+        a.add(col, 0, 0.5);
+        lu.refactor(a);
+        assertEquals(2, lu.getFactorizations());
+        double[] b = random(a.size(), random);
+        assertArrayEquals(LU.decompose(a.toArray()).solve(b), lu.solve(b), 1e-8);
+    }
+
+    @Test
+    void singular(){
+        SparseMatrix a = new SparseMatrix(3);
+        a.add(0, 0, 1);
+        a.add(1, 1, 1);
+        assertThrows(SingularMatrixException.class, () -> new SparseLU(3).factor(a));
+    }
+}
@@ -0,0 +1,79 @@
+package kuse.welbre.sim.electrical.tools;
+
+import kuse.welbre.tools.DenseMatrix;
+import kuse.welbre.tools.Matrix;
+import kuse.welbre.tools.SparseMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseMatrixTest {
+    @Test
+    void entries(){
+        SparseMatrix m = new SparseMatrix(4, 2);
+        m.add(0, 0, 1);
+        m.add(3, 1, 2);
+        m.add(0, 0, 1);
+        m.set(2, 3, 5);
+
+        assertEquals(3, m.getEntries());
+        assertEquals(2, m.get(0, 0));
+        assertEquals(2, m.get(3, 1));
+        assertEquals(5, m.get(2, 3));
+        assertEquals(0, m.get(1, 1));
+        assertEquals(-1, m.find(1, 1));
+        assertEquals(m.find(3, 1), m.entry(3, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> m.add(4, 0, 1));
+    }
+
+    @Test
+    void sameAsDense(){
+        final int n = 60;
+        Random random = new Random(7);
+        SparseMatrix sparse = new SparseMatrix(n);
+        DenseMatrix dense = new DenseMatrix(n);
+        for (int i = 0; i < 400; i++) {
+            int r = random.nextInt(n), c = random.nextInt(n);
+            double v = random.nextGaussian();
+            sparse.add(r, c, v);
+            dense.add(r, c, v);
+        }
+
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++)
+            x[i] = random.nextGaussian();
+        double[] expected = new double[n], got = new double[n];
+        dense.multiply(x, expected);
+        sparse.multiply(x, got);
+        assertArrayEquals(expected, got, 1e-12);
+
+        double[][] array = sparse.toArray();
+        for (int i = 0; i < n; i++)
+            assertArrayEquals(dense.getData()[i], array[i], 0);
+
+        SparseMatrix copy = sparse.copy();
+        copy.add(0, 0, 1);
+        assertEquals(dense.get(0, 0), sparse.get(0, 0));
+    }
+
+    @Test
+    void slots(){
+        for (Matrix m : new Matrix[]{new SparseMatrix(300), new DenseMatrix(300)}) {
+            int a = m.slot(5, 7), b = m.slot(299, 0);
+            assertEquals(a, m.slot(5, 7));
+            m.addAt(a, 2);
+            m.addAt(a, 1);
+            m.setAt(b, 4);
+            assertEquals(3, m.get(5, 7));
+            assertEquals(4, m.get(299, 0));
+
+            //the copy has the same slots.
+            Matrix copy = m.copy();
+            assertEquals(3, copy.getAt(a));
+            assertEquals(a, copy.slot(5, 7));
+            assertThrows(IndexOutOfBoundsException.class, () -> m.slot(300, 0));
+        }
+    }
+}